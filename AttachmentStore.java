@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 내용 주소 기반 첨부 파일 저장소: 업로드된 파일을 SHA-256 해시 이름으로 디스크에 한 번만 저장
+// 같은 내용의 파일은 다시 저장하지 않고, 다운로드는 메모리 매핑한 파일 영역을 그대로 소켓에 씀 (힙 복사 없음)
+// 파일마다 그 파일을 알린 방 목록도 함께 남겨서 재시작한 뒤에도 받을 수 있는 사람을 가림 (root/rooms/해시, 한 줄에 방 이름 하나)
+public class AttachmentStore {
+    private static final int MAPPED_CACHE_SIZE = 64; // 매핑을 유지하는 최대 파일 수
+
+    private final Path root;     // 저장 디렉터리 (root/해시 앞 2글자/해시)
+    private final Path tempDir;  // 업로드 중인 임시 파일 디렉터리
+    private final Path roomsDir; // 해시별로 그 파일을 알린 방 목록
+    private final Map<String, MappedByteBuffer> mapped = new ConcurrentHashMap<>(); // 최근에 읽은 파일의 매핑
+
+    public AttachmentStore(Path root) throws IOException {
+        this.root = root;
+        this.tempDir = root.resolve("tmp");
+        this.roomsDir = root.resolve("rooms");
+        Files.createDirectories(tempDir);
+        Files.createDirectories(roomsDir);
+    }
+
+    // 해시 형식 검사 (경로 조작 방지)
+    static boolean isValidHash(String hash) {
+        if (hash == null || hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean contains(String hash) {
+        return isValidHash(hash) && Files.isRegularFile(path(hash));
+    }
+
+    // 저장된 파일 크기 (없으면 -1)
+    public long size(String hash) {
+        try {
+            return contains(hash) ? Files.size(path(hash)) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // 파일 일부를 읽기 전용 매핑 버퍼로 반환
+    public ByteBuffer read(String hash, long offset, int length) throws IOException {
+        if (!isValidHash(hash)) {
+            throw new NoSuchFileException(hash);
+        }
+        MappedByteBuffer file = mapped.get(hash);
+        if (file == null) {
+            try (FileChannel channel = FileChannel.open(path(hash), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    // 2GB가 넘는 파일은 요청한 영역만 매핑
+                    long count = Math.max(0, Math.min(length, channel.size() - offset));
+                    return channel.map(FileChannel.MapMode.READ_ONLY, offset, count).asReadOnlyBuffer();
+                }
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (mapped.size() >= MAPPED_CACHE_SIZE) {
+                Iterator<String> oldest = mapped.keySet().iterator();
+                if (oldest.hasNext()) {
+                    mapped.remove(oldest.next());
+                }
+            }
+            mapped.put(hash, file);
+        }
+        int start = (int) Math.min(offset, file.capacity());
+        int count = Math.min(length, file.capacity() - start);
+        return file.slice(start, count).asReadOnlyBuffer();
+    }
+
+    // 파일을 알린 방 추가 (이미 있으면 그대로): 방 이름은 URL 인코딩해서 줄바꿈이 들어가지 않게 함
+    public synchronized void addRoom(String hash, String roomName) throws IOException {
+        if (!isValidHash(hash)) {
+            throw new NoSuchFileException(hash);
+        }
+        if (rooms(hash).contains(roomName)) {
+            return;
+        }
+        byte[] line = (URLEncoder.encode(roomName, StandardCharsets.UTF_8) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(roomsDir.resolve(hash), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // 파일을 알린 방 목록 (없으면 빈 집합): 쓰다가 중단된 마지막 줄(줄바꿈 없음)은 무시
+    public Set<String> rooms(String hash) throws IOException {
+        Set<String> rooms = new HashSet<>();
+        Path file = isValidHash(hash) ? roomsDir.resolve(hash) : null;
+        if (file == null || !Files.exists(file)) {
+            return rooms;
+        }
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        int start = 0;
+        int end;
+        while ((end = content.indexOf('\n', start)) >= 0) {
+            if (end > start) {
+                rooms.add(URLDecoder.decode(content.substring(start, end), StandardCharsets.UTF_8));
+            }
+            start = end + 1;
+        }
+        return rooms;
+    }
+
+    // 새 업로드를 받을 임시 파일 생성
+    public Writer newWriter() throws IOException {
+        return new Writer(Files.createTempFile(tempDir, "upload-", ".part"));
+    }
+
+    private Path path(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    // 업로드 중인 파일: 받은 데이터를 임시 파일에 쓰면서 해시를 함께 계산
+    public class Writer {
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+
+        private Writer(Path tempFile) throws IOException {
+            this.tempFile = tempFile;
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void write(byte[] data) throws IOException {
+            digest.update(data);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        // 업로드 완료: 해시 이름으로 옮기고 해시 반환 (이미 같은 파일이 있으면 임시 파일만 삭제)
+        public String commit() throws IOException {
+            channel.close();
+            String hash = toHex(digest.digest());
+            Path target = path(hash);
+            if (Files.exists(target)) {
+                Files.delete(tempFile);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        }
+
+        public void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
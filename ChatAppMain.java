@@ -1,16 +1,46 @@
 import javax.swing.*; // GUI 컴포넌트를 위한 스윙 라이브러리 임포트
 import java.awt.*; // AWT 그래픽 구성 요소 라이브러리 임포트
 import java.awt.event.*; // 이벤트 처리를 위한 라이브러리 임포트
+import java.io.IOException; // 서버 연결 실패 처리
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap; // HashMap 자료구조 임포트 (채팅방 관리를 위해 사용)
+import java.util.List;
+import java.util.Map;
 
 // 채팅 애플리케이션 메인 화면 클래스
-public class ChatAppMain extends JFrame {
+public class ChatAppMain extends JFrame implements ChatConnection.RoomListener {
+    private static final int PREVIEW_LENGTH = 40;      // 목록에 표시하는 마지막 메시지 최대 길이
+    private static final int PAGE_SIZE = 100;          // 채팅방 목록을 한 번에 받는 방 수
+    private static final int PREFETCH_ROWS = 20;       // 목록 끝에서 이만큼 남았을 때 다음 페이지 요청
+    private static final int WATCH_DELAY_MILLIS = 150; // 스크롤이 멈춘 뒤 보이는 방을 서버에 알리기까지의 시간
+
     private JList<String> chatRoomList; // 채팅방 목록을 표시하는 JList 컴포넌트
     private DefaultListModel<String> chatRoomModel; // 채팅방 목록의 데이터 모델
     private HashMap<String, ChatRoomWindow> openChatRooms; // 열린 채팅방을 관리하는 HashMap (방 이름: 창 객체)
     private String userName; // 사용자 이름
     private String serverIp; // 서버 IP 주소
     private int serverPort; // 서버 포트 번호
+    private ChatConnection connection; // 서버 연결 (목록 창과 모든 채팅방 창이 공유)
+    private final Map<String, RoomSummary> summaries = new HashMap<>(); // 방별 인원, 마지막 메시지, 안 읽은 수 (이하 EDT에서만 사용)
+    private String nextCursor = null;       // 다음에 받을 목록 페이지의 커서 (null이면 모두 받음)
+    private boolean pageRequested = false;  // 목록 페이지를 요청하고 응답을 기다리는 중
+    private List<String> watchedRooms = Collections.emptyList(); // 미리보기를 받는 방 (화면에 보이는 방)
+    private final Timer watchTimer = new Timer(WATCH_DELAY_MILLIS, e -> updateVisibleRooms());
+
+    // 채팅방 목록의 한 줄에 표시하는 내용: 서버가 보낸 미리보기로 갱신하고, 그릴 때는 만들어 둔 문자열만 사용
+    static class RoomSummary {
+        String title;           // 방 이름과 인원
+        long lastSeq = 0;       // 마지막 메시지 번호
+        long readSeq = 0;       // 이 사용자가 읽은 위치
+        String preview = " ";   // 마지막 메시지 ("보낸사람: 메시지")
+        String unread = null;   // 안 읽은 수 (없으면 null)
+
+        void updateUnread() {
+            long count = lastSeq - readSeq;
+            unread = count <= 0 ? null : count > 999 ? "999+" : String.valueOf(count);
+        }
+    }
 
     // 생성자: 사용자 이름, 서버 IP, 서버 포트를 인자로 받아 UI 설정 및 초기화
     public ChatAppMain(String userName, String serverIp, int serverPort) {
@@ -57,15 +87,20 @@ public class ChatAppMain extends JFrame {
         topPanel.add(profileBtn, BorderLayout.WEST);
         topPanel.add(rightIcons, BorderLayout.EAST);
 
-        // 채팅방 목록 데이터 모델 설정
+        // 검색 및 메뉴 버튼 동작
+        searchBtn.addActionListener(e -> searchRooms());
+        JPopupMenu menu = new JPopupMenu();
+        JMenuItem createItem = new JMenuItem("새 채팅방");
+        createItem.addActionListener(e -> createRoom());
+        menu.add(createItem);
+        menuBtn.addActionListener(e -> menu.show(menuBtn, 0, menuBtn.getHeight()));
+
+        // 채팅방 목록 데이터 모델 설정 (서버의 채팅방 목록을 이름 순으로 페이지 단위로 받아서 채움)
         chatRoomModel = new DefaultListModel<>();
-        chatRoomModel.addElement("채팅방1");
-        chatRoomModel.addElement("채팅방2");
-        chatRoomModel.addElement("채팅방3");
 
         // 채팅방 목록 JList 설정
         chatRoomList = new JList<>(chatRoomModel);
-        chatRoomList.setCellRenderer(new ChatRoomListRenderer()); // 커스텀 렌더러 사용
+        chatRoomList.setCellRenderer(new ChatRoomListRenderer(summaries)); // 커스텀 렌더러 사용
         chatRoomList.setFixedCellHeight(50); // 각 셀의 높이 설정
         chatRoomList.setSelectionBackground(new Color(0, 102, 255)); // 선택된 항목 배경색
         chatRoomList.setSelectionForeground(Color.WHITE); // 선택된 항목 글자색
@@ -84,6 +119,8 @@ public class ChatAppMain extends JFrame {
         // 스크롤 가능한 채팅방 목록
         JScrollPane scrollPane = new JScrollPane(chatRoomList);
         scrollPane.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.LIGHT_GRAY));
+        watchTimer.setRepeats(false);
+        scrollPane.getViewport().addChangeListener(e -> watchTimer.restart()); // 스크롤하거나 목록이 바뀔 때
 
         // 메인 패널에 상단 패널과 채팅방 목록 추가
         mainPanel.add(topPanel, BorderLayout.NORTH);
@@ -94,6 +131,215 @@ public class ChatAppMain extends JFrame {
 
         // 열린 채팅방 관리용 HashMap 초기화
         openChatRooms = new HashMap<>();
+
+        // 채팅방 목록을 받기 위해 바로 연결 (실패하면 채팅방을 열 때 다시 시도)
+        try {
+            connect();
+        } catch (IOException e) {
+            System.out.println("서버 연결 에러: " + e.getMessage());
+        }
+    }
+
+    // 서버 연결 (처음 또는 연결이 끊긴 뒤): 연결되면 채팅방 목록을 처음부터 다시 받음
+    private void connect() throws IOException {
+        if (connection == null || connection.isClosed()) {
+            connection = new ChatConnection(serverIp, serverPort, userName); // 모든 채팅방 창이 함께 쓰는 연결
+            connection.setDirectoryListener(this);
+            reloadRooms();
+        }
+    }
+
+    // 채팅방 목록을 비우고 첫 페이지부터 다시 받음 (EDT)
+    private void reloadRooms() {
+        chatRoomModel.clear();
+        watchedRooms = Collections.emptyList();
+        nextCursor = ""; // 첫 페이지
+        pageRequested = false;
+        updateVisibleRooms();
+    }
+
+    // 화면에 보이는 방만 미리보기를 받고, 받은 목록의 끝이 가까워지면 다음 페이지 요청
+    // (방이 수천 개여도 보이는 만큼만 서버와 주고받음)
+    private void updateVisibleRooms() {
+        if (connection == null || connection.isClosed()) {
+            return;
+        }
+        int first = chatRoomList.getFirstVisibleIndex();
+        int last = chatRoomList.getLastVisibleIndex();
+        List<String> visible = new ArrayList<>();
+        for (int i = Math.max(first, 0); i <= last; i++) {
+            visible.add(chatRoomModel.get(i));
+        }
+        try {
+            if (!visible.equals(watchedRooms)) {
+                connection.watch(visible);
+                watchedRooms = visible;
+            }
+            if (nextCursor != null && !pageRequested && last >= chatRoomModel.size() - PREFETCH_ROWS) {
+                pageRequested = true;
+                connection.listRooms(nextCursor, PAGE_SIZE, "");
+            }
+        } catch (IOException e) {
+            // 연결이 끊긴 경우는 다음에 연결할 때 처음부터 다시 받음
+        }
+    }
+
+    // 목록, 미리보기, 읽음 확인 (연결의 수신 스레드에서 호출): 바뀐 방의 줄만 다시 그림
+    @Override
+    public void frameReceived(ChatFrame frame) {
+        SwingUtilities.invokeLater(() -> {
+            if (frame.type.equals("ROOM_PAGE")) {
+                receivePage(frame);
+                return;
+            } else if (frame.type.equals("ROOM_DELTA")) {
+                for (int i = 0; i + 1 < frame.fields.length; i += 2) {
+                    String roomName = frame.field(i);
+                    int members = Integer.parseInt(frame.field(i + 1));
+                    if (members < 0) {
+                        removeRoom(roomName);
+                    } else if (nextCursor == null || roomName.compareTo(nextCursor) <= 0) {
+                        putRoom(roomName, members); // 아직 받지 않은 페이지의 방은 그 페이지와 함께 받음
+                    }
+                }
+                return;
+            }
+            String roomName = frame.field(0);
+            RoomSummary summary = summaries.computeIfAbsent(roomName, k -> new RoomSummary());
+            long seq = Long.parseLong(frame.field(1));
+            if (frame.type.equals("READ")) {
+                summary.readSeq = Math.max(summary.readSeq, seq);
+            } else if (frame.type.equals("PREVIEW")) {
+                if (frame.fields.length > 4) {
+                    // WATCH 직후: 서버에 기록된 읽은 위치 (방이 비어서 지워졌던 경우 서버 쪽 기록이 없으므로 더 큰 값 사용)
+                    summary.readSeq = Math.max(summary.readSeq, Long.parseLong(frame.field(4)));
+                }
+                if (seq < summary.lastSeq) {
+                    return; // 이미 더 최근 메시지를 표시 중
+                }
+                summary.lastSeq = seq;
+                if (frame.field(2).equals(userName)) {
+                    summary.readSeq = Math.max(summary.readSeq, seq); // 내가 보낸 메시지는 읽은 것으로 처리
+                }
+                String preview = frame.field(2).isEmpty() ? " " : frame.field(2) + ": " + frame.field(3);
+                summary.preview = preview.length() > PREVIEW_LENGTH ? preview.substring(0, PREVIEW_LENGTH) : preview;
+            } else {
+                return;
+            }
+            summary.updateUnread();
+            int index = indexOfRoom(roomName);
+            if (index >= 0) {
+                chatRoomModel.set(index, roomName); // 이 줄만 변경 이벤트
+            }
+        });
+    }
+
+    @Override
+    public void disconnected() {
+        // 채팅방 창에서 연결 끊김을 안내하고, 연결이 스스로 다시 연결
+    }
+
+    // 다시 연결됨: 끊긴 동안 바뀐 목록을 처음부터 다시 받고 보이는 방의 미리보기를 다시 요청
+    @Override
+    public void reconnected() {
+        SwingUtilities.invokeLater(this::reloadRooms);
+    }
+
+    // 목록 페이지 (검색 결과는 따로 표시)
+    private void receivePage(ChatFrame frame) {
+        String query = frame.field(0);
+        if (!query.isEmpty()) {
+            showSearchResults(query, frame);
+            return;
+        }
+        for (int i = 2; i + 1 < frame.fields.length; i += 2) {
+            putRoom(frame.field(i), Integer.parseInt(frame.field(i + 1)));
+        }
+        nextCursor = frame.field(1).isEmpty() ? null : frame.field(1);
+        pageRequested = false;
+        watchTimer.restart(); // 목록이 짧으면 다음 페이지도 바로 요청
+    }
+
+    // 방 추가 또는 인원 갱신 (이름 순서 유지)
+    private void putRoom(String roomName, int members) {
+        RoomSummary summary = summaries.computeIfAbsent(roomName, k -> new RoomSummary());
+        summary.title = roomName + " (" + members + ")";
+        int index = indexOfRoom(roomName);
+        if (index >= 0) {
+            chatRoomModel.set(index, roomName);
+        } else {
+            chatRoomModel.add(-index - 1, roomName);
+        }
+    }
+
+    private void removeRoom(String roomName) {
+        int index = indexOfRoom(roomName);
+        if (index >= 0) {
+            chatRoomModel.remove(index);
+        }
+    }
+
+    // 이름 순으로 정렬된 목록에서 이진 탐색 (없으면 -(넣을 위치) - 1)
+    private int indexOfRoom(String roomName) {
+        int low = 0;
+        int high = chatRoomModel.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = chatRoomModel.get(middle).compareTo(roomName);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // 채팅방 검색: 이름에 검색어가 들어간 방을 서버에 요청 (결과는 receivePage에서 표시)
+    private void searchRooms() {
+        String query = JOptionPane.showInputDialog(this, "검색할 채팅방 이름", "채팅방 검색", JOptionPane.PLAIN_MESSAGE);
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+        try {
+            connect();
+            connection.listRooms("", PAGE_SIZE, query.trim());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "서버 연결 실패: " + e.getMessage(), "오류", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void showSearchResults(String query, ChatFrame frame) {
+        List<String> results = new ArrayList<>();
+        for (int i = 2; i + 1 < frame.fields.length; i += 2) {
+            results.add(frame.field(i));
+        }
+        if (results.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "'" + query + "' 검색 결과가 없습니다.");
+            return;
+        }
+        Object selected = JOptionPane.showInputDialog(this, "'" + query + "' 검색 결과", "채팅방 검색",
+                JOptionPane.PLAIN_MESSAGE, null, results.toArray(), results.get(0));
+        if (selected != null) {
+            openChatRoom(selected.toString());
+        }
+    }
+
+    // 새 채팅방 만들기: 서버 목록에 추가하고 바로 입장
+    private void createRoom() {
+        String roomName = JOptionPane.showInputDialog(this, "채팅방 이름", "새 채팅방", JOptionPane.PLAIN_MESSAGE);
+        if (roomName == null || roomName.trim().isEmpty()) {
+            return;
+        }
+        try {
+            connect();
+            connection.createRoom(roomName.trim());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "서버 연결 실패: " + e.getMessage(), "오류", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        openChatRoom(roomName.trim());
     }
 
     // main 메서드: 애플리케이션 시작 지점
@@ -129,45 +375,76 @@ public class ChatAppMain extends JFrame {
     // 채팅방 열기 메서드
     private void openChatRoom(String roomName) {
         if (!openChatRooms.containsKey(roomName)) { // 채팅방이 열려 있지 않은 경우
-            ChatRoomWindow chatRoomWindow = new ChatRoomWindow(roomName, userName, serverIp, serverPort); // 채팅방 창 생성
+            try {
+                connect();
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, "서버 연결 실패: " + e.getMessage(), "오류", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            ChatRoomWindow chatRoomWindow = new ChatRoomWindow(roomName, userName, connection); // 채팅방 창 생성
             openChatRooms.put(roomName, chatRoomWindow); // 열린 채팅방 목록에 추가
         } else {
             openChatRooms.get(roomName).setVisible(true); // 이미 열려 있는 경우 해당 창 표시
         }
     }
 
-    // 채팅방 목록 커스텀 렌더러 클래스
-    class ChatRoomListRenderer extends DefaultListCellRenderer {
-        @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value,
-                                                      int index, boolean isSelected, boolean cellHasFocus) {
-
-            JPanel panel = new JPanel(new BorderLayout(10, 0)); // 셀 패널 설정
-            panel.setBackground(isSelected ? new Color(240, 240, 240) : Color.WHITE);
-            panel.setBorder(BorderFactory.createEmptyBorder(10, 15, 10, 15));
+    // 채팅방 목록 커스텀 렌더러 클래스: 셀 컴포넌트와 글꼴을 한 번만 만들고 그릴 때마다 내용만 바꿔 재사용
+    // (보이는 줄마다, 다시 그릴 때마다 호출되므로 여기서는 객체를 만들지 않음)
+    static class ChatRoomListRenderer extends JPanel implements ListCellRenderer<String> {
+        private static final Font PROFILE_FONT = new Font("Segoe UI Emoji", Font.PLAIN, 30);
+        private static final Font NAME_FONT = new Font("맑은 고딕", Font.BOLD, 13);
+        private static final Font MESSAGE_FONT = new Font("맑은 고딕", Font.PLAIN, 12);
+        private static final Font UNREAD_FONT = new Font("맑은 고딕", Font.BOLD, 11);
+        private static final Color SELECTED_BACKGROUND = new Color(240, 240, 240);
+        private static final Color UNREAD_BACKGROUND = new Color(255, 80, 60);
+
+        private final Map<String, RoomSummary> summaries;
+        private final JPanel textPanel = new JPanel(new GridLayout(2, 1));
+        private final JLabel nameLabel = new JLabel();
+        private final JLabel messageLabel = new JLabel();
+        private final JLabel unreadLabel = new JLabel();
+
+        ChatRoomListRenderer(Map<String, RoomSummary> summaries) {
+            super(new BorderLayout(10, 0));
+            this.summaries = summaries;
+            setBorder(BorderFactory.createEmptyBorder(10, 15, 10, 15));
 
             // 프로필 이미지 (임시로 이모지 사용)
             JLabel profileLabel = new JLabel("\uD83D\uDC64");
-            profileLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 30));
+            profileLabel.setFont(PROFILE_FONT);
 
             // 채팅방 이름과 마지막 메시지
-            JPanel textPanel = new JPanel(new GridLayout(2, 1));
-            textPanel.setBackground(panel.getBackground());
-
-            JLabel nameLabel = new JLabel(value.toString());
-            nameLabel.setFont(new Font("맑은 고딕", Font.BOLD, 13));
-
-            JLabel messageLabel = new JLabel("마지막 메시지...");
-            messageLabel.setFont(new Font("맑은 고딕", Font.PLAIN, 12));
+            nameLabel.setFont(NAME_FONT);
+            messageLabel.setFont(MESSAGE_FONT);
             messageLabel.setForeground(Color.GRAY);
-
             textPanel.add(nameLabel);
             textPanel.add(messageLabel);
 
-            panel.add(profileLabel, BorderLayout.WEST); // 왼쪽에 프로필 아이콘
-            panel.add(textPanel, BorderLayout.CENTER); // 중앙에 텍스트 패널
+            // 안 읽은 메시지 수
+            unreadLabel.setFont(UNREAD_FONT);
+            unreadLabel.setForeground(Color.WHITE);
+            unreadLabel.setBackground(UNREAD_BACKGROUND);
+            unreadLabel.setBorder(BorderFactory.createEmptyBorder(1, 5, 1, 5));
 
-            return panel; // 최종 셀 컴포넌트 반환
+            add(profileLabel, BorderLayout.WEST); // 왼쪽에 프로필 아이콘
+            add(textPanel, BorderLayout.CENTER);  // 중앙에 텍스트 패널
+            add(unreadLabel, BorderLayout.EAST);  // 오른쪽에 안 읽은 수
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends String> list, String value,
+                                                      int index, boolean isSelected, boolean cellHasFocus) {
+            Color background = isSelected ? SELECTED_BACKGROUND : Color.WHITE;
+            setBackground(background);
+            textPanel.setBackground(background);
+
+            RoomSummary summary = summaries.get(value);
+            nameLabel.setText(summary == null || summary.title == null ? value : summary.title);
+            messageLabel.setText(summary == null ? " " : summary.preview);
+            String unread = summary == null ? null : summary.unread;
+            unreadLabel.setText(unread);
+            unreadLabel.setOpaque(unread != null);
+            return this; // 최종 셀 컴포넌트 반환
         }
     }
 }
@@ -0,0 +1,362 @@
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// 클라이언트 연결 관리: 사용자가 연 모든 채팅방 창이 서버 연결 하나와 수신 스레드 하나를 함께 사용
+// 받은 프레임은 방 이름 필드로 해당 창에 보내고, 방 이름이 없는 프레임(FILE_CHUNK, FILE_ACK, FILE_DATA 등)은
+// 전송ID나 해시를 등록(claim)한 창에 보냄
+// 연결이 끊기면 수신 스레드가 간격을 늘려 가며 다시 연결하고, 열린 방마다 받은 마지막 번호 다음부터 이어 받음
+public class ChatConnection {
+    private static final int HELLO_TIMEOUT_MS = 1000; // 프로토콜 협상 응답 대기 시간
+    private static final int PING_TIMEOUT_MS = 30 * 1000; // 이 시간 동안 받은 것이 없으면 PING, 한 번 더 지나면 끊긴 연결로 처리
+    private static final int RECONNECT_MIN_MS = 500;       // 다시 연결하기 전 대기 시간의 시작값 (실패할 때마다 두 배)
+    private static final int RECONNECT_MAX_MS = 30 * 1000; // 다시 연결하기 전 대기 시간의 최대값
+
+    // 채팅방 창이 받는 이벤트 (수신 스레드에서 호출)
+    public interface RoomListener {
+        void frameReceived(ChatFrame frame);
+
+        // 연결이 끊김 (이후 다시 연결을 시도)
+        void disconnected();
+
+        // 다시 연결되어 열린 방에 다시 입장함: 이 호출 뒤에 입장 응답(놓친 메시지, 접속자 목록)이 이어짐
+        default void reconnected() {
+        }
+    }
+
+    private volatile String serverIp;          // 서버가 드레인하며 다른 서버를 알려 주면 바뀜
+    private volatile int serverPort;
+    private volatile long reconnectDelay = -1;  // 서버가 정해 준 다시 연결 대기 시간(밀리초), -1이면 간격을 늘려 가며 재시도
+    private boolean movedServer = false;        // 드레인하는 서버가 다른 서버로 옮기라고 함 (수신 스레드만 사용)
+    private final String userName;
+    private volatile Socket socket;            // 이하 연결마다 새로 만듦 (다시 연결하면 교체)
+    private volatile OutputStream out;
+    private volatile InputStream in;
+    private FrameDecoder decoder;
+    private volatile boolean binary = false;   // 서버와 바이너리 프로토콜을 협상했는지 여부
+    private volatile int compressThreshold = 0; // 서버와 압축을 협상했으면 압축할 최소 프레임 크기
+    private boolean helloReceived = false;
+    private volatile boolean closed = false;   // 다시 연결할 창이 없어서 연결을 끝냄
+    private final Map<String, RoomListener> rooms = new ConcurrentHashMap<>();  // 방 이름별 창
+    private final Map<String, Long> lastSeqs = new ConcurrentHashMap<>();       // 방별로 받은 마지막 채팅 메시지 번호 (다시 연결할 때 이어 받을 위치)
+    private final Map<String, RoomListener> claims = new ConcurrentHashMap<>(); // 전송ID/해시별로 프레임을 받을 창
+    private volatile RoomListener directory; // 채팅방 목록 창 (목록, 미리보기, 읽음 확인)
+
+    public ChatConnection(String serverIp, int serverPort, String userName) throws IOException {
+        this.serverIp = serverIp;
+        this.serverPort = serverPort;
+        this.userName = userName;
+        connect();
+        Thread receiver = new Thread(this::receiveMessages, "chat-connection");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    // 서버에 연결하고 프로토콜 협상 (처음 연결할 때와 수신 스레드가 다시 연결할 때)
+    private void connect() throws IOException {
+        Socket connected = new Socket(serverIp, serverPort);
+        synchronized (this) {
+            socket = connected;
+            out = new BufferedOutputStream(connected.getOutputStream());
+            in = connected.getInputStream();
+            decoder = new FrameDecoder(this::receive);
+            binary = false;
+            compressThreshold = 0;
+            helloReceived = false;
+        }
+        try {
+            negotiateProtocol();
+        } catch (IOException e) {
+            connected.close();
+            throw e;
+        }
+    }
+
+    // 바이너리 프로토콜 협상: 응답이 없거나 거절되면 기존 텍스트 형식 사용 (압축은 서버가 응답에 붙였을 때만)
+    private void negotiateProtocol() throws IOException {
+        send(new ChatFrame("HELLO", String.valueOf(ChatFrame.PROTOCOL_VERSION), ChatFrame.COMPRESSION));
+        socket.setSoTimeout(HELLO_TIMEOUT_MS);
+        byte[] buffer = new byte[4096];
+        try {
+            while (!helloReceived) {
+                int count = in.read(buffer);
+                if (count == -1) {
+                    throw new EOFException("서버가 연결을 닫았습니다.");
+                }
+                decoder.feed(buffer, 0, count);
+            }
+        } catch (SocketTimeoutException e) {
+            // HELLO를 모르는 이전 버전 서버: 텍스트 형식 유지
+        }
+        socket.setSoTimeout(0);
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // 채팅방 입장: 이후 이 방의 프레임을 listener로 받음
+    public void enter(String roomName, RoomListener listener) throws IOException {
+        rooms.put(roomName, listener);
+        send(new ChatFrame("ENTER", roomName, userName));
+    }
+
+    // 채팅방 퇴장
+    public void leave(String roomName) throws IOException {
+        if (rooms.remove(roomName) != null) {
+            lastSeqs.remove(roomName);
+            send(new ChatFrame("LEAVE", roomName));
+        }
+    }
+
+    // 채팅방 목록 창 등록: 목록(ROOM_PAGE, ROOM_DELTA)과 미리보기(PREVIEW) 프레임,
+    // 이 연결로 보낸 읽음 확인(READ)을 listener로 받음 (목록 요청은 바이너리 프로토콜에서만 동작)
+    public void setDirectoryListener(RoomListener listener) {
+        directory = listener;
+    }
+
+    // 채팅방 목록 한 페이지 요청: 커서(이전 페이지의 다음커서) 다음부터 count개, 검색어가 있으면 이름에 검색어가 들어간 방만
+    public void listRooms(String cursor, int count, String query) throws IOException {
+        if (binary) {
+            send(new ChatFrame("ROOM_LIST", cursor, String.valueOf(count), query));
+        }
+    }
+
+    public void createRoom(String roomName) throws IOException {
+        if (binary) {
+            send(new ChatFrame("ROOM_CREATE", roomName));
+        }
+    }
+
+    // 미리보기를 받을 방 (목록 화면에 보이는 방, 보낼 때마다 교체): 방마다 마지막 메시지가 바뀌면 PREVIEW 프레임을 받음
+    public void watch(List<String> roomNames) throws IOException {
+        if (binary) {
+            List<String> fields = new ArrayList<>(roomNames.size() + 1);
+            fields.add(userName);
+            fields.addAll(roomNames);
+            send(new ChatFrame("WATCH", fields.toArray(new String[0])));
+        }
+    }
+
+    // 메시지 검색: before보다 작은 번호에서 최근 것부터 count개 (before가 0이면 가장 최근부터), 결과는 방의 창이 SEARCH_RESULT로 받음
+    public void search(String roomName, String query, long before, int count) throws IOException {
+        if (binary) {
+            send(new ChatFrame("SEARCH", roomName, query, String.valueOf(before), String.valueOf(count)));
+        }
+    }
+
+    // 읽음 확인 전송: READ|방|번호
+    public void read(String roomName, long seq) throws IOException {
+        ChatFrame frame = new ChatFrame("READ", roomName, String.valueOf(seq));
+        send(frame);
+        deliver(directory, frame);
+    }
+
+    // 방 이름이 없는 프레임(전송ID 또는 해시가 첫 필드)을 받을 창 등록, 이미 다른 창이 등록했으면 false
+    public boolean claim(String key, RoomListener listener) {
+        RoomListener previous = claims.putIfAbsent(key, listener);
+        return previous == null || previous == listener;
+    }
+
+    public void release(String key) {
+        claims.remove(key);
+    }
+
+    // 프레임 전송 (여러 창과 전송 스레드가 함께 쓰므로 동기화)
+    public synchronized void send(ChatFrame frame) throws IOException {
+        frame.writeTo(out, binary, compressThreshold);
+        out.flush();
+    }
+
+    // 수신 스레드: 연결이 끊기면 창에 알리고 다시 연결해서 열린 방에 다시 입장 (열린 창이 없으면 끝냄)
+    private void receiveMessages() {
+        while (true) {
+            readUntilClosed();
+            for (RoomListener listener : listeners()) {
+                listener.disconnected();
+            }
+            if (!reconnect()) {
+                closed = true;
+                return;
+            }
+            if (movedServer) {
+                // 메시지 번호는 노드마다 따로 붙으므로 이전 서버의 번호를 보내지 않음 (새 서버에 남은 전달 위치나 최근 메시지부터 받음)
+                lastSeqs.clear();
+                movedServer = false;
+            }
+            try {
+                for (String roomName : rooms.keySet()) {
+                    Long since = lastSeqs.get(roomName);
+                    send(since == null ? new ChatFrame("ENTER", roomName, userName)
+                            : new ChatFrame("ENTER", roomName, userName, String.valueOf(since))); // 놓친 메시지만 한 번에 받음
+                }
+            } catch (IOException e) {
+                // 곧바로 다시 끊김: 다음 반복에서 다시 연결
+            }
+            // 다시 입장한 뒤에 알림: 창이 보내는 읽음 확인이나 업로드 이어받기(방 멤버만 가능)가 입장보다 먼저 처리되지 않도록
+            for (RoomListener listener : listeners()) {
+                listener.reconnected();
+            }
+        }
+    }
+
+    // 다시 연결: 실패할 때마다 대기 시간을 두 배로 늘리되 절반은 무작위로 정해서 (서버가 다시 뜰 때 클라이언트가 한꺼번에 몰리지 않도록)
+    // 서버가 드레인하며 대기 시간을 정해 줬으면 첫 시도는 그만큼 기다림 (서버가 연결마다 다르게 흩어 놓음), 열린 창이 없으면 포기
+    private boolean reconnect() {
+        for (int attempt = 0; !rooms.isEmpty() || directory != null; attempt++) {
+            long delay = Math.min(RECONNECT_MAX_MS, (long) RECONNECT_MIN_MS << Math.min(attempt, 16));
+            long assigned = reconnectDelay;
+            reconnectDelay = -1;
+            try {
+                Thread.sleep(assigned >= 0 ? assigned : ThreadLocalRandom.current().nextLong(delay / 2, delay + 1));
+                connect();
+                return true;
+            } catch (IOException e) {
+                System.out.println("서버 다시 연결 에러: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private List<RoomListener> listeners() {
+        List<RoomListener> listeners = new ArrayList<>(rooms.values());
+        RoomListener listener = directory;
+        if (listener != null) {
+            listeners.add(listener);
+        }
+        return listeners;
+    }
+
+    // 연결 하나를 끊길 때까지 읽음: 바이너리 프로토콜이면 서버가 조용할 때 PING으로 확인하고, 응답도 없으면 끊긴 연결로 처리
+    // (서버가 FIN 없이 사라져도 창이 계속 연결된 것처럼 보이지 않도록)
+    private void readUntilClosed() {
+        byte[] buffer = new byte[16 * 1024];
+        boolean pingSent = false;
+        try {
+            if (binary) {
+                socket.setSoTimeout(PING_TIMEOUT_MS);
+            }
+            while (true) {
+                int count;
+                try {
+                    count = in.read(buffer);
+                } catch (SocketTimeoutException e) {
+                    if (pingSent) {
+                        break;
+                    }
+                    send(new ChatFrame("PING"));
+                    pingSent = true;
+                    continue;
+                }
+                if (count == -1) {
+                    break;
+                }
+                pingSent = false;
+                decoder.feed(buffer, 0, count);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 아래에서 연결 종료 안내 (프레임 경계를 잃은 스트림은 끊고 다시 연결)
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 프레임 하나를 처리하다 난 에러는 그 프레임만 버림 (수신 스레드가 죽으면 끊김 안내도 다시 연결도 하지 않게 됨)
+    private void receive(ChatFrame frame) {
+        try {
+            dispatch(frame);
+        } catch (RuntimeException e) {
+            System.out.println("프레임 처리 에러: " + e.getMessage());
+        }
+    }
+
+    // 받은 프레임을 방(또는 등록한 창)별로 나눠 전달
+    private void dispatch(ChatFrame frame) {
+        String type = frame.type;
+        if (type.equals("PING")) {
+            try {
+                send(new ChatFrame("PONG"));
+            } catch (IOException e) {
+                // 수신 스레드에서 연결 종료 안내
+            }
+        } else if (type.equals("PONG")) {
+            // 받은 것 자체로 연결 확인
+        } else if (type.equals("RECONNECT")) {
+            // 서버가 곧 종료됨: 연결이 끊기면 정해 준 시간 뒤에 (다른 서버를 알려 줬으면 그 서버로) 다시 연결
+            reconnectDelay = Long.parseLong(frame.field(0));
+            if (frame.fields.length > 1) {
+                // "호스트:포트"가 아니면 같은 서버로 다시 연결
+                int colon = frame.field(1).lastIndexOf(':');
+                String ip = colon > 0 ? frame.field(1).substring(0, colon) : serverIp;
+                int port = colon > 0 ? parsePort(frame.field(1).substring(colon + 1)) : serverPort;
+                if (port > 0 && (!ip.equals(serverIp) || port != serverPort)) {
+                    movedServer = true;
+                    serverIp = ip;
+                    serverPort = port;
+                }
+            }
+        } else if (type.equals("HELLO")) {
+            helloReceived = true;
+            if (frame.field(0).equals(String.valueOf(ChatFrame.PROTOCOL_VERSION))) {
+                binary = true;
+                if (frame.fields.length > 1 && frame.field(1).equals(ChatFrame.COMPRESSION)) {
+                    compressThreshold = ChatFrame.COMPRESSION_THRESHOLD;
+                }
+                decoder.switchToBinary();
+            }
+        } else if (type.equals("FILE_CHUNK") || type.equals("FILE_ACK") || type.equals("FILE_DATA")) {
+            deliver(claims.get(frame.field(0)), frame);
+        } else if (type.equals("FILE_END")) {
+            deliver(claims.remove(frame.field(0)), frame);
+        } else if (type.equals("PREVIEW") || type.equals("ROOM_PAGE") || type.equals("ROOM_DELTA")) {
+            deliver(directory, frame);
+        } else if (type.equals("TEXT") && frame.field(0).isEmpty()) {
+            // 특정 방의 메시지가 아닌 안내 (송신 지연 등): 모든 창에 표시
+            for (RoomListener listener : rooms.values()) {
+                listener.frameReceived(frame);
+            }
+        } else if (frame.fields.length > 0) {
+            if (type.equals("CHAT")) {
+                lastSeqs.merge(frame.field(0), Long.parseLong(frame.field(1)), Math::max);
+            } else if (type.equals("CATCH_UP")) {
+                lastSeqs.merge(frame.field(0), Long.parseLong(frame.field(frame.fields.length - 3)), Math::max);
+            }
+            RoomListener listener = rooms.get(frame.field(0));
+            if (listener != null && type.equals("FILE_BEGIN")) {
+                claims.put(frame.field(2), listener); // 이어지는 FILE_CHUNK, FILE_END를 같은 창으로
+            }
+            deliver(listener, frame);
+        }
+    }
+
+    private static void deliver(RoomListener listener, ChatFrame frame) {
+        if (listener != null) {
+            listener.frameReceived(frame);
+        }
+    }
+
+    // 포트 번호 해석: 잘못된 값이면 -1
+    private static int parsePort(String value) {
+        try {
+            int port = Integer.parseInt(value);
+            return port > 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// 프로토콜 메시지 하나: 종류(type), 문자열 필드, 선택적인 바이너리 데이터
+// 텍스트 형식: "종류|필드1|필드2|..." 한 줄 (바이너리 데이터는 Base64로 마지막 필드)
+// 바이너리 형식: [종류 1바이트][본문 길이 varint][필드마다: 길이 varint + UTF-8][데이터: 길이 varint + 원본 바이트]
+// 압축 형식 (HELLO에서 deflate를 협상한 연결): [종류 | 0x80][본문 길이 varint][원래 본문 길이 varint][deflate로 압축한 본문]
+//   메시지마다 따로 압축하므로(연결별 압축 상태 없음) 브로드캐스트 프레임을 한 번만 압축해서 모든 연결이 공유
+//   짧은 채팅 줄도 줄어들도록 자주 쓰는 문구를 미리 넣은 사전(DICTIONARY)을 양쪽이 함께 사용
+public class ChatFrame {
+    static final Charset TEXT_CHARSET = Charset.defaultCharset(); // 텍스트 형식의 문자셋 (기존 PrintWriter와 동일)
+    static final int PROTOCOL_VERSION = 1;                  // HELLO로 협상하는 바이너리 프로토콜 버전
+    static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;  // 바이너리 프레임 본문 최대 길이
+    static final String COMPRESSION = "deflate";            // HELLO로 협상하는 압축 방식 이름
+    static final int COMPRESSION_THRESHOLD = 256;           // 이보다 짧은 프레임은 압축하지 않음 (클라이언트 기본값)
+    private static final int COMPRESSED_FLAG = 0x80;        // 종류 바이트의 압축 표시
+    private static final int INFLATE_BUFFER_SIZE = 4096;    // 압축을 풀 때 처음 잡는 버퍼 크기 (풀린 만큼 두 배씩 늘림)
+
+    // 압축 사전: 프로토콜과 채팅에 자주 나오는 문구 (뒤에 있을수록 가까운 거리로 참조되므로 자주 쓰는 것을 뒤에)
+    // 바꾸면 이전 버전과 압축 프레임을 주고받을 수 없으므로 협상 이름(COMPRESSION)도 함께 바꿔야 함
+    private static final byte[] DICTIONARY = String.join("",
+            "https://", "http://", ".png", ".jpg", ".pdf", ".zip",
+            "회의", "확인했습니다", "알겠습니다", "좋아요", "그럼", "혹시", "지금", "내일", "오늘",
+            "감사합니다", "안녕하세요", "ㅎㅎㅎ", "ㅋㅋㅋㅋㅋㅋ",
+            "님이 파일을 전송했습니다: ", "님이 퇴장하셨습니다.", "님이 입장하셨습니다.", "SERVER: ").getBytes(StandardCharsets.UTF_8);
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>(); // 재사용할 압축기 (만들 때 비용이 커서 스레드 사이에 돌려 씀)
+
+    // 바이너리 형식의 종류 코드 (배열 인덱스가 코드)
+    private static final String[] TYPES = {null, "ENTER", "MESSAGE", "FILE", "LEAVE", "TEXT", "HELLO",
+            "FILE_BEGIN", "FILE_CHUNK", "FILE_ACK", "FILE_END", "FILE_REF", "FILE_GET", "FILE_DATA",
+            "CHAT", "READ", "RECEIPT", "NODE", "SUB", "WATCH", "PREVIEW",
+            "UNSUB", "ROOM_LIST", "ROOM_PAGE", "ROOM_DELTA", "ROOM_CREATE", "PING", "PONG",
+            "SEARCH", "SEARCH_RESULT", "PRESENCE", "CATCH_UP", "RECONNECT"};
+
+    final String type;      // 메시지 종류
+    final String[] fields;  // 문자열 필드
+    final byte[] data;      // 바이너리 데이터 (파일 내용 등), 없으면 null
+
+    private byte[] textBytes;          // 텍스트 형식 인코딩 캐시
+    private byte[] binaryBytes;        // 바이너리 형식 인코딩 캐시
+    private ByteBuffer textEncoded;
+    private ByteBuffer binaryEncoded;
+    private byte[] compressedBytes;    // 압축 형식 인코딩 캐시 (압축해도 줄지 않으면 바이너리 형식 그대로)
+    private ByteBuffer compressedEncoded;
+
+    public ChatFrame(String type, String... fields) {
+        this(type, fields, null);
+    }
+
+    public ChatFrame(String type, String[] fields, byte[] data) {
+        this.type = type;
+        this.fields = fields;
+        this.data = data;
+    }
+
+    // 화면에 표시할 한 줄 (텍스트 형식에서는 기존처럼 줄 내용만 전송)
+    public static ChatFrame text(String roomName, String line) {
+        return new ChatFrame("TEXT", roomName == null ? "" : roomName, line);
+    }
+
+    // 번호가 붙은 채팅 메시지: CHAT|방|번호|보낸사람|메시지 (읽음 확인 대상)
+    public static ChatFrame chat(String roomName, long seq, String sender, String message) {
+        return new ChatFrame("CHAT", roomName, String.valueOf(seq), sender, message);
+    }
+
+    public String field(int index) {
+        return fields[index];
+    }
+
+    // 형식별로 한 번만 인코딩하고 결과를 공유 (읽기 전용 버퍼이므로 받는 쪽은 duplicate()로 사용)
+    public synchronized ByteBuffer encoded(boolean binary) {
+        if (binary) {
+            if (binaryEncoded == null) {
+                binaryEncoded = ByteBuffer.wrap(bytes(true)).asReadOnlyBuffer();
+            }
+            return binaryEncoded;
+        }
+        if (textEncoded == null) {
+            textEncoded = ByteBuffer.wrap(bytes(false)).asReadOnlyBuffer();
+        }
+        return textEncoded;
+    }
+
+    // 압축을 협상한 연결용 인코딩: 바이너리 형식이 threshold 이상이면 압축 형식 (threshold가 0이면 압축하지 않음)
+    public synchronized ByteBuffer encoded(boolean binary, int threshold) {
+        if (!binary || threshold <= 0 || bytes(true).length < threshold) {
+            return encoded(binary);
+        }
+        if (compressedEncoded == null) {
+            compressedEncoded = ByteBuffer.wrap(compressedBytes()).asReadOnlyBuffer();
+        }
+        return compressedEncoded;
+    }
+
+    // 스트림에 직접 쓰기 (클라이언트 송신용)
+    public void writeTo(OutputStream out, boolean binary) throws IOException {
+        out.write(bytes(binary));
+    }
+
+    public void writeTo(OutputStream out, boolean binary, int threshold) throws IOException {
+        out.write(binary && threshold > 0 && bytes(true).length >= threshold ? compressedBytes() : bytes(binary));
+    }
+
+    private synchronized byte[] bytes(boolean binary) {
+        if (binary) {
+            if (binaryBytes == null) {
+                binaryBytes = encodeBinary();
+            }
+            return binaryBytes;
+        }
+        if (textBytes == null) {
+            textBytes = encodeText().getBytes(TEXT_CHARSET);
+        }
+        return textBytes;
+    }
+
+    private synchronized byte[] compressedBytes() {
+        if (compressedBytes == null) {
+            compressedBytes = compress(bytes(true));
+        }
+        return compressedBytes;
+    }
+
+    // 바이너리 형식 프레임의 본문을 압축: 헤더는 그대로 두고 원래 본문 길이를 앞에 붙임, 줄지 않으면 원래 프레임
+    private static byte[] compress(byte[] frame) {
+        long header = readVarint(frame, 1, frame.length);
+        int bodyLength = (int) (header >>> 32);
+        int bodyStart = (int) header;
+
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(bodyLength / 2 + 16);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(frame, bodyStart, bodyLength);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(bodyLength + 64, 64 * 1024)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                deflated.write(buffer, 0, count);
+                if (deflated.size() >= bodyLength) {
+                    return frame; // 압축해도 줄지 않음 (이미 압축된 파일 등)
+                }
+            }
+        } finally {
+            deflater.reset();
+            DEFLATERS.offer(deflater);
+        }
+
+        int compressedBody = varintSize(bodyLength) + deflated.size();
+        if (1 + varintSize(compressedBody) + compressedBody >= frame.length) {
+            return frame;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + varintSize(compressedBody) + compressedBody);
+        out.write(frame[0] | COMPRESSED_FLAG);
+        writeVarint(out, compressedBody);
+        writeVarint(out, bodyLength);
+        out.write(deflated.toByteArray(), 0, deflated.size());
+        return out.toByteArray();
+    }
+
+    // 텍스트 형식은 줄 단위이므로 필드 안의 줄바꿈은 공백으로 바꿈
+    private String encodeText() {
+        if (type.equals("TEXT")) {
+            return singleLine(fields[1]) + "\n";
+        }
+        if (type.equals("CHAT")) {
+            // 이전 클라이언트에게는 기존과 같은 "보낸사람: 메시지" 한 줄
+            return singleLine(fields[2] + ": " + fields[3]) + "\n";
+        }
+        StringBuilder line = new StringBuilder(type);
+        for (String field : fields) {
+            line.append('|').append(singleLine(field));
+        }
+        if (data != null) {
+            line.append('|').append(Base64.getEncoder().encodeToString(data));
+        }
+        return line.append('\n').toString();
+    }
+
+    private static String singleLine(String value) {
+        return value.indexOf('\n') < 0 && value.indexOf('\r') < 0 ? value : value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    private byte[] encodeBinary() {
+        ByteArrayOutputStream out = binaryHeader(type, fields, data == null ? -1 : data.length, true);
+        if (data != null) {
+            out.write(data, 0, data.length);
+        }
+        return out.toByteArray();
+    }
+
+    // 데이터가 따로 있는 바이너리 프레임: 헤더만 인코딩하고 데이터 버퍼(매핑된 파일 영역 등)는 복사하지 않고 뒤에 붙임
+    static ByteBuffer[] binaryWithData(String type, String[] fields, ByteBuffer data) {
+        byte[] header = binaryHeader(type, fields, data.remaining(), false).toByteArray();
+        return new ByteBuffer[] {ByteBuffer.wrap(header), data};
+    }
+
+    // 종류, 본문 길이, 필드와 데이터 길이까지 인코딩 (dataLength가 -1이면 데이터 없음, reserveData면 데이터 공간까지 확보)
+    private static ByteArrayOutputStream binaryHeader(String type, String[] fields, int dataLength, boolean reserveData) {
+        byte[][] encodedFields = new byte[fields.length][];
+        int bodyLength = 0;
+        for (int i = 0; i < fields.length; i++) {
+            encodedFields[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            bodyLength += varintSize(encodedFields[i].length) + encodedFields[i].length;
+        }
+        if (dataLength >= 0) {
+            bodyLength += varintSize(dataLength) + dataLength;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + varintSize(bodyLength) + bodyLength - (reserveData ? 0 : dataLength));
+        out.write(typeCode(type));
+        writeVarint(out, bodyLength);
+        for (byte[] field : encodedFields) {
+            writeVarint(out, field.length);
+            out.write(field, 0, field.length);
+        }
+        if (dataLength >= 0) {
+            writeVarint(out, dataLength);
+        }
+        return out;
+    }
+
+    // 텍스트 한 줄을 프레임으로 변환: 알 수 없는 종류의 줄은 화면 표시용 TEXT 프레임
+    static ChatFrame decodeText(String line) {
+        int separator = line.indexOf('|');
+        String type = separator < 0 ? line : line.substring(0, separator);
+
+        // 마지막 필드는 '|'를 포함할 수 있도록 필드 수만큼만 분리
+        int fieldCount;
+        switch (type) {
+            case "ENTER": fieldCount = 3; break;
+            case "MESSAGE": fieldCount = 3; break;
+            case "FILE": fieldCount = 4; break;
+            case "FILE_BEGIN": fieldCount = 6; break;
+            case "FILE_CHUNK": fieldCount = 3; break;
+            case "FILE_ACK": fieldCount = 2; break;
+            case "FILE_END": fieldCount = 2; break;
+            case "FILE_REF": fieldCount = 5; break;
+            case "FILE_GET": fieldCount = 3; break;
+            case "FILE_DATA": fieldCount = 3; break;
+            case "READ": fieldCount = 2; break;
+            case "HELLO": fieldCount = 2; break;
+            case "LEAVE": fieldCount = 1; break;
+            default: return text("", line);
+        }
+        String[] fields = separator < 0 ? new String[0] : line.substring(separator + 1).split("\\|", fieldCount);
+        if (hasData(type) && fields.length == fieldCount) {
+            // 마지막 필드는 Base64로 인코딩된 데이터
+            return new ChatFrame(type, Arrays.copyOf(fields, fieldCount - 1), Base64.getDecoder().decode(fields[fieldCount - 1]));
+        }
+        return new ChatFrame(type, fields);
+    }
+
+    // 종류 바이트가 압축 형식인지
+    static boolean isCompressed(int typeCode) {
+        return (typeCode & COMPRESSED_FLAG) != 0;
+    }
+
+    // 압축 형식 본문을 풀어서 프레임으로 변환 (inflater는 연결마다 하나, 풀린 길이가 maxLength를 넘으면 예외)
+    static ChatFrame decodeCompressed(int typeCode, byte[] body, int offset, int length, Inflater inflater, int maxLength) {
+        long header = readVarint(body, offset, offset + length);
+        int bodyLength = (int) (header >>> 32);
+        int position = (int) header;
+        if (header == -1 || bodyLength < 0 || bodyLength > maxLength) {
+            throw new IllegalArgumentException("잘못된 압축 프레임 길이: " + bodyLength);
+        }
+        // 선언한 길이만큼 미리 잡지 않고 작은 버퍼에서 시작해 실제로 풀린 만큼 늘림 (길이만 크게 적은 프레임으로 메모리를 잡아 두지 못하게)
+        // 한도는 선언한 길이보다 한 바이트 크게: 길이보다 길게 풀리는 프레임을 알아냄
+        int limit = bodyLength + 1;
+        byte[] inflated = new byte[Math.min(limit, INFLATE_BUFFER_SIZE)];
+        try {
+            inflater.reset();
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(body, position, offset + length - position);
+            int count = 0;
+            while (!inflater.finished()) {
+                if (count == inflated.length) {
+                    if (inflated.length == limit) {
+                        break; // 길이보다 길게 풀림
+                    }
+                    inflated = Arrays.copyOf(inflated, (int) Math.min((long) inflated.length * 2, limit));
+                }
+                int inflatedCount = inflater.inflate(inflated, count, inflated.length - count);
+                if (inflatedCount == 0 && inflater.needsInput()) {
+                    break; // 입력이 중간에 끝남
+                }
+                count += inflatedCount;
+            }
+            if (count != bodyLength || !inflater.finished()) {
+                throw new IllegalArgumentException("압축 프레임 길이가 맞지 않습니다: " + count + "/" + bodyLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("잘못된 압축 프레임: " + e.getMessage());
+        }
+        return decodeBinary(typeCode & ~COMPRESSED_FLAG, inflated, 0, bodyLength);
+    }
+
+    // 바이너리 본문을 프레임으로 변환
+    static ChatFrame decodeBinary(int typeCode, byte[] body, int offset, int length) {
+        if (typeCode <= 0 || typeCode >= TYPES.length) {
+            throw new IllegalArgumentException("알 수 없는 프레임 종류: " + typeCode);
+        }
+        String type = TYPES[typeCode];
+        boolean hasData = hasData(type);
+
+        List<String> fields = new ArrayList<>();
+        byte[] data = null;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            long header = readVarint(body, position, end);
+            int fieldLength = (int) (header >>> 32);
+            position = (int) header;
+            if (fieldLength < 0 || position + fieldLength > end) {
+                throw new IllegalArgumentException("잘못된 필드 길이: " + fieldLength);
+            }
+            if (hasData && position + fieldLength == end) {
+                data = Arrays.copyOfRange(body, position, end);
+            } else {
+                fields.add(new String(body, position, fieldLength, StandardCharsets.UTF_8));
+            }
+            position += fieldLength;
+        }
+        return new ChatFrame(type, fields.toArray(new String[0]), data);
+    }
+
+    // 마지막 필드로 바이너리 데이터를 가지는 종류
+    static boolean hasData(String type) {
+        return type.equals("FILE") || type.equals("FILE_CHUNK") || type.equals("FILE_DATA");
+    }
+
+    static int typeCode(String type) {
+        for (int i = 1; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("바이너리로 보낼 수 없는 종류: " + type);
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // varint 읽기: 상위 32비트에 값, 하위 32비트에 다음 위치 (바이트가 모자라면 -1)
+    static long readVarint(byte[] bytes, int position, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position >= end) {
+                return -1;
+            }
+            byte b = bytes[position++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return ((long) value << 32) | position;
+            }
+        }
+        throw new IllegalArgumentException("잘못된 varint");
+    }
+}
@@ -0,0 +1,60 @@
+import javax.swing.AbstractListModel;
+import java.util.List;
+
+// 채팅 기록 목록 모델: 최근 capacity줄만 고정 크기 원형 버퍼에 보관하고 넘치면 오래된 줄부터 버림
+// JList는 화면에 보이는 줄만 그리므로 대화가 길어져도 메모리와 갱신 비용이 일정 (EDT에서만 사용)
+public class ChatLogModel extends AbstractListModel<String> {
+    private final String[] lines;
+    private int head = 0;  // 가장 오래된 줄의 위치
+    private int size = 0;
+
+    public ChatLogModel(int capacity) {
+        this.lines = new String[capacity];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return lines[(head + index) % lines.length];
+    }
+
+    // 여러 줄을 한 번에 추가하고 변경 이벤트는 묶음마다 (삭제 한 번, 추가 한 번)만 보냄
+    public void addAll(List<String> batch) {
+        int capacity = lines.length;
+        int incoming = batch.size();
+        if (incoming == 0) {
+            return;
+        }
+        if (incoming >= capacity) {
+            // 새 줄만으로 가득 참: 마지막 capacity줄만 남김
+            int removed = size;
+            for (int i = 0; i < capacity; i++) {
+                lines[i] = batch.get(incoming - capacity + i);
+            }
+            head = 0;
+            size = capacity;
+            if (removed > 0) {
+                fireIntervalRemoved(this, 0, removed - 1);
+            }
+            fireIntervalAdded(this, 0, capacity - 1);
+            return;
+        }
+
+        int overflow = size + incoming - capacity;
+        if (overflow > 0) {
+            head = (head + overflow) % capacity;
+            size -= overflow;
+            fireIntervalRemoved(this, 0, overflow - 1);
+        }
+        int first = size;
+        for (String line : batch) {
+            lines[(head + size) % capacity] = line;
+            size++;
+        }
+        fireIntervalAdded(this, first, size - 1);
+    }
+}
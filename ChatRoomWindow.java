@@ -1,34 +1,74 @@
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.util.Base64;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 채팅방 창 클래스: 개별 채팅방 UI와 기능을 담당 (서버 연결은 다른 채팅방 창과 공유)
+public class ChatRoomWindow extends JFrame implements ChatConnection.RoomListener {
+    private static final int UPLOAD_CHUNK_SIZE = 64 * 1024; // 파일 업로드 청크 크기
+    private static final int UPLOAD_WINDOW = 4 * UPLOAD_CHUNK_SIZE; // 서버 확인 없이 보낼 수 있는 최대 바이트
+    private static final long ACK_TIMEOUT_MS = 30 * 1000;   // 업로드 확인 응답 대기 시간
+    private static final int FETCH_CHUNK_SIZE = 256 * 1024; // 저장된 파일을 받을 때 한 번에 요청하는 크기
+    private static final int FETCH_WINDOW = 4 * FETCH_CHUNK_SIZE; // 응답을 받지 않고 요청해 둘 수 있는 최대 바이트
+    private static final int HISTORY_LINES = 2000;          // 화면에 남겨 두는 최대 줄 수 (넘치면 오래된 줄부터 버림)
+    private static final int FRAME_MILLIS = 16;             // 받은 줄을 모아서 화면에 반영하는 주기 (약 60fps)
+    private static final int SEARCH_PAGE_SIZE = 30;         // 검색 결과를 한 번에 요청하는 개수
 
-// 채팅방 창 클래스: 개별 채팅방 UI와 기능을 담당
-public class ChatRoomWindow extends JFrame {
     private String roomName;           // 채팅방 이름
     private String userName;           // 사용자 이름
-    private String serverIp;           // 서버 IP 주소
-    private int serverPort;            // 서버 포트 번호
-    private JTextArea chatArea;        // 채팅 메시지 표시 영역
+    private final ChatConnection connection; // 다른 채팅방 창과 함께 쓰는 서버 연결
+    private final ChatLogModel chatLog = new ChatLogModel(HISTORY_LINES); // 채팅 메시지 (최근 HISTORY_LINES줄)
+    private JList<String> chatList;    // 채팅 메시지 표시 영역 (보이는 줄만 그림)
+    private JScrollPane chatScroll;
+    private final Queue<String> pendingLines = new ConcurrentLinkedQueue<>(); // 아직 화면에 반영하지 않은 줄
+    private final AtomicLong pendingSeq = new AtomicLong();                  // 아직 반영하지 않은 마지막 채팅 메시지 번호
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Timer flushTimer = new Timer(FRAME_MILLIS, e -> flushPending()); // 한 프레임에 한 번 반영
     private JTextField messageField;   // 메시지 입력 필드
     private JButton sendButton;        // 메시지 전송 버튼
-    private Socket socket;             // 서버와의 연결 소켓
-    private PrintWriter out;           // 서버로 메시지를 보내는 출력 스트림
-    private BufferedReader in;         // 서버로부터 메시지를 읽는 입력 스트림
+    private final Map<String, OutgoingFile> uploads = new ConcurrentHashMap<>(); // 업로드 중인 파일 (전송ID별)
+    private final Map<String, String> transferIds = new ConcurrentHashMap<>();    // 끝나지 않은 업로드의 전송ID (파일별, 다시 보내면 서버가 받은 위치부터 이어서)
+    private final Map<String, IncomingFile> downloads = new HashMap<>();         // 수신 중인 파일 (연결의 수신 스레드에서만 사용)
+    private final Map<String, FetchedFile> fetches = new ConcurrentHashMap<>();  // 서버 저장소에서 받는 중인 파일 (해시별)
     private JButton attachButton;      // 첨부파일 버튼 (클립모양)
+    private JLabel receiptLabel;       // 마지막 메시지의 읽음 상태
+    private JLabel titleLabel;         // 채팅방 제목과 접속자 수 (마우스를 올리면 접속자 목록)
+    private final Set<String> onlineMembers = new TreeSet<>(); // 방에 접속 중인 사용자 (EDT에서만 사용)
+    private long lastSeq = 0;          // 받은 마지막 채팅 메시지 번호 (이하 읽음 상태는 EDT에서만 사용)
+    private long lastReadSent = 0;     // 서버에 읽었다고 알린 위치
+    private final Map<String, Long> readPositions = new TreeMap<>(); // 방 멤버별 읽은 위치
+    private JDialog searchDialog;      // 메시지 검색 결과 창 (이하 검색 상태는 EDT에서만 사용)
+    private final DefaultListModel<String> searchResults = new DefaultListModel<>();
+    private JButton moreResultsButton;
+    private String searchQuery;        // 결과를 기다리는 검색어
+    private long searchBefore;         // 다음 페이지를 요청할 위치
+    private final java.text.SimpleDateFormat searchTimeFormat = new java.text.SimpleDateFormat("MM-dd HH:mm");
 
-    // 생성자: 채팅방 UI를 설정하고 서버에 연결
-    public ChatRoomWindow(String roomName, String userName, String serverIp, int serverPort) {
+    // 생성자: 채팅방 UI를 설정하고 공유 연결로 입장
+    public ChatRoomWindow(String roomName, String userName, ChatConnection connection) {
         this.roomName = roomName;
         this.userName = userName;
-        this.serverIp = serverIp;
-        this.serverPort = serverPort;
+        this.connection = connection;
 
         // 채팅방 UI 설정
         this.setTitle(roomName); // 채팅방 제목 설정
@@ -43,7 +83,7 @@ public class ChatRoomWindow extends JFrame {
         JPanel headerPanel = new JPanel(new BorderLayout());
         headerPanel.setBackground(Color.WHITE);
         headerPanel.setBorder(BorderFactory.createEmptyBorder(10, 15, 10, 15));
-        JLabel titleLabel = new JLabel(roomName);
+        titleLabel = new JLabel(roomName);
         titleLabel.setFont(new Font("맑은 고딕", Font.BOLD, 16));
 
         // 오른쪽 아이콘 버튼 (검색, 전화, 메뉴)
@@ -56,19 +96,41 @@ public class ChatRoomWindow extends JFrame {
             btn.setContentAreaFilled(false);
             btn.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 20));
             rightButtons.add(btn);
+            if (icon.equals("\uD83D\uDD0D")) {
+                btn.addActionListener(e -> searchMessages()); // 이 방의 메시지 검색
+            }
         }
 
+        // 읽음 상태 표시
+        receiptLabel = new JLabel(" ");
+        receiptLabel.setFont(new Font("맑은 고딕", Font.PLAIN, 11));
+        receiptLabel.setForeground(Color.GRAY);
+
         headerPanel.add(titleLabel, BorderLayout.WEST);
         headerPanel.add(rightButtons, BorderLayout.EAST);
+        headerPanel.add(receiptLabel, BorderLayout.SOUTH);
 
         // 채팅 메시지 영역
-        chatArea = new JTextArea();
-        chatArea.setEditable(false); // 읽기 전용
-        chatArea.setLineWrap(true);  // 자동 줄바꿈
-        chatArea.setWrapStyleWord(true);
-        chatArea.setBackground(new Color(186, 206, 224));
-        chatArea.setFont(new Font("맑은 고딕", Font.PLAIN, 13));
-        JScrollPane scrollPane = new JScrollPane(chatArea);
+        // 줄 높이와 너비를 고정해서 JList가 줄마다 크기를 계산하지 않고 보이는 줄만 그리도록 함
+        // (긴 줄은 잘려 보이고 마우스를 올리면 전체 내용 표시, 선택한 줄은 Ctrl+C로 복사)
+        chatList = new JList<>(chatLog);
+        chatList.setBackground(new Color(186, 206, 224));
+        chatList.setFont(new Font("맑은 고딕", Font.PLAIN, 13));
+        chatList.setFixedCellHeight(chatList.getFontMetrics(chatList.getFont()).getHeight() + 4);
+        chatList.setFixedCellWidth(1); // 너비는 스크롤 영역에 맞춤
+        chatList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, false);
+                setToolTipText(value.toString());
+                return this;
+            }
+        });
+        ToolTipManager.sharedInstance().registerComponent(chatList);
+        JScrollPane scrollPane = new JScrollPane(chatList);
+        scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        chatScroll = scrollPane;
+        flushTimer.setRepeats(false);
 
         // 입력 및 버튼 패널
         JPanel inputPanel = new JPanel(new BorderLayout());
@@ -113,64 +175,402 @@ public class ChatRoomWindow extends JFrame {
         messageField.addActionListener(e -> sendMessage()); // 엔터키 입력 시 메시지 전송
         sendButton.addActionListener(e -> sendMessage());   // 전송 버튼 클릭 시 메시지 전송
 
-        connectToServer(); // 서버에 연결
-    }
+        // 창을 보고 있을 때만 읽음으로 처리
+        this.addWindowFocusListener(new WindowAdapter() {
+            @Override
+            public void windowGainedFocus(WindowEvent e) {
+                acknowledgeRead();
+            }
+        });
 
-    // 서버에 연결하는 메서드
-    private void connectToServer() {
         try {
-            socket = new Socket(serverIp, serverPort);
-            out = new PrintWriter(socket.getOutputStream(), true); // 출력 스트림
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream())); // 입력 스트림
-            out.println("ENTER|" + roomName + "|" + userName); // 채팅방 입장 메시지 전송
-            new Thread(this::receiveMessages).start(); // 메시지 수신 스레드 시작
+            connection.enter(roomName, this); // 채팅방 입장 메시지 전송
         } catch (IOException e) {
             appendMessage("서버 연결 실패: " + e.getMessage());
         }
     }
 
-    // 파일 전송 메서드
+    // 프레임 전송 (연결이 여러 창과 전송 스레드 사이의 동기화를 처리)
+    private void sendFrame(ChatFrame frame) throws IOException {
+        connection.send(frame);
+    }
+
+    // 파일 전송 메서드: 파일 선택 후 별도 스레드에서 전송 (UI가 멈추지 않도록)
     private void sendFile() {
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            try {
-                String encodedFile = Base64.getEncoder().encodeToString(Files.readAllBytes(file.toPath())); // 파일을 Base64로 인코딩
-                String fileName = file.getName();
-                out.println("FILE|" + roomName + "|" + userName + "|" + fileName + "|" + encodedFile);
-                appendMessage("나: 파일을 전송했습니다. (" + fileName + ")");
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "파일 전송 실패", "오류", JOptionPane.ERROR_MESSAGE);
+            new Thread(() -> uploadFile(file)).start();
+        }
+    }
+
+    private void uploadFile(File file) {
+        String fileName = file.getName();
+        try {
+            if (connection.isBinary()) {
+                String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified(); // 내용이 바뀐 파일은 새 업로드
+                String transferId = transferIds.computeIfAbsent(key, k -> UUID.randomUUID().toString());
+                uploadChunked(file, transferId);
+                transferIds.remove(key);
+            } else {
+                // 청크 전송을 지원하지 않는 서버: 파일 전체를 한 프레임으로 전송 (텍스트 형식이면 Base64)
+                byte[] content = Files.readAllBytes(file.toPath());
+                sendFrame(new ChatFrame("FILE", new String[]{roomName, userName, fileName}, content));
+            }
+            appendMessage("나: 파일을 전송했습니다. (" + fileName + ")");
+        } catch (IOException | InterruptedException ex) {
+            SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, "파일 전송 실패: " + ex.getMessage(), "오류", JOptionPane.ERROR_MESSAGE));
+        }
+    }
+
+    // 청크 단위 업로드: 서버가 확인하지 않은 데이터가 UPLOAD_WINDOW를 넘지 않도록 조절 (메모리 사용량은 청크 하나 크기)
+    // 서버가 받은 위치(FILE_ACK)부터 보내므로 같은 전송ID로 다시 시작하거나 다시 연결되면 그 위치부터 이어서 전송
+    private void uploadChunked(File file, String transferId) throws IOException, InterruptedException {
+        connection.claim(transferId, this); // FILE_ACK, FILE_END를 이 창으로
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // 해시를 함께 보내면 서버에 이미 있는 파일은 다시 업로드하지 않음
+            String hash = sha256(channel);
+            OutgoingFile upload = new OutgoingFile(
+                    new ChatFrame("FILE_BEGIN", roomName, userName, transferId, file.getName(), String.valueOf(size), hash));
+            uploads.put(transferId, upload);
+            sendFrame(upload.begin);
+
+            ByteBuffer buffer = ByteBuffer.allocate(UPLOAD_CHUNK_SIZE);
+            long offset = 0;
+            while (true) {
+                offset = upload.awaitAcked(offset, offset < size ? UPLOAD_WINDOW : 0); // 다시 연결되었으면 서버가 받은 위치로 돌아감
+                if (offset >= size) {
+                    break;
+                }
+                buffer.clear();
+                int count = channel.read(buffer, offset);
+                if (count <= 0) {
+                    throw new EOFException("파일을 끝까지 읽지 못했습니다.");
+                }
+                byte[] chunk = Arrays.copyOf(buffer.array(), count);
+                try {
+                    sendFrame(new ChatFrame("FILE_CHUNK", new String[]{transferId, String.valueOf(offset)}, chunk));
+                } catch (IOException e) {
+                    // 연결이 끊김: 다시 연결되면 reconnected()가 FILE_BEGIN을 다시 보내고 서버가 받은 위치를 기다림
+                }
+                offset += count;
             }
+        } finally {
+            uploads.remove(transferId);
+            connection.release(transferId);
         }
     }
 
-    // 서버에서 메시지 수신
-    private void receiveMessages() {
-        while (true) {
+    private static String sha256(FileChannel channel) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(UPLOAD_CHUNK_SIZE);
+        long position = 0;
+        int count;
+        while ((count = channel.read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += count;
+        }
+        return AttachmentStore.toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 서버와 연결이 끊김 (연결의 수신 스레드에서 호출)
+    @Override
+    public void disconnected() {
+        appendMessage("서버와 연결이 끊어졌습니다. 다시 연결하는 중...");
+    }
+
+    // 다시 연결됨: 놓친 메시지는 이어서 CATCH_UP으로 오고, 접속자 목록과 읽음 위치는 입장 응답으로 다시 받음
+    @Override
+    public void reconnected() {
+        appendMessage("서버에 다시 연결되었습니다.");
+        for (OutgoingFile upload : uploads.values()) {
+            upload.resume();
             try {
-                String message = in.readLine();
-                if (message != null) {
-                    if (message.startsWith("FILE")) {
-                        handleIncomingFile(message);
+                sendFrame(upload.begin); // 같은 전송ID: 서버가 받은 위치를 FILE_ACK로 알려 줌
+            } catch (IOException e) {
+                // 곧바로 다시 끊김: 다음 연결에서 다시 보냄
+            }
+        }
+        SwingUtilities.invokeLater(() -> {
+            onlineMembers.clear();
+            readPositions.clear();
+            lastReadSent = 0; // 새 연결에서 다시 알림
+            acknowledgeRead();
+        });
+    }
+
+    // 이 방의 프레임 처리 (연결의 수신 스레드에서 호출되며 다른 방의 수신을 막지 않도록 대화상자는 EDT에서 띄움)
+    @Override
+    public void frameReceived(ChatFrame frame) {
+        if (frame.type.equals("FILE")) {
+            SwingUtilities.invokeLater(() -> handleIncomingFile(frame));
+        } else if (frame.type.equals("FILE_BEGIN")) {
+            handleFileBegin(frame);
+        } else if (frame.type.equals("FILE_CHUNK")) {
+            handleFileChunk(frame);
+        } else if (frame.type.equals("FILE_ACK")) {
+            OutgoingFile upload = uploads.get(frame.field(0));
+            if (upload != null) {
+                upload.acked(Long.parseLong(frame.field(1)));
+            }
+        } else if (frame.type.equals("FILE_END")) {
+            handleFileEnd(frame);
+        } else if (frame.type.equals("FILE_REF")) {
+            if (!frame.field(1).equals(userName)) {
+                SwingUtilities.invokeLater(() -> offerDownload(frame));
+            }
+        } else if (frame.type.equals("FILE_DATA")) {
+            FetchedFile fetch = fetches.get(frame.field(0));
+            if (fetch != null) {
+                fetch.write(Long.parseLong(frame.field(1)), frame.data);
+            }
+        } else if (frame.type.equals("CHAT")) {
+            pendingSeq.accumulateAndGet(Long.parseLong(frame.field(1)), Math::max);
+            appendMessage(frame.field(2) + ": " + frame.field(3));
+        } else if (frame.type.equals("CATCH_UP")) {
+            // 입장하거나 다시 연결했을 때 놓친 메시지 묶음: CATCH_UP|방|번호|보낸사람|메시지|...
+            for (int i = 1; i + 2 < frame.fields.length; i += 3) {
+                appendMessage(frame.field(i + 1) + ": " + frame.field(i + 2));
+            }
+            pendingSeq.accumulateAndGet(Long.parseLong(frame.field(frame.fields.length - 3)), Math::max);
+        } else if (frame.type.equals("RECEIPT")) {
+            SwingUtilities.invokeLater(() -> {
+                for (int i = 1; i + 1 < frame.fields.length; i += 2) {
+                    long position = Long.parseLong(frame.field(i + 1));
+                    if (position < 0) {
+                        readPositions.remove(frame.field(i)); // 퇴장
                     } else {
-                        SwingUtilities.invokeLater(() -> appendMessage(message));
+                        readPositions.merge(frame.field(i), position, Math::max);
                     }
                 }
-            } catch (IOException e) {
-                appendMessage("서버와 연결이 끊어졌습니다.");
-                break;
+                updateReceiptLabel();
+            });
+        } else if (frame.type.equals("PRESENCE")) {
+            SwingUtilities.invokeLater(() -> {
+                for (int i = 1; i + 1 < frame.fields.length; i += 2) {
+                    if (frame.field(i + 1).equals("1")) {
+                        onlineMembers.add(frame.field(i));
+                    } else {
+                        onlineMembers.remove(frame.field(i));
+                    }
+                }
+                updateTitleLabel();
+            });
+        } else if (frame.type.equals("SEARCH_RESULT")) {
+            SwingUtilities.invokeLater(() -> showSearchResults(frame));
+        } else if (frame.type.equals("TEXT")) {
+            appendMessage(frame.field(1));
+        }
+    }
+
+    // 메시지 검색: 검색어를 묻고 결과 창을 열어 최근 메시지부터 한 페이지 요청 (화면에 남은 줄이 아니라 서버의 전체 기록에서 찾음)
+    private void searchMessages() {
+        if (!connection.isBinary()) {
+            JOptionPane.showMessageDialog(this, "이 서버는 메시지 검색을 지원하지 않습니다.", "메시지 검색", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        String query = JOptionPane.showInputDialog(this, "검색어", "메시지 검색", JOptionPane.QUESTION_MESSAGE);
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+        searchQuery = query.trim();
+        searchResults.clear();
+        if (searchDialog == null) {
+            searchDialog = new JDialog(this, false);
+            JList<String> resultList = new JList<>(searchResults);
+            resultList.setFont(new Font("맑은 고딕", Font.PLAIN, 13));
+            moreResultsButton = new JButton("더 보기");
+            moreResultsButton.addActionListener(e -> requestSearchPage(searchBefore));
+            searchDialog.add(new JScrollPane(resultList), BorderLayout.CENTER);
+            searchDialog.add(moreResultsButton, BorderLayout.SOUTH);
+            searchDialog.setSize(360, 420);
+            searchDialog.setLocationRelativeTo(this);
+        }
+        searchDialog.setTitle("메시지 검색: " + searchQuery);
+        searchDialog.setVisible(true);
+        requestSearchPage(0);
+    }
+
+    private void requestSearchPage(long before) {
+        moreResultsButton.setEnabled(false);
+        try {
+            connection.search(roomName, searchQuery, before, SEARCH_PAGE_SIZE);
+        } catch (IOException ex) {
+            searchResults.addElement("검색 실패: " + ex.getMessage());
+        }
+    }
+
+    // 검색 결과 한 페이지: SEARCH_RESULT|방|검색어|다음before|번호|시각|보낸사람|메시지|... (EDT)
+    private void showSearchResults(ChatFrame frame) {
+        if (!frame.field(1).equals(searchQuery)) {
+            return; // 이전 검색어의 늦은 응답
+        }
+        for (int i = 3; i + 3 < frame.fields.length; i += 4) {
+            String time = searchTimeFormat.format(new Date(Long.parseLong(frame.field(i + 1))));
+            searchResults.addElement("[" + time + "] " + frame.field(i + 2) + ": " + frame.field(i + 3));
+        }
+        boolean more = !frame.field(2).isEmpty();
+        searchBefore = more ? Long.parseLong(frame.field(2)) : 0;
+        moreResultsButton.setEnabled(more);
+        if (!more && searchResults.isEmpty()) {
+            searchResults.addElement("검색 결과가 없습니다.");
+        }
+    }
+
+    // 청크 파일 수신 시작: 임시 파일에 받아 두고 다 받은 뒤에 저장 여부를 물음
+    private void handleFileBegin(ChatFrame frame) {
+        String sender = frame.field(1);
+        if (sender.equals(userName)) {
+            return;
+        }
+        try {
+            IncomingFile download = new IncomingFile(sender, frame.field(3));
+            downloads.put(frame.field(2), download);
+        } catch (IOException ex) {
+            appendMessage("파일 수신 실패: " + ex.getMessage());
+        }
+    }
+
+    private void handleFileChunk(ChatFrame frame) {
+        IncomingFile download = downloads.get(frame.field(0));
+        if (download == null) {
+            return; // 시작을 받지 못한 전송 (전송 도중 입장 등)
+        }
+        try {
+            download.write(Long.parseLong(frame.field(1)), frame.data);
+        } catch (IOException ex) {
+            downloads.remove(frame.field(0));
+            download.discard();
+            appendMessage("파일 수신 실패: " + ex.getMessage());
+        }
+    }
+
+    private void handleFileEnd(ChatFrame frame) {
+        String transferId = frame.field(0);
+        boolean completed = frame.field(1).equals("ok");
+
+        OutgoingFile upload = uploads.get(transferId);
+        if (upload != null && !completed) {
+            upload.cancel(); // 서버가 업로드를 취소함
+        }
+        FetchedFile fetch = fetches.get(transferId);
+        if (fetch != null && !completed) {
+            fetch.cancel(); // 서버에 없는 파일
+        }
+
+        IncomingFile download = downloads.remove(transferId);
+        if (download == null) {
+            return;
+        }
+        try {
+            download.finish();
+        } catch (IOException ex) {
+            download.discard();
+            return;
+        }
+        if (!completed) {
+            download.discard();
+            appendMessage(download.sender + ": 파일 전송이 취소되었습니다. (" + download.fileName + ")");
+            return;
+        }
+        SwingUtilities.invokeLater(() -> askToSave(download));
+    }
+
+    // 다 받은 임시 파일을 저장할지 묻고 선택한 위치로 이동
+    private void askToSave(IncomingFile download) {
+        int option = JOptionPane.showConfirmDialog(
+                this, download.sender + "님이 파일을 보냈습니다: " + download.fileName + "\n저장하시겠습니까?", "파일 수신", JOptionPane.YES_NO_OPTION
+        );
+        if (option == JOptionPane.YES_OPTION) {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setSelectedFile(new File(download.fileName));
+            if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    Files.move(download.tempFile, fileChooser.getSelectedFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    appendMessage(download.sender + ": 파일이 저장되었습니다. (" + download.fileName + ")");
+                    return;
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, "파일 저장 실패", "오류", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+        download.discard();
+    }
+
+    // 서버에 저장된 파일 알림: 저장하겠다고 하면 그때 서버에서 받음
+    private void offerDownload(ChatFrame ref) {
+        String sender = ref.field(1);
+        String fileName = ref.field(2);
+        String hash = ref.field(3);
+        long size = Long.parseLong(ref.field(4));
+        int option = JOptionPane.showConfirmDialog(
+                this, sender + "님이 파일을 보냈습니다: " + fileName + " (" + size + " bytes)\n저장하시겠습니까?", "파일 수신", JOptionPane.YES_NO_OPTION
+        );
+        if (option != JOptionPane.YES_OPTION) {
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File(fileName));
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            Path target = fileChooser.getSelectedFile().toPath();
+            new Thread(() -> fetchFile(sender, fileName, hash, size, target)).start();
+        }
+    }
+
+    // 저장된 파일 받기: 응답을 기다리지 않은 요청이 FETCH_WINDOW를 넘지 않도록 나눠서 요청하고 해시로 검증
+    private void fetchFile(String sender, String fileName, String hash, long size, Path target) {
+        FetchedFile fetch = null;
+        try {
+            fetch = new FetchedFile();
+            if (fetches.putIfAbsent(hash, fetch) != null || !connection.claim(hash, this)) {
+                fetches.remove(hash, fetch);
+                fetch.discard();
+                appendMessage("이미 받는 중인 파일입니다. (" + fileName + ")");
+                return;
+            }
+            long requested = 0;
+            while (requested < size) {
+                fetch.awaitReceived(requested, FETCH_WINDOW);
+                int length = (int) Math.min(FETCH_CHUNK_SIZE, size - requested);
+                sendFrame(new ChatFrame("FILE_GET", hash, String.valueOf(requested), String.valueOf(length)));
+                requested += length;
+            }
+            fetch.awaitReceived(size, 0);
+            if (!fetch.finish().equals(hash)) {
+                throw new IOException("파일 내용이 손상되었습니다.");
+            }
+            Files.move(fetch.tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            appendMessage(sender + ": 파일이 저장되었습니다. (" + fileName + ")");
+        } catch (IOException | InterruptedException ex) {
+            if (fetch != null) {
+                fetch.discard();
+            }
+            appendMessage("파일 수신 실패: " + ex.getMessage() + " (" + fileName + ")");
+        } finally {
+            if (fetch != null && fetches.remove(hash, fetch)) {
+                connection.release(hash);
             }
         }
     }
 
     // 수신된 파일 처리
-    private void handleIncomingFile(String message) {
-        String[] parts = message.split("\\|", 5);
-        String sender = parts[2];
-        String fileName = parts[3];
-        String fileContent = parts[4];
+    private void handleIncomingFile(ChatFrame frame) {
+        String sender = frame.field(1);
+        String fileName = frame.field(2);
+        byte[] fileContent = frame.data;
 
         if (!sender.equals(userName)) {
             int option = JOptionPane.showConfirmDialog(
@@ -183,7 +583,7 @@ public class ChatRoomWindow extends JFrame {
                 if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
                     try {
                         File saveFile = fileChooser.getSelectedFile();
-                        Files.write(saveFile.toPath(), Base64.getDecoder().decode(fileContent));
+                        Files.write(saveFile.toPath(), fileContent);
                         appendMessage(sender + ": 파일이 저장되었습니다. (" + fileName + ")");
                     } catch (IOException ex) {
                         JOptionPane.showMessageDialog(this, "파일 저장 실패", "오류", JOptionPane.ERROR_MESSAGE);
@@ -193,18 +593,247 @@ public class ChatRoomWindow extends JFrame {
         }
     }
 
-    // 채팅 메시지를 화면에 추가
+    // 창이 활성화되어 있으면 마지막으로 받은 메시지까지 읽었다고 서버에 알림
+    private void acknowledgeRead() {
+        if (lastSeq <= lastReadSent || !isFocused()) {
+            return;
+        }
+        try {
+            connection.read(roomName, lastSeq); // 채팅방 목록의 안 읽은 수도 함께 갱신
+            lastReadSent = lastSeq;
+        } catch (IOException ex) {
+            // 연결이 끊긴 경우는 수신 스레드에서 안내
+        }
+    }
+
+    // 접속자 수 표시 (PRESENCE를 받는 바이너리 연결에서만 바뀜)
+    private void updateTitleLabel() {
+        titleLabel.setText(roomName + " (" + onlineMembers.size() + ")");
+        titleLabel.setToolTipText(String.join(", ", onlineMembers));
+    }
+
+    // 마지막 메시지를 읽은 사람과 읽지 않은 사람 수 표시
+    private void updateReceiptLabel() {
+        if (lastSeq == 0) {
+            return;
+        }
+        StringBuilder readers = new StringBuilder();
+        int unread = 0;
+        for (Map.Entry<String, Long> entry : readPositions.entrySet()) {
+            if (entry.getKey().equals(userName)) {
+                continue;
+            }
+            if (entry.getValue() >= lastSeq) {
+                readers.append(readers.length() == 0 ? "" : ", ").append(entry.getKey());
+            } else {
+                unread++;
+            }
+        }
+        String text = readers.length() > 0 ? "읽음: " + readers : "";
+        if (unread > 0) {
+            text += (text.isEmpty() ? "" : " · ") + "안 읽음 " + unread + "명";
+        }
+        receiptLabel.setText(text.isEmpty() ? " " : text);
+    }
+
+    // 채팅 메시지를 화면에 추가 (어느 스레드에서든 호출 가능): 줄을 모아 두었다가 다음 프레임에 한꺼번에 반영
     public void appendMessage(String message) {
-        chatArea.append(message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        pendingLines.add(message);
+        if (flushScheduled.compareAndSet(false, true)) {
+            flushTimer.start();
+        }
+    }
+
+    // 모아 둔 줄을 목록에 한 번에 추가하고 읽음 상태 갱신 (EDT)
+    private void flushPending() {
+        flushScheduled.set(false);
+        List<String> batch = new ArrayList<>();
+        String line;
+        while ((line = pendingLines.poll()) != null) {
+            batch.add(line);
+        }
+        JScrollBar scrollBar = chatScroll.getVerticalScrollBar();
+        boolean atBottom = scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum() - chatList.getFixedCellHeight();
+        chatLog.addAll(batch);
+        if (atBottom && chatLog.getSize() > 0) {
+            chatList.ensureIndexIsVisible(chatLog.getSize() - 1); // 이전 줄을 보고 있을 때는 스크롤하지 않음
+        }
+
+        long seq = pendingSeq.get();
+        if (seq > lastSeq) {
+            lastSeq = seq;
+            acknowledgeRead();
+            updateReceiptLabel();
+        }
     }
 
     // 메시지 전송
     private void sendMessage() {
         String message = messageField.getText().trim();
         if (!message.isEmpty()) {
-            out.println("MESSAGE|" + roomName + "|" + userName + "|" + message);
-            messageField.setText("");
+            try {
+                sendFrame(new ChatFrame("MESSAGE", roomName, userName, message));
+                messageField.setText("");
+            } catch (IOException ex) {
+                appendMessage("메시지 전송 실패: " + ex.getMessage());
+            }
+        }
+    }
+
+    // 업로드 중인 파일: 서버의 확인 응답(FILE_ACK)을 기다림
+    private static class OutgoingFile {
+        final ChatFrame begin;            // 다시 연결되면 다시 보내는 FILE_BEGIN
+        private long acked = -1;          // 서버가 받았다고 확인한 바이트 수 (-1: 아직 응답 없음)
+        private boolean resumed = true;   // FILE_BEGIN을 보냄: 다음 FILE_ACK가 알려 주는 위치부터 보냄
+        private boolean cancelled = false;
+        private long lastProgress = System.currentTimeMillis();
+
+        OutgoingFile(ChatFrame begin) {
+            this.begin = begin;
+        }
+
+        synchronized void acked(long offset) {
+            acked = Math.max(acked, offset);
+            lastProgress = System.currentTimeMillis();
+            notifyAll();
+        }
+
+        // 다시 연결됨: 끊기기 전에 보낸 청크는 서버가 받지 못했을 수 있으므로 새 연결의 FILE_ACK를 기다림
+        synchronized void resume() {
+            acked = -1;
+            resumed = true;
+            lastProgress = System.currentTimeMillis();
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        // offset까지 보낸 뒤 확인되지 않은 바이트가 window 이하가 될 때까지 대기하고 다음에 보낼 위치를 반환
+        // FILE_BEGIN을 (다시) 보낸 뒤라면 서버가 받은 위치를 반환 (이미 보낸 위치보다 앞일 수 있음)
+        synchronized long awaitAcked(long offset, long window) throws IOException, InterruptedException {
+            while (!cancelled) {
+                if (resumed && acked >= 0) {
+                    resumed = false;
+                    return acked;
+                }
+                if (!resumed && acked >= offset - window) {
+                    return offset;
+                }
+                long remaining = lastProgress + ACK_TIMEOUT_MS - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("서버 응답 시간 초과");
+                }
+                wait(remaining);
+            }
+            throw new IOException("서버가 전송을 취소했습니다.");
+        }
+    }
+
+    // 수신 중인 파일: 받은 청크를 임시 파일에 바로 기록 (메모리에 쌓지 않음)
+    private static class IncomingFile {
+        final String sender;
+        final String fileName;
+        final Path tempFile;
+        private final FileChannel channel;
+
+        IncomingFile(String sender, String fileName) throws IOException {
+            this.sender = sender;
+            this.fileName = fileName;
+            this.tempFile = Files.createTempFile("chat-", ".part");
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+        }
+
+        void write(long offset, byte[] data) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+        }
+
+        void finish() throws IOException {
+            channel.close();
+        }
+
+        void discard() {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    // 서버 저장소에서 받는 중인 파일: 순서대로 도착하는 FILE_DATA를 임시 파일에 쓰면서 해시 계산
+    private static class FetchedFile {
+        final Path tempFile;
+        private final FileChannel channel;
+        private final MessageDigest digest = newDigest();
+        private long received = 0;
+        private boolean failed = false;
+
+        FetchedFile() throws IOException {
+            this.tempFile = Files.createTempFile("chat-", ".part");
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+        }
+
+        // 수신 스레드에서 호출
+        synchronized void write(long offset, byte[] data) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (offset != received) {
+                    throw new IOException("잘못된 위치: " + offset);
+                }
+                digest.update(data);
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+                received += data.length;
+            } catch (IOException ex) {
+                failed = true;
+            }
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            failed = true;
+            notifyAll();
+        }
+
+        // 받은 위치가 offset - window 이상이 될 때까지 대기
+        synchronized void awaitReceived(long offset, long window) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MS;
+            while (!failed && received < offset - window) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("서버 응답 시간 초과");
+                }
+                wait(remaining);
+            }
+            if (failed) {
+                throw new IOException("서버에서 파일을 받지 못했습니다.");
+            }
+        }
+
+        // 다 받은 파일을 닫고 해시 반환
+        synchronized String finish() throws IOException {
+            channel.close();
+            return AttachmentStore.toHex(digest.digest());
+        }
+
+        void discard() {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
         }
     }
 }
@@ -1,157 +1,874 @@
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChatServer {
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 5; // 종료 시 연결 처리 스레드를 기다리는 최대 시간
+    private static final int READ_BUFFER_SIZE = 16 * 1024;  // 스레드 엔진의 읽기 버퍼 크기
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024; // 스레드 엔진 writer의 쓰기 버퍼 크기
+    private static final int TIMER_TICK_MILLIS = 100;       // 연결별 타이머의 틱 간격
+    private static final int TIMER_SLOTS = 512;             // 연결별 타이머의 슬롯 수 (한 바퀴 약 51초)
+    private static final int DRAIN_POLL_MILLIS = 50;        // 드레인할 때 송신 큐가 비었는지 확인하는 간격
+    private static final int CATCH_UP_BATCH = 256;          // 놓친 메시지를 묶어 보낼 때 프레임 하나에 넣는 메시지 수
+    private static final ChatFrame PING = new ChatFrame("PING"); // 형식별 인코딩을 모든 연결이 공유
+    private static final ChatFrame PONG = new ChatFrame("PONG");
+
+    private final ServerConfig config;
     private ServerSocket serverSocket;
-    private Map<String, Set<ClientHandler>> roomClients = new HashMap<>(); // 채팅방별 사용자 목록
-    private Map<String, String> userCurrentRoom = new HashMap<>();         // 사용자별 현재 채팅방
+    private ExecutorService connectionExecutor;                       // 연결 처리 스레드 (플랫폼 또는 가상 스레드)
+    private NioChatServer nioServer;                                  // NIO 엔진 (engine=nio 인 경우)
+    HashedWheelTimer timer;                                           // 연결별 PING/응답 없는 연결 정리/읽기 재개 (스레드 하나로 모든 연결)
+    private ScheduledExecutorService scheduler;                       // 주기 작업 (송신 큐 통계, 멈춘 업로드 정리, 읽음 확인/접속 상태/채팅방 목록 변경 전송)
+    private ExecutorService diskExecutor;                             // NIO 엔진의 디스크 프레임 처리 스레드 (--disk-threads개)
+    private volatile boolean running = false;
+    private volatile boolean draining = false;                        // 드레인 중 (새 연결을 받지 않음)
+    private final Set<ChatSession> sessions = ConcurrentHashMap.newKeySet(); // 현재 연결된 세션 (종료 시 정리용)
+    private final RoomRegistry rooms = new RoomRegistry();                          // 채팅방별 사용자 목록
+    private final RoomDirectory directory = new RoomDirectory(rooms);               // 채팅방 목록 (생성, 조회, 검색)
+    private final ReadReceipts receipts = new ReadReceipts(rooms);                  // 읽음 확인
+    private final Presence presence = new Presence(this, rooms);                    // 사용자별 연결과 방별 접속자, 입장/퇴장 알림
+    private final MessageLog history;                                               // 채팅방별 메시지 기록과 번호
+    private final RoomPreviews previews;                                            // 채팅방 목록의 마지막 메시지와 안 읽은 수
+    private final MessageIndex index;                                               // 메시지 검색 색인
+    private final DeliveryCursors cursors;                                          // 사용자별로 받았다고 확인한 위치 (다시 접속하면 이어서 보냄)
+    private final FileTransferRelay fileRelay;                                      // 청크 단위 파일 전송 (저장 또는 중계)
+    final ServerMetrics metrics;                                                    // 서버 지표 (엔진이 바이트 수를 기록)
+    private final RateLimiter limiter;                                              // 연결별/방별 전송 제한
+    private final MessageBus bus;                                                   // 다른 노드와 방 메시지를 주고받는 버스
+
+    public ChatServer() {
+        this(new ServerConfig());
+    }
+
+    public ChatServer(ServerConfig config) {
+        this(config, newMessageBus(config));
+    }
+
+    public ChatServer(ServerConfig config, MessageBus bus) {
+        this.config = config;
+        this.bus = bus;
+        this.fileRelay = new FileTransferRelay(this, rooms, openAttachmentStore(config));
+        this.history = openMessageLog(config);
+        this.cursors = openDeliveryCursors(config);
+        this.previews = new RoomPreviews(history);
+        this.metrics = new ServerMetrics(config.metrics);
+        this.limiter = new RateLimiter(config);
+        this.index = new MessageIndex(history, metrics);
+        metrics.gauge("connections", sessions::size);
+        metrics.gauge("rooms", directory::size);
+        metrics.gauge("online_users", presence::onlineUsers);
+        metrics.gauge("outbound_queued", () -> sessions.stream().mapToLong(session -> session.outbound.depth()).sum());
+        metrics.gauge("outbound_dropped", () -> sessions.stream().mapToLong(session -> session.outbound.dropped()).sum());
+        metrics.roomGauge("room_members", rooms::memberCounts);
+    }
+
+    // 클러스터 버스: 클러스터 포트가 있으면 TCP 노드 메시, 없으면 이 프로세스 안의 버스 (노드 하나면 아무 곳에도 보내지 않음)
+    private static MessageBus newMessageBus(ServerConfig config) {
+        if (config.clusterPort == 0) {
+            return new LoopbackBus();
+        }
+        String nodeId = config.nodeId;
+        if (nodeId.isEmpty()) {
+            try {
+                nodeId = InetAddress.getLocalHost().getHostName() + ":" + config.port;
+            } catch (UnknownHostException e) {
+                nodeId = "node:" + config.port;
+            }
+        }
+        return new TcpPeerMesh(nodeId, config.clusterPort, config.clusterPeers);
+    }
+
+    // 메시지 기록 열기: 디렉터리를 쓸 수 없으면 메모리에만 최근 메시지를 유지
+    private static MessageLog openMessageLog(ServerConfig config) {
+        Path dir = config.logDir.isEmpty() ? null : Paths.get(config.logDir);
+        long retentionMillis = TimeUnit.HOURS.toMillis(config.logRetentionHours);
+        try {
+            return new MessageLog(dir, config.logSegmentSize, config.replayCount, retentionMillis);
+        } catch (IOException e) {
+            System.out.println("메시지 기록 에러: " + e.getMessage());
+            try {
+                return new MessageLog(null, config.logSegmentSize, config.replayCount, retentionMillis);
+            } catch (IOException unreachable) {
+                throw new UncheckedIOException(unreachable);
+            }
+        }
+    }
+
+    // 전달 위치 저장소 열기: 디렉터리를 쓸 수 없으면 메모리에만 유지
+    private static DeliveryCursors openDeliveryCursors(ServerConfig config) {
+        try {
+            return new DeliveryCursors(config.cursorDir.isEmpty() ? null : Paths.get(config.cursorDir), config.cursorCacheSize);
+        } catch (IOException e) {
+            System.out.println("전달 위치 저장소 에러: " + e.getMessage());
+            try {
+                return new DeliveryCursors(null, config.cursorCacheSize);
+            } catch (IOException unreachable) {
+                throw new UncheckedIOException(unreachable);
+            }
+        }
+    }
+
+    // 첨부 파일 저장소 열기: 저장소를 쓸 수 없으면 청크 중계 방식으로 동작
+    private static AttachmentStore openAttachmentStore(ServerConfig config) {
+        if (!config.fileTransfer.equals("store")) {
+            return null;
+        }
+        try {
+            return new AttachmentStore(Paths.get(config.attachmentDir));
+        } catch (IOException e) {
+            System.out.println("첨부 파일 저장소 에러: " + e.getMessage());
+            return null;
+        }
+    }
 
     public void start(int port) {
+        running = true;
+        metrics.start(port, config.metricsPort);
+        try {
+            bus.start(this::handleRemote);
+        } catch (IOException e) {
+            System.out.println("클러스터 에러: " + e.getMessage());
+        }
+        restoreSnapshot();
+        timer = new HashedWheelTimer("session-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_SLOTS);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        schedule(fileRelay::expireUploads, 1, TimeUnit.MINUTES);
+        schedule(receipts::flush, config.receiptFlushInterval, TimeUnit.MILLISECONDS);
+        schedule(previews::flush, config.receiptFlushInterval, TimeUnit.MILLISECONDS);
+        schedule(presence::flush, config.presenceInterval, TimeUnit.MILLISECONDS);
+        schedule(directory::flush, config.receiptFlushInterval, TimeUnit.MILLISECONDS);
+        schedule(cursors::flush, config.receiptFlushInterval, TimeUnit.MILLISECONDS);
+        schedule(directory::expire, 1, TimeUnit.MINUTES);
+        schedule(metrics::rotate, config.metricsWindow, TimeUnit.SECONDS);
+        if (config.queueStatsInterval > 0) {
+            schedule(() -> printQueueStats(System.out), config.queueStatsInterval, TimeUnit.SECONDS);
+        }
+        if (config.engine.equals("nio")) {
+            AtomicInteger diskThreadCount = new AtomicInteger();
+            diskExecutor = Executors.newFixedThreadPool(config.diskThreads, task -> new Thread(task, "disk-" + diskThreadCount.getAndIncrement()));
+            nioServer = new NioChatServer(this, config.eventLoops, config.backlog);
+            nioServer.start(port); // 셀렉터 기반 이벤트 루프 엔진
+            return;
+        }
+
+        if (config.engine.equals("virtual")) {
+            connectionExecutor = newVirtualThreadExecutor(); // 연결마다 가상 스레드
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            connectionExecutor = Executors.newCachedThreadPool(task -> new Thread(task, "client-handler-" + threadCount.getAndIncrement()));
+        }
+
         try {
-            serverSocket = new ServerSocket(port);
-            System.out.println("채팅 서버가 포트 " + port + "에서 시작되었습니다.");
+            serverSocket = new ServerSocket(port, config.backlog);
+            System.out.println("채팅 서버(" + config.engine + ")가 포트 " + port + "에서 시작되었습니다.");
 
-            while (true) {
+            while (running) {
                 Socket clientSocket = serverSocket.accept();
-                new ClientHandler(clientSocket).start();
+                clientSocket.setKeepAlive(true); // PING을 모르는 텍스트 클라이언트는 OS가 끊긴 연결을 확인
+                connectionExecutor.execute(new ClientHandler(clientSocket));
             }
         } catch (IOException e) {
-            System.out.println("서버 에러: " + e.getMessage());
+            if (running && !draining) {
+                System.out.println("서버 에러: " + e.getMessage());
+            }
+        }
+    }
+
+    // 주기 작업 등록: 예외가 나도 다음 주기에 계속 실행 (scheduleAtFixedRate는 예외가 난 작업을 다시 실행하지 않음)
+    private void schedule(Runnable task, long period, TimeUnit unit) {
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("주기 작업 에러: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    // 가상 스레드 실행기 (Java 21 이상): 빌드는 Java 17에서도 되도록 리플렉션으로 생성
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual 엔진은 Java 21 이상에서 실행해야 합니다.", e);
+        }
+    }
+
+    // 드레인 (배포 등으로 종료할 때): 새 연결을 받지 않고, 연결마다 흩어진 시각에 다시 연결하라고 알린 뒤 송신 큐가 비기를 기다리고
+    // 방과 접속자 상태를 스냅샷으로 남긴 다음 종료 (모든 클라이언트가 한꺼번에 다시 연결해 오지 않도록)
+    //   서버 → 클라이언트: RECONNECT|대기(밀리초)[|호스트:포트] (바이너리 프로토콜 연결에만, 텍스트 연결에는 안내 한 줄)
+    // 다른 서버로 옮기게 하면 그 서버의 메시지 번호가 이 서버와 다르므로, 클라이언트는 ENTER에 이 서버에서 받은 번호를 붙이지 않음
+    // (놓친 메시지는 그 서버에 남은 전달 위치 기준이라 이 서버에서만 오간 메시지가 빠지거나 겹칠 수 있음)
+    public void drain() {
+        if (!running || draining) {
+            return;
+        }
+        draining = true;
+        System.out.println("드레인 시작: 연결 " + sessions.size() + "개");
+        if (nioServer != null) {
+            nioServer.stopAccepting();
+        } else {
+            try {
+                if (serverSocket != null) {
+                    serverSocket.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        ChatFrame notice = ChatFrame.text("", "SERVER: 서버를 다시 시작합니다. 잠시 후 다시 접속해 주세요.");
+        long spreadMillis = TimeUnit.SECONDS.toMillis(config.reconnectSpread);
+        for (ChatSession session : sessions) {
+            if (session.binary) {
+                String delay = String.valueOf(ThreadLocalRandom.current().nextLong(spreadMillis + 1));
+                session.send(config.reconnectTarget.isEmpty() ? new ChatFrame("RECONNECT", delay)
+                        : new ChatFrame("RECONNECT", delay, config.reconnectTarget));
+            } else {
+                session.send(notice);
+            }
+        }
+        awaitOutbound(TimeUnit.SECONDS.toNanos(config.drainTimeout));
+        writeSnapshot();
+        stop();
+    }
+
+    // 모든 연결의 송신 큐가 빌 때까지 (최대 timeoutNanos) 대기
+    private void awaitOutbound(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() - deadline < 0 && sessions.stream().anyMatch(session -> session.outbound.depth() > 0)) {
+            try {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // 방 목록과 방별 접속자를 스냅샷 파일로 저장
+    private void writeSnapshot() {
+        if (config.snapshotFile.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> users = presence.snapshot();
+        Map<String, List<String>> state = new HashMap<>();
+        for (String roomName : directory.names()) {
+            state.put(roomName, users.getOrDefault(roomName, Collections.emptyList()));
+        }
+        try {
+            new ServerSnapshot(state).write(Paths.get(config.snapshotFile));
+            System.out.println("상태 스냅샷 저장: 방 " + state.size() + "개");
+        } catch (IOException e) {
+            System.out.println("상태 스냅샷 저장 에러: " + e.getMessage());
+        }
+    }
+
+    // 이전 프로세스가 드레인하며 남긴 스냅샷 복구: 방을 목록에 다시 올리고, 접속자가 다시 연결해 와도 새 입장으로 알리지 않음
+    private void restoreSnapshot() {
+        if (config.snapshotFile.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            ServerSnapshot snapshot = ServerSnapshot.take(Paths.get(config.snapshotFile));
+            if (snapshot == null) {
+                return;
+            }
+            int users = 0;
+            for (Map.Entry<String, List<String>> room : snapshot.rooms.entrySet()) {
+                directory.create(room.getKey()); // 아무도 돌아오지 않으면 빈 방처럼 잠시 뒤 목록에서 빠짐
+                presence.restore(room.getKey(), room.getValue());
+                users += room.getValue().size();
+            }
+            System.out.println("상태 스냅샷 복구: 방 " + snapshot.rooms.size() + "개, 접속자 " + users + "명 ("
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
+        } catch (IOException e) {
+            System.out.println("상태 스냅샷 복구 에러: " + e.getMessage());
+        }
+    }
+
+    // 서버 종료: 연결 수락을 멈추고 모든 연결을 닫은 뒤 처리 스레드가 끝나기를 기다림
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        metrics.stop();
+        bus.close();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        index.close();
+        if (timer != null) {
+            timer.stop();
+        }
+        if (nioServer != null) {
+            nioServer.stop();
+            diskExecutor.shutdown();
+            try {
+                diskExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS); // 처리 중인 첨부 파일 쓰기 등을 마침
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            history.close();
+            cursors.close();
+            return;
+        }
+
+        try {
+            if (serverSocket != null) {
+                serverSocket.close(); // 블로킹 중인 accept()를 깨움
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (ChatSession session : sessions) {
+            session.close(); // 블로킹 중인 readLine()을 깨움
+        }
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdown();
+            try {
+                if (!connectionExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    connectionExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                connectionExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        history.close(); // 남은 메시지 기록을 디스크에 씀
+        cursors.close();
+        System.out.println("채팅 서버가 종료되었습니다.");
+    }
+
+    // 수신한 프로토콜 메시지 처리 (모든 엔진 공통)
+    void handleMessage(ChatSession session, ChatFrame frame) {
+        if (isRateLimited(frame.type) && !admit(session, frame)) {
+            return;
+        }
+        long start = metrics.start();
+        dispatch(session, frame);
+        metrics.frameHandled(start);
+    }
+
+    // 디스크를 읽거나 쓸 수 있는 프레임 (방 기록 복구와 재생, 미리보기용 마지막 메시지, 검색, 첨부 파일 저장/읽기)
+    // NIO 엔진은 느린 디스크 하나가 이벤트 루프의 모든 연결을 멈추지 않도록 이 프레임들을 executeBlocking으로 넘김
+    // READ는 입장한 방(기록이 이미 열려 있음)만 처리하므로 넘기지 않음
+    static boolean touchesDisk(String type) {
+        return type.equals("ENTER") || type.equals("WATCH") || type.equals("SEARCH")
+                || type.equals("FILE_BEGIN") || type.equals("FILE_CHUNK") || type.equals("FILE_GET");
+    }
+
+    // 디스크 프레임 처리를 디스크 스레드에 맡김 (연결마다 한 번에 하나만 맡기므로 대기열 길이는 연결 수를 넘지 않음)
+    void executeBlocking(Runnable task) {
+        diskExecutor.execute(task);
+    }
+
+    // 방 인원 수만큼 송신이 불어나는 프레임 (전송 제한 대상)
+    private static boolean isRateLimited(String type) {
+        return type.equals("MESSAGE") || type.equals("FILE") || type.equals("FILE_BEGIN");
+    }
+
+    // 전송 제한 확인: 버릴 프레임이면 보낸 사람에게 알리고 false, 읽기를 늦춰야 하면 멈추게 한 뒤 true
+    private boolean admit(ChatSession session, ChatFrame frame) {
+        String roomName = frame.field(0);
+        long wait = limiter.message(session, rooms.contains(roomName) ? roomName : null);
+        if (wait < 0) {
+            metrics.rateLimited();
+            if (frame.type.equals("FILE_BEGIN")) {
+                session.send(new ChatFrame("FILE_END", frame.field(2), "cancel")); // 업로드를 멈추게 함
+            }
+            if (limiter.shouldNotify(session)) {
+                session.send(ChatFrame.text(roomName, "SERVER: 메시지를 너무 빨리 보내고 있습니다. 잠시 후 다시 보내 주세요."));
+            }
+            return false;
+        }
+        if (wait > 0) {
+            metrics.readPaused();
+            session.pauseReading(wait);
         }
+        return true;
     }
 
-    private class ClientHandler extends Thread {
+    // 받은 바이트 기록 (엔진이 읽을 때마다 호출): 마지막 수신 시각을 갱신하고 바이트 제한을 넘으면 읽기를 늦춤
+    void bytesReceived(ChatSession session, int count) {
+        metrics.bytesIn(count);
+        session.lastReceived = System.nanoTime();
+        long wait = limiter.bytes(session, count);
+        if (wait > 0) {
+            metrics.readPaused();
+            session.pauseReading(wait);
+        }
+    }
+
+    private void dispatch(ChatSession session, ChatFrame frame) {
+        String type = frame.type;
+
+        if (type.equals("HELLO")) {
+            handleHello(session, frame);
+        } else if (type.equals("ENTER")) {
+            handleEnterRoom(session, frame);
+        } else if (type.equals("MESSAGE")) {
+            broadcastChat(frame.field(0), frame.field(1), frame.field(2), true); // 일반 메시지
+        } else if (type.equals("PING")) {
+            session.send(PONG); // 받은 것 자체로 연결이 살아 있음을 확인하므로 PONG은 처리할 내용 없음
+        } else if (type.equals("READ")) {
+            // 입장한 방만: 아무 방 이름으로나 메시지 기록(디렉터리)과 전달 위치 파일이 늘지 않도록 기록을 열기 전에 확인
+            String roomName = frame.field(0);
+            long seq = Long.parseLong(frame.field(1));
+            if (session.userName != null && session.rooms.contains(roomName) && seq <= history.lastSeq(roomName)) {
+                receipts.read(roomName, session.userName, seq);
+                cursors.ack(session.userName, roomName, seq); // 다시 접속하면 이 다음부터 보냄
+                previews.read(roomName, session.userName, seq);
+            }
+        } else if (type.equals("ROOM_LIST")) {
+            directory.list(session, frame.field(0), Integer.parseInt(frame.field(1)), frame.fields.length > 2 ? frame.field(2) : "");
+        } else if (type.equals("SEARCH")) {
+            if (session.rooms.contains(frame.field(0))) { // 방 멤버만 검색
+                index.search(session, frame.field(0), frame.field(1), Long.parseLong(frame.field(2)), Integer.parseInt(frame.field(3)));
+            }
+        } else if (type.equals("ROOM_CREATE")) {
+            directory.create(frame.field(0));
+        } else if (type.equals("WATCH")) {
+            handleWatch(session, frame);
+        } else if (type.equals("FILE")) {
+            handleFileTransfer(frame.field(0), frame.field(1), frame.field(2), frame.data);
+        } else if (type.equals("FILE_BEGIN")) {
+            fileRelay.handleBegin(session, frame);
+        } else if (type.equals("FILE_CHUNK")) {
+            fileRelay.handleChunk(session, frame);
+        } else if (type.equals("FILE_GET")) {
+            fileRelay.handleGet(session, frame);
+        } else if (type.equals("LEAVE")) {
+            handleLeave(session, frame);
+        }
+    }
+
+    // 다른 노드에서 온 방 메시지: 이 노드의 멤버에게만 보내고 다시 전달하지 않음
+    private void handleRemote(ChatFrame frame) {
+        String roomName = frame.field(0);
+        if (frame.type.equals("MESSAGE")) {
+            broadcastChat(roomName, frame.field(1), frame.field(2), false); // 이 노드의 기록에 이 노드의 번호로 남김
+        } else if (frame.type.equals("TEXT") || frame.type.equals("FILE")) {
+            broadcast(rooms.members(roomName), frame);
+        } else if (frame.type.equals("FILE_REF")) {
+            fileRelay.relayRemoteRef(frame);
+        }
+    }
+
+    // 다른 노드에 방 메시지 전달
+    void publish(String roomName, ChatFrame frame) {
+        bus.publish(roomName, frame);
+    }
+
+    // 프로토콜 협상: HELLO|버전[|압축] - 클라이언트가 요청한 바이너리 버전을 지원하면 같은 버전으로 응답하고 바이너리로 전환
+    // 압축을 요청했고 서버에서 켜져 있으면 응답에 압축 방식을 붙이고 이후 큰 프레임을 압축해서 보냄 (이전 클라이언트에게는 붙이지 않음)
+    // 응답은 아직 텍스트 형식으로 나가며, 지원하지 않는 버전이면 0으로 응답하고 텍스트 형식을 유지
+    private void handleHello(ChatSession session, ChatFrame frame) {
+        String version = frame.field(0);
+        if (String.valueOf(ChatFrame.PROTOCOL_VERSION).equals(version)) {
+            boolean compress = config.compression && frame.fields.length > 1 && frame.field(1).equals(ChatFrame.COMPRESSION);
+            session.send(compress ? new ChatFrame("HELLO", version, ChatFrame.COMPRESSION) : new ChatFrame("HELLO", version));
+            session.binary = true;
+            session.compressThreshold = compress ? config.compressionThreshold : 0;
+            session.decoder.switchToBinary();
+        } else {
+            session.send(new ChatFrame("HELLO", "0"));
+        }
+    }
+
+    // 새 연결 등록 (모든 엔진 공통)
+    void handleConnect(ChatSession session) {
+        limiter.connect(session);
+        sessions.add(session);
+        metrics.connectionOpened();
+        scheduleIdleCheck(session, 0);
+    }
+
+    // 연결 상태 확인 예약: 마지막 수신 이후 heartbeat 간격이 지나는 시점 (이미 지났으면 다음 간격 뒤)
+    private void scheduleIdleCheck(ChatSession session, long idleNanos) {
+        long interval = TimeUnit.SECONDS.toNanos(config.heartbeatInterval > 0 ? config.heartbeatInterval : config.idleTimeout);
+        if (interval == 0) {
+            return; // 둘 다 꺼져 있음
+        }
+        long delay = idleNanos < interval ? interval - idleNanos : interval;
+        if (config.idleTimeout > 0 && session.binary) {
+            delay = Math.min(delay, Math.max(TimeUnit.SECONDS.toNanos(config.idleTimeout) - idleNanos, 0));
+        }
+        timer.schedule(() -> checkIdle(session), delay, TimeUnit.NANOSECONDS);
+    }
+
+    // 연결 상태 확인 (타이머 스레드): 받은 것이 없이 heartbeat 간격이 지나면 PING, idle-timeout이 지나면 연결 종료
+    // 매번 받을 때마다 타이머를 다시 걸지 않고 마지막 수신 시각만 기록해 두었다가 예약된 시점에 비교
+    // PING을 모르는 텍스트 프로토콜 연결은 끊지 않음 (TCP keepalive로 확인)
+    private void checkIdle(ChatSession session) {
+        if (!sessions.contains(session)) {
+            return; // 이미 종료된 연결
+        }
+        long idleNanos = System.nanoTime() - session.lastReceived;
+        if (session.binary) {
+            if (config.idleTimeout > 0 && idleNanos >= TimeUnit.SECONDS.toNanos(config.idleTimeout)) {
+                System.out.println("응답 없는 연결 종료: " + session.userName + " (" + TimeUnit.NANOSECONDS.toSeconds(idleNanos) + "초)");
+                metrics.connectionReaped();
+                session.close();
+                return;
+            }
+            if (config.heartbeatInterval > 0 && idleNanos >= TimeUnit.SECONDS.toNanos(config.heartbeatInterval)) {
+                session.send(PING);
+            }
+        }
+        scheduleIdleCheck(session, idleNanos);
+    }
+
+    // 연결 종료 처리 (모든 엔진 공통)
+    void handleDisconnect(ChatSession session) {
+        if (sessions.remove(session)) {
+            metrics.connectionClosed(session.isEvicted());
+        }
+        leaveAllRooms(session);
+        previews.unwatch(session);
+        directory.unsubscribe(session);
+        presence.disconnect(session);
+    }
+
+    // 설정에 따른 클라이언트별 수신 디코더 생성 (모든 엔진 공통): 최대 프레임 크기를 넘으면 예외로 연결을 끊음
+    FrameDecoder newFrameDecoder(FrameDecoder.Listener listener) {
+        return new FrameDecoder(listener, config.maxFrameSize);
+    }
+
+    // 설정에 따른 클라이언트별 송신 큐 생성 (모든 엔진 공통)
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(config.queueCapacity, config.overflowPolicy);
+    }
+
+    // 송신 큐 깊이 통계 출력: 전체 요약과 가장 많이 밀린 클라이언트 목록
+    public void printQueueStats(PrintStream out) {
+        List<ChatSession> snapshot = new ArrayList<>(sessions);
+        snapshot.sort((a, b) -> Integer.compare(b.outbound.depth(), a.outbound.depth()));
+
+        long totalDepth = 0;
+        long totalDropped = 0;
+        for (ChatSession session : snapshot) {
+            totalDepth += session.outbound.depth();
+            totalDropped += session.outbound.dropped();
+        }
+        out.println("[송신 큐] 연결 " + snapshot.size() + "개, 대기 메시지 " + totalDepth + "개, 버린 메시지 " + totalDropped + "개");
+        for (int i = 0; i < Math.min(5, snapshot.size()); i++) {
+            ChatSession session = snapshot.get(i);
+            if (session.outbound.depth() == 0) {
+                break;
+            }
+            out.println("  " + session.userName + "@" + session.rooms
+                    + " 깊이=" + session.outbound.depth()
+                    + " 최대=" + session.outbound.highWatermark()
+                    + " 버림=" + session.outbound.dropped());
+        }
+    }
+
+    private class ClientHandler implements Runnable {
         private Socket socket;
-        private PrintWriter out;
-        private BufferedReader in;
-        private String currentRoom = null;
-        private String userName = null;
+        private final Session session = new Session();
 
         public ClientHandler(Socket socket) {
             this.socket = socket;
         }
 
         public void run() {
+            handleConnect(session);
             try {
-                out = new PrintWriter(socket.getOutputStream(), true);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                String message;
-                while ((message = in.readLine()) != null) {
-                    String[] parts = message.split("\\|");
-                    String type = parts[0];
-
-                    if (type.equals("ENTER")) {
-                        handleEnterRoom(parts[1], parts[2]);
-                    } else if (type.equals("MESSAGE")) {
-                        broadcastMessage(parts[1], parts[2], parts[3], false); // 일반 메시지
-                    } else if (type.equals("FILE")) {
-                        handleFileTransfer(parts[1], parts[2], parts[3], parts[4]);
-                    } else if (type.equals("LEAVE")) {
-                        leaveRoom();
-                    }
+                connectionExecutor.execute(session::writeLoop); // 전용 writer 스레드
+                InputStream in = socket.getInputStream();
+                session.decoder = newFrameDecoder(frame -> handleMessage(session, frame));
+
+                byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+                int count;
+                while ((count = in.read(readBuffer)) != -1) {
+                    bytesReceived(session, count);
+                    session.decoder.feed(readBuffer, 0, count);
                 }
-            } catch (IOException e) {
+            } catch (IOException | RejectedExecutionException | IllegalArgumentException e) {
                 System.out.println("클라이언트 처리 에러: " + e.getMessage());
             } finally {
-                leaveRoom();
+                handleDisconnect(session);
+                session.close();
+            }
+        }
+
+        // 스레드 엔진의 세션: 전용 writer 스레드가 송신 큐를 비움
+        private class Session extends ChatSession {
+            private volatile Thread writerThread;
+            private final byte[] writeBuffer = new byte[WRITE_BUFFER_SIZE]; // writer 스레드 전용 쓰기 버퍼
+            private int buffered = 0;
+
+            Session() {
+                super(newOutboundQueue());
+            }
+
+            @Override
+            protected void messageQueued() {
+                // writer 스레드가 take()로 대기 중이므로 따로 깨울 필요 없음
+            }
+
+            // 송신 큐를 비우는 writer: 큐에 쌓인 프레임을 하나의 버퍼에 모아 쓰고 큐가 비었을 때 한 번만 flush
+            void writeLoop() {
+                writerThread = Thread.currentThread();
+                try {
+                    OutputStream out = socket.getOutputStream();
+                    while (!socket.isClosed()) {
+                        ByteBuffer[] parts = outbound.take();
+                        do {
+                            ByteBuffer notice = skippedNotice();
+                            if (notice != null) {
+                                write(out, notice);
+                            }
+                            for (ByteBuffer part : parts) {
+                                write(out, part);
+                            }
+                        } while ((parts = outbound.poll()) != null);
+                        flush(out);
+                    }
+                } catch (InterruptedException e) {
+                    // close()가 호출됨
+                } catch (IOException e) {
+                    close();
+                }
+            }
+
+            // 공유 프레임(읽기 전용)을 쓰기 버퍼로 복사, 버퍼가 차면 소켓으로 전송
+            private void write(OutputStream out, ByteBuffer data) throws IOException {
+                while (data.hasRemaining()) {
+                    int length = Math.min(data.remaining(), writeBuffer.length - buffered);
+                    data.get(writeBuffer, buffered, length);
+                    buffered += length;
+                    if (buffered == writeBuffer.length) {
+                        flush(out);
+                    }
+                }
+            }
+
+            private void flush(OutputStream out) throws IOException {
+                if (buffered > 0) {
+                    out.write(writeBuffer, 0, buffered);
+                    metrics.bytesOut(buffered);
+                    buffered = 0;
+                }
+            }
+
+            @Override
+            public void close() {
                 try {
                     socket.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
+                Thread writer = writerThread;
+                if (writer != null) {
+                    writer.interrupt(); // 블로킹 중인 take()를 깨움
+                }
             }
         }
+    }
 
-        private void handleEnterRoom(String roomName, String user) {
-            currentRoom = roomName;
-            userName = user;
+    // 입장: ENTER|방|사용자[|마지막으로 받은 번호] - 번호를 보내면 그 이후 메시지를 다시 보내 줌
+    // 번호가 없으면 이 사용자가 읽었다고 확인한 위치 다음부터 (처음 들어온 방이면 최근 메시지만)
+    // 한 연결이 여러 방에 들어갈 수 있고, 이미 들어간 방에 다시 보내면 입장 알림 없이 놓친 메시지만 다시 보냄
+    // 입장 알림은 Presence가 방마다 모아서 보냄
+    private void handleEnterRoom(ChatSession session, ChatFrame frame) {
+        String roomName = frame.field(0);
+        String user = frame.field(1);
+        long since = frame.fields.length > 2 ? Long.parseLong(frame.field(2)) : resumePosition(roomName, user);
+        session.userName = user;
+        boolean entered = session.rooms.add(roomName);
 
-            synchronized (roomClients) {
-                roomClients.computeIfAbsent(roomName, k -> new HashSet<>()).add(this);
-                userCurrentRoom.put(userName, roomName); // 사용자 상태 갱신
-            }
-            // 입장 메시지: 읽음 표시 제외
-            broadcastMessage(roomName, "SERVER", userName + "님이 입장하셨습니다.", true);
+        // 입장과 재생을 기록과 같은 잠금 안에서 처리해서 그 사이에 온 메시지가 빠지거나 두 번 가지 않도록 함
+        history.join(roomName, since, config.replayCount, () -> rooms.join(roomName, session),
+                entries -> replay(session, roomName, since, entries));
+        bus.subscribe(roomName); // 다른 노드에서 이 방의 메시지를 받기 시작
+        receipts.enter(roomName, user, session); // 읽음 상태 추적 시작
+        directory.membersChanged(roomName);
+        if (entered) {
+            presence.enter(roomName, session);
         }
+    }
 
-        private void leaveRoom() {
-            if (currentRoom != null) {
-                synchronized (roomClients) {
-                    roomClients.get(currentRoom).remove(this);
-                    userCurrentRoom.remove(userName); // 사용자 상태 제거
-                    broadcastMessage(currentRoom, "SERVER", userName + "님이 퇴장하셨습니다.", true);
-                    currentRoom = null;
-                }
+    // 목록 화면의 미리보기: 목록에 있는 방만 한 페이지 크기까지 (아무 방 이름으로나 미리보기와 메시지 기록이 늘지 않도록)
+    // 읽은 위치는 연결에 이미 정해진 사용자의 것만 보냄 (아직 입장한 방이 없는 연결만 WATCH의 사용자 이름으로 정함)
+    private void handleWatch(ChatSession session, ChatFrame frame) {
+        if (session.userName == null) {
+            session.userName = frame.field(0);
+        }
+        List<String> watched = new ArrayList<>();
+        for (int i = 1; i < frame.fields.length && watched.size() < RoomDirectory.MAX_PAGE_SIZE; i++) {
+            if (directory.contains(frame.field(i))) {
+                watched.add(frame.field(i));
             }
         }
+        previews.watch(session, session.userName, watched);
+    }
 
-        private void handleFileTransfer(String roomName, String sender, String fileName, String fileContent) {
-            synchronized (roomClients) {
-                if (roomClients.containsKey(roomName)) {
-                    Set<ClientHandler> clients = roomClients.get(roomName);
-
-                    // 읽음 상태 추가
-                    StringBuilder readStatus = new StringBuilder();
-                    for (ClientHandler client : clients) {
-                        if (!client.userName.equals(sender) &&
-                                userCurrentRoom.get(client.userName).equals(roomName)) {
-                            readStatus.append(client.userName).append(" ");
-                        }
-                    }
+    // 번호 없이 입장할 때 이어서 보낼 위치: 확인한 위치가 있으면 그 다음부터 (이미 읽었어도 최근 replayCount개는 함께), 없으면 -1 (최근 메시지만)
+    private long resumePosition(String roomName, String user) {
+        long acked = cursors.get(user, roomName);
+        return acked < 0 ? -1 : Math.max(0, Math.min(acked, history.lastSeq(roomName) - config.replayCount));
+    }
 
-                    String readStatusMessage = readStatus.length() > 0 ? "(" + readStatus.toString().trim() + "읽음)" : "";
-                    String fileBroadcastMsg = "SERVER: " + sender + "님이 파일을 전송했습니다: " + fileName + " " + readStatusMessage;
+    // 놓친 메시지 재생 (방 기록 잠금 안): 바이너리 연결에는 CATCH_UP|방|번호|보낸사람|메시지|... 프레임 몇 개로 묶어서 보냄
+    // 다시 접속한 클라이언트가 메시지마다 프레임을 받지 않고 한 번에 따라잡음 (송신 큐 항목 수도 메시지 수만큼 늘지 않음)
+    // 놓친 메시지가 재생 한도(MessageLog.MAX_REPLAY)보다 많거나 보존 기간이 지나 지워졌으면 보내지 못한 수를 먼저 안내
+    private void replay(ChatSession session, String roomName, long since, List<MessageLog.Entry> entries) {
+        long missed = since >= 0 ? entries.get(0).seq - since - 1 : 0;
+        if (missed > 0) {
+            session.send(ChatFrame.text(roomName, "SERVER: 접속하지 않은 동안의 메시지 중 오래된 " + missed + "개는 다시 보내지 못했습니다."));
+        }
+        if (!session.binary) {
+            for (MessageLog.Entry entry : entries) {
+                session.send(ChatFrame.chat(roomName, entry.seq, entry.sender, entry.message));
+            }
+            return;
+        }
+        for (int i = 0; i < entries.size(); i += CATCH_UP_BATCH) {
+            List<MessageLog.Entry> batch = entries.subList(i, Math.min(entries.size(), i + CATCH_UP_BATCH));
+            String[] fields = new String[1 + batch.size() * 3];
+            fields[0] = roomName;
+            int field = 1;
+            for (MessageLog.Entry entry : batch) {
+                fields[field++] = String.valueOf(entry.seq);
+                fields[field++] = entry.sender;
+                fields[field++] = entry.message;
+            }
+            session.send(new ChatFrame("CATCH_UP", fields));
+        }
+    }
 
-                    // 파일 메시지 전송
-                    String fileMessage = "FILE|" + roomName + "|" + sender + "|" + fileName + "|" + fileContent;
+    // 퇴장: LEAVE|방, 방 이름이 없으면(이전 클라이언트) 들어간 방 전부
+    private void handleLeave(ChatSession session, ChatFrame frame) {
+        if (frame.fields.length > 0) {
+            leaveRoom(session, frame.field(0));
+        } else {
+            leaveAllRooms(session);
+        }
+    }
 
-                    for (ClientHandler client : clients) {
-                        client.out.println(fileMessage); // 파일 전송
-                    }
+    private void leaveAllRooms(ChatSession session) {
+        for (String roomName : session.rooms) {
+            leaveRoom(session, roomName);
+        }
+    }
 
-                    // 읽음 상태 포함 알림 메시지
-                    for (ClientHandler client : clients) {
-                        client.out.println(fileBroadcastMsg);
-                    }
-                }
-            }
+    private void leaveRoom(ChatSession session, String roomName) {
+        if (session.rooms.remove(roomName)) {
+            receipts.leave(roomName, session);
+            rooms.leave(roomName, session, this::evictRoom);
+            directory.membersChanged(roomName);
+            presence.leave(roomName, session); // 마지막 멤버였어도 다른 노드의 멤버에게는 알림
         }
+    }
 
+    // 마지막 멤버가 나간 방의 상태를 모두 내림 (RoomRegistry의 퇴장 처리 안에서 호출되므로 그동안 이 방에 입장할 수 없음)
+    // 메시지 기록은 디스크에 남아 있어서 다시 입장하면 이어서 번호를 붙임
+    private void evictRoom(String roomName) {
+        directory.remove(roomName);
+        limiter.evict(roomName);
+        receipts.evict(roomName);
+        previews.evict(roomName);
+        index.evict(roomName);
+        fileRelay.evict(roomName);
+        history.evict(roomName);
+        bus.unsubscribe(roomName); // 다른 노드가 이 방의 메시지를 더 보내지 않음
+    }
 
-        // 메시지 브로드캐스트: 시스템 메시지는 읽음 표시 제외
-        private void broadcastMessage(String roomName, String sender, String message, boolean isSystem) {
-            if (roomClients.containsKey(roomName)) {
-                Set<ClientHandler> clients = roomClients.get(roomName);
+    // 한 줄짜리 파일 전송 (청크 전송을 지원하지 않는 이전 클라이언트)
+    private void handleFileTransfer(String roomName, String sender, String fileName, byte[] fileContent) {
+        if (rooms.contains(roomName)) {
+            // 파일 메시지 전송
+            ChatFrame fileMessage = new ChatFrame("FILE", new String[]{roomName, sender, fileName}, fileContent);
+            broadcast(rooms.members(roomName), fileMessage);
+            bus.publish(roomName, fileMessage);
+            announceFile(roomName, sender, fileName);
+        }
+    }
 
-                String readMessage = sender + ": " + message;
+    // 파일 전송 완료 알림
+    void announceFile(String roomName, String sender, String fileName) {
+        broadcastMessage(roomName, "SERVER", sender + "님이 파일을 전송했습니다: " + fileName);
+    }
 
-                if (!isSystem) { // SYSTEM 메시지가 아니면 읽음 표시 추가
-                    StringBuilder readStatus = new StringBuilder();
-                    for (ClientHandler client : clients) {
-                        if (!client.userName.equals(sender) &&
-                                userCurrentRoom.get(client.userName).equals(roomName)) {
-                            readStatus.append(client.userName).append(" ");
-                        }
-                    }
-                    if (readStatus.length() > 0) {
-                        readMessage += " (" + readStatus.toString().trim() + "읽음)";
-                    }
-                }
+    // 시스템 메시지 브로드캐스트 (읽음 확인 대상 아님)
+    private void broadcastMessage(String roomName, String sender, String message) {
+        if (rooms.contains(roomName)) {
+            ChatFrame frame = ChatFrame.text(roomName, sender + ": " + message);
+            broadcast(rooms.members(roomName), frame);
+            bus.publish(roomName, frame);
+        }
+    }
 
-                // 모든 클라이언트에게 메시지 전송
-                for (ClientHandler client : clients) {
-                    client.out.println(readMessage);
+    // 채팅 메시지 브로드캐스트: 기록에 번호를 붙여 남기고(디스크 쓰기는 별도 스레드) 보냄, 읽음 상태는 ReadReceipts가 따로 묶어서 전송
+    // publish면 다른 노드에도 전달 (방 잠금 안에서 버스 큐에 넣으므로 다른 노드에서도 이 노드의 메시지 순서가 유지됨)
+    private void broadcastChat(String roomName, String sender, String message, boolean publish) {
+        if (rooms.contains(roomName)) {
+            metrics.message();
+            long start = metrics.start();
+            long seq = history.append(roomName, sender, message, s -> {
+                metrics.roomLockAcquired(start);
+                broadcast(rooms.members(roomName), ChatFrame.chat(roomName, s, sender, message));
+                previews.message(roomName, s, sender, message);
+                index.add(roomName, s, message); // 색인은 색인 스레드가 따로 추가
+                if (publish) {
+                    bus.publish(roomName, new ChatFrame("MESSAGE", roomName, sender, message));
                 }
-            }
+            });
+            receipts.read(roomName, sender, seq); // 보낸 사람은 자기 메시지를 읽은 것으로 처리
+            previews.read(roomName, sender, seq);
         }
     }
 
+    // 프레임을 형식(텍스트/바이너리)별로 한 번만 인코딩해서 모든 클라이언트가 같은 버퍼를 공유
+    private void broadcast(Set<ChatSession> clients, ChatFrame frame) {
+        long start = metrics.start();
+        int recipients = 0;
+        for (ChatSession client : clients) {
+            client.send(frame);
+            recipients++;
+        }
+        metrics.broadcast(start, recipients);
+    }
+
     public static void main(String[] args) {
-        int port = 12345; // 기본 포트
-        ChatServer server = new ChatServer();
-        server.start(port);
+        ServerConfig config = ServerConfig.parse(args); // 기본 포트 12345, 기본 엔진 thread
+        if (config.clusterNodes > 1) {
+            startLocalCluster(args, config.clusterNodes);
+            return;
+        }
+        ChatServer server = new ChatServer(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::drain)); // Ctrl+C, SIGTERM 등으로 종료 시 드레인
+        server.start(config.port);
     }
-}
 
+    // 한 프로세스에서 노드 여러 개 실행: 포트를 하나씩 늘리고 메시지 기록과 전달 위치는 노드별 하위 디렉터리, 스냅샷은 노드별 파일에 둠
+    // (메시지 번호가 노드마다 따로이므로 함께 쓰면 서로의 위치를 덮어씀, 첨부 파일 저장소는 공유)
+    private static void startLocalCluster(String[] args, int nodes) {
+        LoopbackBus bus = new LoopbackBus();
+        for (int i = 0; i < nodes; i++) {
+            ServerConfig config = ServerConfig.parse(args);
+            config.port += i;
+            config.metricsPort = config.metricsPort == 0 ? 0 : config.metricsPort + i;
+            if (!config.logDir.isEmpty()) {
+                config.logDir = Paths.get(config.logDir, "node-" + i).toString();
+            }
+            if (!config.cursorDir.isEmpty()) {
+                config.cursorDir = Paths.get(config.cursorDir, "node-" + i).toString();
+            }
+            if (!config.snapshotFile.isEmpty()) {
+                config.snapshotFile = config.snapshotFile + ".node-" + i;
+            }
+            ChatServer server = new ChatServer(config, i == 0 ? bus : bus.newNode());
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            new Thread(() -> server.start(config.port), "cluster-node-" + i).start();
+        }
+    }
+}
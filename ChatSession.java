@@ -0,0 +1,79 @@
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 서버 측 클라이언트 연결 추상 클래스: 서버 엔진(스레드/NIO)에 관계없이 채팅방 로직이 사용하는 공통 상태
+public abstract class ChatSession {
+    final Set<String> rooms = ConcurrentHashMap.newKeySet(); // 입장한 채팅방 (연결 하나로 여러 방의 메시지를 주고받음)
+    String userName = null;        // 사용자 이름
+    final OutboundQueue outbound;  // 송신 큐 (엔진의 writer가 비움)
+    FrameDecoder decoder;          // 수신 프레임 디코더 (엔진이 설정)
+    volatile boolean binary;       // HELLO 협상으로 바이너리 프로토콜을 사용하는지 여부
+    volatile int compressThreshold; // HELLO 협상으로 압축을 사용하면 압축할 최소 프레임 크기, 0이면 압축하지 않음
+    volatile long lastReceived = System.nanoTime(); // 마지막으로 데이터를 받은 시각 (엔진이 읽을 때마다 갱신)
+    TokenBucket messageBucket;     // 연결별 메시지 전송 제한 (RateLimiter가 설정, 제한이 없으면 null)
+    TokenBucket bytesBucket;       // 연결별 수신 바이트 제한
+    long lastLimitNotice;          // 마지막으로 전송 제한을 알린 시각 (수신 처리 스레드만 사용)
+    private final AtomicBoolean evicted = new AtomicBoolean(); // 송신 큐 초과로 연결을 끊는 중
+
+    protected ChatSession(OutboundQueue outbound) {
+        this.outbound = outbound;
+    }
+
+    // 프레임 전송: 이 연결의 프로토콜 형식으로 인코딩된 결과(프레임마다 형식별로 한 번만 인코딩, 압축도 한 번만)를 사용
+    public void send(ChatFrame frame) {
+        send(frame.encoded(binary, compressThreshold));
+    }
+
+    // 미리 인코딩된 프레임 전송: 여러 세션이 같은 버퍼를 공유하므로 위치(position)만 복제해서 큐에 넣음
+    public void send(ByteBuffer frame) {
+        send(new ByteBuffer[] {frame.duplicate()});
+    }
+
+    // 여러 버퍼로 이루어진 프레임 전송 (이 세션만 사용하는 버퍼여야 함): 부분들이 다른 프레임과 섞이지 않고 함께 전송됨
+    public void send(ByteBuffer[] parts) {
+        if (evicted.get()) {
+            return;
+        }
+        if (!outbound.offer(parts)) {
+            if (evicted.compareAndSet(false, true)) {
+                System.out.println("느린 클라이언트 연결 종료: " + userName + " (송신 대기 " + outbound.depth() + "개)");
+                close();
+            }
+            return;
+        }
+        messageQueued();
+    }
+
+    // 송신 큐 초과로 연결을 끊었는지 여부
+    boolean isEvicted() {
+        return evicted.get();
+    }
+
+    // COALESCE 정책으로 건너뛴 메시지가 있으면 안내 메시지를 만들어 반환 (없으면 null, 특정 방의 메시지가 아니므로 방 이름은 빈 값)
+    ByteBuffer skippedNotice() {
+        int skipped = outbound.takeSkipped();
+        if (skipped == 0) {
+            return null;
+        }
+        return ChatFrame.text("", "SERVER: 전송이 밀려 메시지 " + skipped + "개를 건너뛰었습니다.").encoded(binary).duplicate();
+    }
+
+    // 전송 제한을 넘은 연결의 수신을 잠시 멈춤 (이 연결의 수신 처리 스레드에서만 호출)
+    // 기본은 수신 스레드를 재워서 그동안 소켓을 읽지 않음 (스레드 엔진), 이벤트 루프 엔진은 루프를 막지 않도록 재정의
+    protected void pauseReading(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 송신 큐에 메시지가 들어왔을 때 엔진에 알림
+    protected abstract void messageQueued();
+
+    // 연결 종료 (어느 스레드에서든 호출 가능)
+    public abstract void close();
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// 사용자별 전달 위치: 사용자가 방마다 어디까지 받았다고 확인(READ)했는지 기억해서, 다시 접속해 입장하면 그 다음 메시지부터 보냄
+// 접속하지 않은 동안 쌓인 메시지는 이미 메시지 기록(MessageLog) 세그먼트 파일에 있으므로 사용자마다 따로 쌓지 않고 위치만 둠
+// 최근에 쓴 사용자 capacity명의 위치만 메모리에 두고, 밀려난 사용자는 파일에서 다시 읽음
+// 바뀐 위치는 flush()가 주기적으로 파일에 씀 (비정상 종료해도 한 주기 안의 확인만 잃고, 연결 처리 스레드는 파일을 쓰지 않음)
+//   디렉터리/사용자이름(URL 인코딩)  한 줄에 "방이름(URL 인코딩) 번호"
+// 디렉터리를 지정하지 않으면 밀려난 사용자의 위치는 버림 (다시 입장하면 최근 메시지부터)
+public class DeliveryCursors {
+    private final Path dir;      // 내려 둔 위치를 저장하는 디렉터리 (null이면 메모리만)
+    private final Map<String, Map<String, Long>> cursors; // 사용자별 방별 확인한 번호 (접근 순서, 이 객체로 동기화)
+    private final Map<String, Map<String, Long>> unsaved = new HashMap<>(); // 마지막 저장 이후 바뀐 사용자 (메모리에서 밀려나도 저장할 때까지 남음)
+    private Map<String, Map<String, Long>> writing = Collections.emptyMap(); // flush가 파일로 쓰는 중인 위치 (복사본)
+    private final Object flushLock = new Object(); // flush가 겹치지 않도록 (종료할 때의 flush가 진행 중인 flush를 기다림)
+
+    public DeliveryCursors(Path dir, int capacity) throws IOException {
+        this.dir = dir;
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        this.cursors = new LinkedHashMap<String, Map<String, Long>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Long>> eldest) {
+                return size() > capacity; // 저장하지 않은 위치는 unsaved에 남아 있음
+            }
+        };
+    }
+
+    // 확인한 번호 (없으면 -1)
+    public synchronized long get(String user, String roomName) {
+        Long seq = user(user).get(roomName);
+        return seq == null ? -1 : seq;
+    }
+
+    // 받았다고 확인한 번호 기록 (앞으로만 움직임)
+    public synchronized void ack(String user, String roomName, long seq) {
+        Map<String, Long> rooms = user(user);
+        Long previous = rooms.get(roomName);
+        if (previous == null || seq > previous) {
+            rooms.put(roomName, seq);
+            if (dir != null) {
+                unsaved.put(user, rooms);
+            }
+        }
+    }
+
+    // 바뀐 사용자의 위치를 파일로 저장 (스케줄러에서 주기적으로 호출): 잠금 안에서 복사만 하고 파일은 잠금 밖에서 씀
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, Map<String, Long>> pending = new HashMap<>();
+            synchronized (this) {
+                if (unsaved.isEmpty()) {
+                    return;
+                }
+                unsaved.forEach((user, rooms) -> pending.put(user, new HashMap<>(rooms)));
+                unsaved.clear();
+                writing = pending;
+            }
+            try {
+                pending.forEach(this::spill);
+            } finally {
+                synchronized (this) {
+                    writing = Collections.emptyMap();
+                }
+            }
+        }
+    }
+
+    // 남은 위치를 모두 파일로 저장 (서버 종료 시)
+    public void close() {
+        flush();
+        synchronized (this) {
+            cursors.clear();
+        }
+    }
+
+    // 메모리에 없는 사용자는 저장을 기다리는 위치나 파일에서 읽어 옴 (둘 다 없으면 빈 위치)
+    private Map<String, Long> user(String user) {
+        Map<String, Long> rooms = cursors.get(user);
+        if (rooms == null) {
+            rooms = unsaved.get(user);
+            if (rooms == null) {
+                Map<String, Long> saving = writing.get(user);
+                rooms = saving != null ? new HashMap<>(saving) : load(user);
+            }
+            cursors.put(user, rooms);
+        }
+        return rooms;
+    }
+
+    private Map<String, Long> load(String user) {
+        Map<String, Long> rooms = new HashMap<>();
+        if (dir == null) {
+            return rooms;
+        }
+        Path file = dir.resolve(encode(user));
+        if (!Files.exists(file)) {
+            return rooms;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int space = line.lastIndexOf(' ');
+                if (space > 0) {
+                    rooms.put(URLDecoder.decode(line.substring(0, space), StandardCharsets.UTF_8), Long.parseLong(line.substring(space + 1)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("전달 위치 읽기 에러: " + e.getMessage());
+        }
+        return rooms;
+    }
+
+    // 임시 파일에 쓰고 바꿔치기해서 쓰는 도중에 종료되어도 이전 위치가 남음 (실패하면 다음 flush에서 다시 씀)
+    private void spill(String user, Map<String, Long> rooms) {
+        if (dir == null || rooms.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> room : rooms.entrySet()) {
+            text.append(encode(room.getKey())).append(' ').append(room.getValue()).append('\n');
+        }
+        try {
+            Path file = dir.resolve(encode(user));
+            Path temp = dir.resolve(encode(user) + ".tmp");
+            Files.write(temp, text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("전달 위치 저장 에러: " + e.getMessage());
+            synchronized (this) {
+                Map<String, Long> current = unsaved.computeIfAbsent(user, k -> cursors.containsKey(k) ? cursors.get(k) : new HashMap<>());
+                rooms.forEach((roomName, seq) -> current.merge(roomName, seq, Math::max));
+            }
+        }
+    }
+
+    // 파일 이름으로 쓸 수 있게 인코딩 ("."도 바꿔서 ".."이 상위 디렉터리를 가리키지 않도록)
+    private static String encode(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8).replace(".", "%2E");
+    }
+}
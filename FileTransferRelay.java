@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 청크 단위 파일 전송 중계: 파일 전체를 메모리에 올리지 않고 받은 청크를 바로 방 멤버에게 전달
+//   업로더 → 서버: FILE_BEGIN|방|보낸사람|전송ID|파일이름|크기, FILE_CHUNK|전송ID|오프셋 + 데이터
+//   서버 → 업로더: FILE_ACK|전송ID|받은바이트 (청크마다, 업로더는 확인되지 않은 바이트를 일정량 이하로 유지)
+//   서버 → 수신자: FILE_BEGIN, FILE_CHUNK를 그대로 중계하고 마지막에 FILE_END|전송ID|ok 또는 cancel
+// 같은 전송ID로 FILE_BEGIN을 다시 보내면 서버가 받은 위치를 FILE_ACK로 알려 주어 그 위치부터 이어서 전송
+//
+// 저장소(AttachmentStore)를 사용하면 청크를 중계하지 않고 서버 디스크에 한 번만 저장한 뒤 참조만 알림
+//   업로더 → 서버: FILE_BEGIN 마지막 필드에 SHA-256 해시
+//     업로더가 이미 받을 수 있는 파일(들어가 있는 방에 올라온 파일)이면 업로드 없이 바로 완료,
+//     아니면 평소처럼 업로드를 받고 저장할 때 같은 내용이 이미 있으면 한 벌만 남김 (해시만으로 파일을 알리거나 있는지 알아낼 수 없음)
+//   서버 → 수신자: FILE_REF|방|보낸사람|파일이름|해시|크기
+//   수신자 → 서버: FILE_GET|해시|오프셋|길이, 서버 → 수신자: FILE_DATA|해시|오프셋 + 데이터 (없는 파일이면 FILE_END|해시|cancel)
+// FILE_BEGIN은 그 방에 들어가 있는 연결만 보낼 수 있음
+// FILE_GET은 그 파일이 올라온 방에 들어가 있는 연결에만 응답 (해시를 알아도 다른 방의 첨부 파일은 받을 수 없음)
+//   파일별로 올라온 방은 저장소에 남기므로 재시작한 뒤에도 이전 FILE_REF를 받을 수 있음 (메모리에는 사용 중인 방의 것만 캐시)
+public class FileTransferRelay {
+    static final long RESUME_TIMEOUT_MILLIS = 10 * 60 * 1000; // 업로드가 멈춘 뒤 이어받기를 기다리는 시간
+    static final int MAX_GET_LENGTH = 1024 * 1024;            // FILE_GET 한 번에 보내는 최대 바이트 수
+
+    private final ChatServer server;
+    private final RoomRegistry rooms;
+    private final AttachmentStore store; // 첨부 파일 저장소 (null이면 청크를 바로 중계)
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>(); // 진행 중인 업로드 (전송ID별)
+    private final Map<String, Set<String>> postedRooms = new ConcurrentHashMap<>(); // 해시별 그 파일을 알린 방 (저장소에 남긴 목록의 캐시)
+    private final Map<String, Set<String>> roomHashes = new ConcurrentHashMap<>();  // 방별로 캐시에 올린 해시 (방이 비면 캐시에서 내림)
+
+    // 진행 중인 업로드 하나의 상태
+    private static class Upload {
+        final String roomName;
+        final String sender;
+        final String fileName;
+        final long size;
+        long received = 0;       // 서버가 받아서 중계(또는 저장)한 바이트 수
+        long lastActivity = System.currentTimeMillis();
+        ChatSession uploader;
+        AttachmentStore.Writer writer; // 저장소에 쓰는 중인 임시 파일 (중계 모드에서는 null)
+
+        Upload(ChatFrame begin) {
+            this.roomName = begin.field(0);
+            this.sender = begin.field(1);
+            this.fileName = begin.field(3);
+            this.size = Long.parseLong(begin.field(4));
+        }
+    }
+
+    public FileTransferRelay(ChatServer server, RoomRegistry rooms, AttachmentStore store) {
+        this.server = server;
+        this.rooms = rooms;
+        this.store = store;
+    }
+
+    // 업로드 시작 또는 이어받기
+    void handleBegin(ChatSession session, ChatFrame frame) {
+        String transferId = frame.field(2);
+        long size = Long.parseLong(frame.field(4));
+        if (size < 0 || !session.rooms.contains(frame.field(0))) {
+            // 잘못된 크기 (-1은 저장소에 없는 파일의 크기와 같아 보임)이거나 들어가 있지 않은 방
+            session.send(new ChatFrame("FILE_END", transferId, "cancel"));
+            return;
+        }
+        Upload upload = uploads.get(transferId);
+        if (upload == null && store != null && frame.fields.length > 5 && mayRead(session, frame.field(5))
+                && store.size(frame.field(5)) == size) {
+            // 이 사용자가 이미 받을 수 있는 파일: 데이터를 받지 않고 바로 완료
+            Upload existing = new Upload(frame);
+            session.send(ack(transferId, existing.size));
+            session.send(new ChatFrame("FILE_END", transferId, "ok"));
+            announceStored(existing, frame.field(5), session);
+            return;
+        }
+        if (upload == null) {
+            Upload created = new Upload(frame);
+            if (store != null) {
+                try {
+                    created.writer = store.newWriter();
+                } catch (IOException e) {
+                    System.out.println("첨부 파일 저장 에러: " + e.getMessage());
+                    session.send(new ChatFrame("FILE_END", transferId, "cancel"));
+                    return;
+                }
+            }
+            upload = uploads.putIfAbsent(transferId, created);
+            if (upload == null) {
+                upload = created;
+                if (store == null) {
+                    relay(created.roomName, frame, session); // 새 업로드만 수신자에게 알림
+                }
+            } else if (created.writer != null) {
+                created.writer.abort();
+            }
+        }
+        synchronized (upload) {
+            upload.uploader = session;
+            upload.lastActivity = System.currentTimeMillis();
+            session.send(ack(transferId, upload.received));
+        }
+        if (upload.size == 0) {
+            complete(transferId, upload);
+        }
+    }
+
+    // 청크 수신: 순서가 맞으면 바로 중계하고 확인 응답
+    void handleChunk(ChatSession session, ChatFrame frame) {
+        String transferId = frame.field(0);
+        Upload upload = uploads.get(transferId);
+        if (upload == null) {
+            session.send(new ChatFrame("FILE_END", transferId, "cancel")); // 만료되었거나 알 수 없는 전송
+            return;
+        }
+
+        boolean completed;
+        synchronized (upload) {
+            long offset = Long.parseLong(frame.field(1));
+            if (upload.uploader != session || offset != upload.received) {
+                // 다른 연결의 청크이거나 위치가 어긋남: 서버가 받은 위치를 다시 알려줌
+                session.send(ack(transferId, upload.received));
+                return;
+            }
+            if (upload.received + frame.data.length > upload.size) {
+                cancel(transferId, upload);
+                session.send(ChatFrame.text(upload.roomName, "SERVER: 파일 전송 오류: 크기가 맞지 않습니다. (" + upload.fileName + ")"));
+                return;
+            }
+            if (upload.writer != null) {
+                try {
+                    upload.writer.write(frame.data);
+                } catch (IOException e) {
+                    System.out.println("첨부 파일 저장 에러: " + e.getMessage());
+                    cancel(transferId, upload);
+                    session.send(new ChatFrame("FILE_END", transferId, "cancel"));
+                    return;
+                }
+            } else {
+                relay(upload.roomName, frame, session);
+            }
+            upload.received += frame.data.length;
+            upload.lastActivity = System.currentTimeMillis();
+            session.send(ack(transferId, upload.received));
+            completed = upload.received == upload.size;
+        }
+        if (completed) {
+            complete(transferId, upload);
+        }
+    }
+
+    private void complete(String transferId, Upload upload) {
+        if (!uploads.remove(transferId, upload)) {
+            return;
+        }
+        if (upload.writer == null) {
+            relay(upload.roomName, new ChatFrame("FILE_END", transferId, "ok"), upload.uploader);
+            server.announceFile(upload.roomName, upload.sender, upload.fileName);
+            return;
+        }
+        try {
+            String hash = upload.writer.commit();
+            upload.uploader.send(new ChatFrame("FILE_END", transferId, "ok"));
+            announceStored(upload, hash, upload.uploader);
+        } catch (IOException e) {
+            System.out.println("첨부 파일 저장 에러: " + e.getMessage());
+            upload.writer.abort();
+            upload.uploader.send(new ChatFrame("FILE_END", transferId, "cancel"));
+        }
+    }
+
+    // 저장된 파일의 참조만 방 멤버에게 알림 (파일 내용은 각자 필요할 때 FILE_GET으로 받음)
+    private void announceStored(Upload upload, String hash, ChatSession uploader) {
+        if (!rooms.contains(upload.roomName)) {
+            return;
+        }
+        ChatFrame ref = new ChatFrame("FILE_REF", upload.roomName, upload.sender, upload.fileName, hash, String.valueOf(upload.size));
+        posted(hash, upload.roomName);
+        relay(upload.roomName, ref, uploader);
+        server.publish(upload.roomName, ref); // 다른 노드의 멤버는 저장소 디렉터리를 공유할 때 받을 수 있음
+        server.announceFile(upload.roomName, upload.sender, upload.fileName);
+    }
+
+    // 업로드 취소: 중계 중이던 수신자는 받던 임시 파일을 버리고, 저장 중이던 임시 파일은 삭제
+    private void cancel(String transferId, Upload upload) {
+        if (uploads.remove(transferId, upload)) {
+            if (upload.writer != null) {
+                upload.writer.abort();
+            } else {
+                relay(upload.roomName, new ChatFrame("FILE_END", transferId, "cancel"), null);
+            }
+        }
+    }
+
+    // 오래 멈춘 업로드 정리
+    void expireUploads() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Upload> entry : uploads.entrySet()) {
+            Upload upload = entry.getValue();
+            if (now - upload.lastActivity > RESUME_TIMEOUT_MILLIS) {
+                synchronized (upload) {
+                    cancel(entry.getKey(), upload);
+                }
+            }
+        }
+    }
+
+    // 저장된 파일의 일부 전송: 매핑된 파일 영역을 복사하지 않고 헤더 뒤에 붙여 송신 큐에 넣음
+    void handleGet(ChatSession session, ChatFrame frame) {
+        String hash = frame.field(0);
+        long offset = Long.parseLong(frame.field(1));
+        int length = (int) Math.min(Long.parseLong(frame.field(2)), MAX_GET_LENGTH);
+        long size = store == null || !session.binary || !mayRead(session, hash) ? -1 : store.size(hash);
+        if (size < 0 || offset < 0 || offset > size || length < 0) {
+            session.send(new ChatFrame("FILE_END", hash, "cancel"));
+            return;
+        }
+        try {
+            ByteBuffer data = store.read(hash, offset, length);
+            session.send(ChatFrame.binaryWithData("FILE_DATA", new String[] {hash, String.valueOf(offset)}, data));
+        } catch (IOException e) {
+            System.out.println("첨부 파일 읽기 에러: " + e.getMessage());
+            session.send(new ChatFrame("FILE_END", hash, "cancel"));
+        }
+    }
+
+    // 다른 노드에서 저장된 파일의 참조
+    void relayRemoteRef(ChatFrame ref) {
+        posted(ref.field(3), ref.field(0));
+        relay(ref.field(0), ref, null);
+    }
+
+    // 파일을 알린 방 기록: 저장소에 있는 파일이면 디스크에도 남김 (저장소를 공유하지 않는 다른 노드의 파일은 캐시에만)
+    private void posted(String hash, String roomName) {
+        if (store != null && store.contains(hash)) {
+            try {
+                store.addRoom(hash, roomName);
+            } catch (IOException e) {
+                System.out.println("첨부 파일 저장 에러: " + e.getMessage());
+            }
+        }
+        postedRooms.computeIfAbsent(hash, this::loadPostedRooms).add(roomName);
+        roomHashes.computeIfAbsent(roomName, k -> ConcurrentHashMap.newKeySet()).add(hash);
+    }
+
+    // 해시별로 파일을 알린 방 (캐시에 없으면 저장소에서 읽음, 아무 방에도 알린 적 없는 해시는 캐시하지 않음)
+    private Set<String> postedRooms(String hash) {
+        Set<String> posted = postedRooms.get(hash);
+        if (posted != null) {
+            return posted;
+        }
+        posted = loadPostedRooms(hash);
+        if (posted.isEmpty()) {
+            return posted;
+        }
+        Set<String> previous = postedRooms.putIfAbsent(hash, posted);
+        return previous != null ? previous : posted;
+    }
+
+    private Set<String> loadPostedRooms(String hash) {
+        Set<String> posted = ConcurrentHashMap.newKeySet();
+        if (store != null) {
+            try {
+                posted.addAll(store.rooms(hash));
+            } catch (IOException e) {
+                System.out.println("첨부 파일 읽기 에러: " + e.getMessage());
+            }
+        }
+        for (String roomName : posted) {
+            roomHashes.computeIfAbsent(roomName, k -> ConcurrentHashMap.newKeySet()).add(hash);
+        }
+        return posted;
+    }
+
+    // 방이 비어서 지워짐: 그 방으로 캐시에 올린 해시를 내림 (다시 필요하면 저장소에서 읽음)
+    void evict(String roomName) {
+        Set<String> hashes = roomHashes.remove(roomName);
+        if (hashes != null) {
+            for (String hash : hashes) {
+                postedRooms.remove(hash);
+            }
+        }
+    }
+
+    // 그 파일이 올라온 방 중 하나에 들어가 있는 연결인지
+    private boolean mayRead(ChatSession session, String hash) {
+        if (!AttachmentStore.isValidHash(hash)) {
+            return false;
+        }
+        for (String roomName : postedRooms(hash)) {
+            if (session.rooms.contains(roomName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 청크 전송을 이해하는(바이너리 프로토콜) 방 멤버에게 프레임 중계, 프레임은 한 번만 인코딩
+    private void relay(String roomName, ChatFrame frame, ChatSession except) {
+        for (ChatSession member : rooms.members(roomName)) {
+            if (member != except && member.binary) {
+                member.send(frame);
+            }
+        }
+    }
+
+    private static ChatFrame ack(String transferId, long received) {
+        return new ChatFrame("FILE_ACK", transferId, String.valueOf(received));
+    }
+}
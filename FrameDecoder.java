@@ -0,0 +1,126 @@
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+// 수신 바이트 스트림을 프레임으로 나누는 디코더 (연결마다 하나)
+// 처음에는 줄 단위 텍스트 형식이고, HELLO 협상이 끝나면 switchToBinary()로 길이 기반 바이너리 형식으로 전환
+public class FrameDecoder {
+    // 프레임 하나가 완성될 때마다 호출
+    public interface Listener {
+        void frameDecoded(ChatFrame frame);
+    }
+
+    private final Listener listener;
+    private final int maxFrameLength;       // 프레임 최대 길이 (바이너리는 본문, 텍스트는 한 줄), 넘으면 예외
+    private byte[] buffer = new byte[4096]; // 아직 처리하지 않은 수신 데이터
+    private int start = 0;                  // 처리하지 않은 데이터의 시작
+    private int end = 0;                    // 처리하지 않은 데이터의 끝
+    private int scanned = 0;                // 텍스트 형식에서 줄바꿈을 이미 찾아본 위치
+    private boolean binary = false;
+    private Inflater inflater;              // 압축 프레임을 처음 받을 때 만듦
+
+    public FrameDecoder(Listener listener) {
+        this(listener, ChatFrame.MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(Listener listener, int maxFrameLength) {
+        this.listener = listener;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    // 이후 데이터는 바이너리 형식으로 해석 (리스너 안에서 호출하면 같은 묶음의 나머지 바이트부터 적용)
+    public void switchToBinary() {
+        binary = true;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    // 수신한 바이트를 추가하고 완성된 프레임을 모두 리스너에 전달
+    public void feed(byte[] bytes, int offset, int length) {
+        append(bytes, offset, length);
+        while (binary ? decodeBinaryFrame() : decodeTextLine()) {
+            // 완성된 프레임이 없을 때까지 반복
+        }
+        compact();
+    }
+
+    private boolean decodeTextLine() {
+        for (int i = Math.max(start, scanned); i < end; i++) {
+            if (buffer[i] == '\n') {
+                int length = i - start;
+                if (length > 0 && buffer[i - 1] == '\r') {
+                    length--;
+                }
+                String line = new String(buffer, start, length, ChatFrame.TEXT_CHARSET);
+                start = i + 1;
+                scanned = start;
+                listener.frameDecoded(ChatFrame.decodeText(line));
+                return true;
+            }
+        }
+        scanned = end;
+        if (end - start > maxFrameLength) {
+            throw new IllegalArgumentException("줄이 너무 깁니다: " + (end - start));
+        }
+        return false;
+    }
+
+    private boolean decodeBinaryFrame() {
+        if (end - start < 2) {
+            return false;
+        }
+        int typeCode = buffer[start] & 0xFF;
+        long header = ChatFrame.readVarint(buffer, start + 1, end);
+        if (header == -1) {
+            return false;
+        }
+        int bodyLength = (int) (header >>> 32);
+        int bodyStart = (int) header;
+        if (bodyLength < 0 || bodyLength > maxFrameLength) {
+            throw new IllegalArgumentException("프레임이 너무 큽니다: " + bodyLength);
+        }
+        if (end - bodyStart < bodyLength) {
+            return false; // 본문이 다 올 때까지 기다림 (버퍼는 선언한 길이가 아니라 실제로 받은 만큼 append에서 늘림)
+        }
+        start = bodyStart + bodyLength;
+        if (ChatFrame.isCompressed(typeCode)) {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+            listener.frameDecoded(ChatFrame.decodeCompressed(typeCode, buffer, bodyStart, bodyLength, inflater, maxFrameLength));
+            return true;
+        }
+        listener.frameDecoded(ChatFrame.decodeBinary(typeCode, buffer, bodyStart, bodyLength));
+        return true;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (buffer.length - end < length) {
+            compact();
+            ensureCapacity(end - start + length);
+        }
+        System.arraycopy(bytes, offset, buffer, end, length);
+        end += length;
+    }
+
+    // 처리한 데이터를 버리고 남은 데이터를 버퍼 앞으로 이동
+    private void compact() {
+        if (start == 0) {
+            return;
+        }
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        scanned -= start;
+        start = 0;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (buffer.length - start < needed) {
+            compact();
+            if (buffer.length < needed) {
+                buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+            }
+        }
+    }
+}
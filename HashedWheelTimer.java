@@ -0,0 +1,109 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// 해시 휠 타이머: 연결마다 타이머(스레드, ScheduledFuture)를 두지 않고 스레드 하나가 슬롯 배열을 틱마다 한 칸씩 돌며 만료된 작업을 실행
+// 작업은 (마감 틱 % 슬롯 수) 슬롯에 들어가고 남은 바퀴 수가 0이 되면 실행됨 (등록/취소는 O(1), 정밀도는 틱 간격)
+// 작업은 타이머 스레드에서 실행되므로 짧게 끝나야 함 (큐에 넣기, 연결 닫기 요청 정도)
+public class HashedWheelTimer {
+    private final long tickNanos;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>(); // 등록된 작업 (타이머 스레드가 틱마다 슬롯으로 옮김)
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick = 0;        // 현재 틱 (타이머 스레드만 사용)
+    private final long startTime;
+
+    // 예약된 작업 하나
+    public static class Timeout {
+        final Runnable task;
+        final long deadline;       // 실행할 시각 (System.nanoTime 기준)
+        long remainingRounds;      // 슬롯에 들어간 뒤 남은 바퀴 수 (타이머 스레드만 사용)
+        volatile boolean cancelled;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true; // 슬롯에서는 다음에 그 슬롯을 지날 때 지움
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int slots) {
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new ArrayDeque[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // delay 뒤에 task 실행 (어느 스레드에서든 호출 가능)
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+            transferPending();
+            expire(wheel[(int) (tick % wheel.length)]);
+        }
+    }
+
+    // 새로 등록된 작업을 마감 틱의 슬롯에 넣음 (이미 지난 마감은 현재 틱으로)
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long deadlineTick = Math.max((timeout.deadline - startTime + tickNanos - 1) / tickNanos, tick);
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+            wheel[(int) (deadlineTick % wheel.length)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> slot) {
+        Iterator<Timeout> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.out.println("타이머 작업 에러: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+}
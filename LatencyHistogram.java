@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 지연 시간 히스토그램 (HDR 히스토그램과 같은 로그-선형 구간): 값의 크기와 관계없이 상대 오차 약 3% 이내
+// 구간 배열이 고정 크기라 기록할 때 할당이 없고, 여러 스레드가 잠금 없이 동시에 기록할 수 있음
+//   0 ~ 63: 값마다 한 구간
+//   64 이상: 2의 거듭제곱 범위마다 SUB_BUCKETS개 구간
+// 누적 값과 함께 rotate()로 나눈 직전 시간 구간의 값도 조회할 수 있음 (프로세스가 오래 돌아도 최근 지연을 볼 수 있도록)
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;          // 2의 거듭제곱 범위 하나를 나누는 구간 수
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;       // 이보다 작은 값은 정확히 기록
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (64 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private long[] windowStart = new long[BUCKET_COUNT];          // 현재 시간 구간이 시작할 때의 누적 기록 수 (rotate에서만 사용)
+    private volatile long[] lastWindow = new long[BUCKET_COUNT];  // 직전에 끝난 시간 구간의 기록 수
+
+    // 값 기록 (음수는 0으로 처리)
+    public void record(long value) {
+        counts.incrementAndGet(bucket(Math.max(0, value)));
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = (64 - Long.numberOfLeadingZeros(value)) - (SUB_BITS + 1);
+        int top = (int) (value >>> shift); // SUB_BUCKETS ~ 2 * SUB_BUCKETS - 1
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    // 구간에 들어가는 가장 큰 값
+    static long highestValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long top = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public long count() {
+        return count(snapshot());
+    }
+
+    // 백분위 값 (percentile: 0 ~ 100), 기록이 없으면 0
+    public long percentile(double percentile) {
+        return percentile(snapshot(), percentile);
+    }
+
+    public long max() {
+        return max(snapshot());
+    }
+
+    // 시간 구간을 넘김: 지금까지의 누적에서 구간 시작 때의 누적을 뺀 값을 직전 구간으로 둠 (한 스레드에서 주기적으로 호출)
+    public void rotate() {
+        long[] now = snapshot();
+        long[] window = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            window[i] = now[i] - windowStart[i];
+        }
+        windowStart = now;
+        lastWindow = window;
+    }
+
+    // 직전 시간 구간의 기록 수, 백분위 값, 최대값
+    public long windowCount() {
+        return count(lastWindow);
+    }
+
+    public long windowPercentile(double percentile) {
+        return percentile(lastWindow, percentile);
+    }
+
+    public long windowMax() {
+        return max(lastWindow);
+    }
+
+    private static long count(long[] snapshot) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static long percentile(long[] snapshot, double percentile) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(snapshot.length - 1);
+    }
+
+    private static long max(long[] snapshot) {
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            if (snapshot[i] > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    // 다른 히스토그램의 기록을 더함
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+}
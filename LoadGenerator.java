@@ -0,0 +1,423 @@
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// 화면 없는 부하 생성기: 가상의 사용자 N명이 M개 방에 들어가 정해진 속도로 메시지와 파일을 보내고
+// 종단 간 지연 시간(보낸 시각 → 각 수신자가 받은 시각)과 처리량을 측정
+//   java LoadGenerator --users=1000 --rooms=10 --rate=2000 --duration=30
+// 보낸 시각은 실제로 보낸 시각이 아니라 "보냈어야 할" 시각이므로 서버가 밀려 송신이 늦어진 시간도 지연에 포함됨
+public class LoadGenerator {
+    private static final int CHUNK_SIZE = 64 * 1024;    // 파일 업로드 청크 크기
+    private static final int UPLOAD_WINDOW = 4 * CHUNK_SIZE;
+    private static final long ACK_TIMEOUT_MS = 30 * 1000;
+    private static final String MESSAGE_PREFIX = "LOAD ";  // 메시지 본문: "LOAD <보낼 시각(nanoTime)>"
+    private static final String FILE_PREFIX = "load-";     // 파일 이름: "load-<보낼 시각(nanoTime)>.bin"
+
+    // 실행 옵션: "--이름=값"
+    String host = "127.0.0.1";
+    int port = 12345;
+    int users = 100;          // 동시 연결 수
+    int rooms = 10;           // 방 수 (사용자는 방에 골고루 배치)
+    int rate = 1000;          // 전체 메시지 전송 속도(개/초)
+    double fileRate = 0;      // 전체 파일 전송 속도(개/초)
+    int fileSize = 256 * 1024;
+    int duration = 30;        // 측정 시간(초)
+    int warmup = 5;           // 측정 전 예열 시간(초), 이 동안의 기록은 버림
+    int senders = 4;          // 메시지를 보내는 스레드 수
+    boolean binary = true;    // 바이너리 프로토콜 협상 여부
+
+    private final List<SimUser> sessions = new ArrayList<>();
+    private final ExecutorService uploads = Executors.newCachedThreadPool(daemon("load-upload"));
+    private volatile boolean running = true;
+    private volatile LatencyHistogram messageLatency = new LatencyHistogram(); // 마이크로초
+    private volatile LatencyHistogram fileLatency = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder filesSent = new LongAdder();
+    private final LongAdder filesDelivered = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        parse(args).run();
+    }
+
+    static LoadGenerator parse(String[] args) {
+        LoadGenerator load = new LoadGenerator();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("잘못된 인자: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            if (key.equals("host")) {
+                load.host = value;
+            } else if (key.equals("port")) {
+                load.port = Integer.parseInt(value);
+            } else if (key.equals("users")) {
+                load.users = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("rooms")) {
+                load.rooms = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("rate")) {
+                load.rate = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("file-rate")) {
+                load.fileRate = Math.max(0, Double.parseDouble(value));
+            } else if (key.equals("file-size")) {
+                load.fileSize = Math.max(8, Integer.parseInt(value));
+            } else if (key.equals("duration")) {
+                load.duration = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("warmup")) {
+                load.warmup = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("senders")) {
+                load.senders = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("protocol")) {
+                if (!value.equals("binary") && !value.equals("text")) {
+                    throw new IllegalArgumentException("알 수 없는 프로토콜: " + value);
+                }
+                load.binary = value.equals("binary");
+            } else {
+                throw new IllegalArgumentException("알 수 없는 옵션: " + key);
+            }
+        }
+        return load;
+    }
+
+    void run() throws Exception {
+        System.out.println("연결 중: 사용자 " + users + "명, 방 " + rooms + "개 (" + host + ":" + port + ")");
+        for (int i = 0; i < users; i++) {
+            SimUser user = new SimUser("load-" + i, "부하방" + (i % rooms));
+            user.connect();
+            sessions.add(user);
+        }
+        Thread.sleep(1000); // 입장 알림과 기록 재생이 끝나기를 기다림
+        resetMeasurements(); // 재생된 이전 실행의 메시지는 측정에서 제외
+        System.out.println("전송 시작: 메시지 " + rate + "개/초, 파일 " + fileRate + "개/초 (" + fileSize + " bytes)");
+
+        List<Thread> pacers = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            int index = i;
+            pacers.add(start("load-sender-" + i, () -> paceMessages(index)));
+        }
+        if (fileRate > 0) {
+            pacers.add(start("load-file-sender", this::paceFiles));
+        }
+
+        long startNanos = System.nanoTime();
+        long lastSent = 0;
+        long lastDelivered = 0;
+        for (int second = 1; second <= warmup + duration; second++) {
+            LockSupport.parkNanos(startNanos + TimeUnit.SECONDS.toNanos(second) - System.nanoTime());
+            if (second == warmup) {
+                resetMeasurements();
+                lastSent = 0;
+                lastDelivered = 0;
+            }
+            long nowSent = sent.sum();
+            long nowDelivered = delivered.sum();
+            System.out.printf("[%3ds]%s 전송 %d/s, 수신 %d/s, 지연 p50=%s p99=%s p999=%s%n",
+                    second, second <= warmup ? " (예열)" : "", nowSent - lastSent, nowDelivered - lastDelivered,
+                    millis(messageLatency.percentile(50)), millis(messageLatency.percentile(99)), millis(messageLatency.percentile(99.9)));
+            lastSent = nowSent;
+            lastDelivered = nowDelivered;
+        }
+
+        running = false;
+        for (Thread pacer : pacers) {
+            pacer.join();
+        }
+        Thread.sleep(500); // 전송 중이던 메시지 수신 대기
+        report(System.out);
+        for (SimUser user : sessions) {
+            user.close();
+        }
+        uploads.shutdownNow();
+    }
+
+    private void resetMeasurements() {
+        messageLatency = new LatencyHistogram();
+        fileLatency = new LatencyHistogram();
+        sent.reset();
+        delivered.reset();
+        filesSent.reset();
+        filesDelivered.reset();
+        errors.reset();
+    }
+
+    // 메시지 전송: 스레드마다 전체 속도의 1/senders로, 맡은 사용자를 돌아가며 사용
+    private void paceMessages(int index) {
+        double perThread = (double) rate / senders;
+        if (perThread <= 0) {
+            return;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / perThread);
+        long next = System.nanoTime();
+        int cursor = index;
+        while (running) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            // 밀린 만큼 한꺼번에 보내고, 각 메시지에는 원래 보냈어야 할 시각을 기록
+            while (next <= now && running) {
+                SimUser user = sessions.get(cursor % sessions.size());
+                cursor += senders;
+                user.sendMessage(next);
+                next += interval;
+            }
+        }
+    }
+
+    private void paceFiles() {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / fileRate);
+        long next = System.nanoTime();
+        int cursor = 0;
+        while (running) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            SimUser user = sessions.get(cursor++ % sessions.size());
+            long scheduled = next;
+            uploads.execute(() -> user.sendFile(scheduled));
+            next += interval;
+        }
+    }
+
+    void report(PrintStream out) {
+        double seconds = duration;
+        out.println("=== 결과 (측정 " + duration + "초, 사용자 " + users + "명, 방 " + rooms + "개, "
+                + (binary ? "바이너리" : "텍스트") + " 프로토콜) ===");
+        out.printf("메시지: 전송 %d (%.1f/s), 수신 %d (%.1f/s)%n",
+                sent.sum(), sent.sum() / seconds, delivered.sum(), delivered.sum() / seconds);
+        printLatency(out, "메시지 지연", messageLatency);
+        if (fileRate > 0) {
+            out.printf("파일: 전송 %d (%.1f/s), 수신 알림 %d%n", filesSent.sum(), filesSent.sum() / seconds, filesDelivered.sum());
+            printLatency(out, "파일 지연", fileLatency);
+        }
+        if (errors.sum() > 0) {
+            out.println("오류: " + errors.sum());
+        }
+    }
+
+    private static void printLatency(PrintStream out, String label, LatencyHistogram histogram) {
+        out.println(label + ": p50=" + millis(histogram.percentile(50)) + " p99=" + millis(histogram.percentile(99))
+                + " p999=" + millis(histogram.percentile(99.9)) + " max=" + millis(histogram.max())
+                + " (" + histogram.count() + "건)");
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2fms", micros / 1000.0);
+    }
+
+    private static Thread start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // 가상의 사용자 한 명: 연결 하나와 수신 스레드 하나 (ChatRoomWindow와 같은 프로토콜 처리)
+    private class SimUser {
+        final String name;
+        final String room;
+        private Socket socket;
+        private OutputStream out;
+        private FrameDecoder decoder;
+        private boolean negotiated;       // 서버와 바이너리 프로토콜을 협상했는지 여부
+        private boolean helloReceived;
+        private final Map<String, long[]> acks = new ConcurrentHashMap<>(); // 업로드별 서버 확인 위치
+
+        SimUser(String name, String room) {
+            this.name = name;
+            this.room = room;
+        }
+
+        void connect() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new BufferedOutputStream(socket.getOutputStream());
+            decoder = new FrameDecoder(this::handleFrame);
+            InputStream in = socket.getInputStream();
+            if (binary) {
+                send(new ChatFrame("HELLO", String.valueOf(ChatFrame.PROTOCOL_VERSION)));
+                socket.setSoTimeout(1000);
+                byte[] buffer = new byte[4096];
+                try {
+                    while (!helloReceived) {
+                        int count = in.read(buffer);
+                        if (count == -1) {
+                            throw new EOFException("서버가 연결을 닫았습니다.");
+                        }
+                        decoder.feed(buffer, 0, count);
+                    }
+                } catch (SocketTimeoutException e) {
+                    // 바이너리 프로토콜을 모르는 서버: 텍스트 형식 유지
+                }
+                socket.setSoTimeout(0);
+            }
+            send(new ChatFrame("ENTER", room, name));
+            start("load-reader-" + name, () -> receive(in));
+        }
+
+        private void receive(InputStream in) {
+            byte[] buffer = new byte[16 * 1024];
+            try {
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    decoder.feed(buffer, 0, count);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    errors.increment();
+                }
+            }
+        }
+
+        private void handleFrame(ChatFrame frame) {
+            long now = System.nanoTime();
+            if (frame.type.equals("HELLO")) {
+                helloReceived = true;
+                if (frame.field(0).equals(String.valueOf(ChatFrame.PROTOCOL_VERSION))) {
+                    negotiated = true;
+                    decoder.switchToBinary();
+                }
+            } else if (frame.type.equals("PING")) {
+                // 서버가 조용한 연결을 확인함: 응답하지 않으면 유휴 연결로 끊겨서 오류로 집계됨
+                try {
+                    send(new ChatFrame("PONG"));
+                } catch (IOException e) {
+                    // 수신 스레드에서 연결 종료 처리
+                }
+            } else if (frame.type.equals("CHAT")) {
+                recordMessage(frame.field(3), now);
+            } else if (frame.type.equals("TEXT")) {
+                // 텍스트 형식: "보낸사람: LOAD <시각>" 또는 "SERVER: ...님이 파일을 전송했습니다: load-<시각>.bin"
+                String line = frame.field(1);
+                int file = line.lastIndexOf(FILE_PREFIX);
+                if (line.startsWith("SERVER: ") && file >= 0 && line.endsWith(".bin")) {
+                    Long scheduled = parseNanos(line.substring(file + FILE_PREFIX.length(), line.length() - 4));
+                    if (scheduled != null) {
+                        fileLatency.record((now - scheduled) / 1000);
+                        filesDelivered.increment();
+                    }
+                } else {
+                    int separator = line.indexOf(": ");
+                    if (separator >= 0) {
+                        recordMessage(line.substring(separator + 2), now);
+                    }
+                }
+            } else if (frame.type.equals("FILE_ACK")) {
+                long[] acked = acks.get(frame.field(0));
+                if (acked != null) {
+                    synchronized (acked) {
+                        acked[0] = Math.max(acked[0], Long.parseLong(frame.field(1)));
+                        acked.notifyAll();
+                    }
+                }
+            }
+        }
+
+        private void recordMessage(String message, long now) {
+            if (message.startsWith(MESSAGE_PREFIX)) {
+                Long scheduled = parseNanos(message.substring(MESSAGE_PREFIX.length()));
+                if (scheduled != null) {
+                    messageLatency.record((now - scheduled) / 1000);
+                    delivered.increment();
+                }
+            }
+        }
+
+        void sendMessage(long scheduledNanos) {
+            try {
+                send(new ChatFrame("MESSAGE", room, name, MESSAGE_PREFIX + scheduledNanos));
+                sent.increment();
+            } catch (IOException e) {
+                errors.increment();
+            }
+        }
+
+        // 파일 전송: 바이너리면 청크 업로드(서버 확인 창 유지), 텍스트면 FILE 한 줄 (Base64)
+        void sendFile(long scheduledNanos) {
+            String fileName = FILE_PREFIX + scheduledNanos + ".bin";
+            byte[] content = new byte[fileSize];
+            ThreadLocalRandom.current().nextBytes(content); // 내용이 매번 달라서 서버 저장소의 중복 제거가 적용되지 않음
+            try {
+                if (negotiated) {
+                    upload(fileName, content);
+                } else {
+                    send(new ChatFrame("FILE", new String[]{room, name, fileName}, content));
+                }
+                filesSent.increment();
+            } catch (IOException | InterruptedException e) {
+                errors.increment();
+            }
+        }
+
+        private void upload(String fileName, byte[] content) throws IOException, InterruptedException {
+            String transferId = UUID.randomUUID().toString();
+            long[] acked = {-1};
+            acks.put(transferId, acked);
+            try {
+                send(new ChatFrame("FILE_BEGIN", room, name, transferId, fileName, String.valueOf(content.length)));
+                for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+                    awaitAcked(acked, offset - UPLOAD_WINDOW);
+                    byte[] chunk = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + CHUNK_SIZE));
+                    send(new ChatFrame("FILE_CHUNK", new String[]{transferId, String.valueOf(offset)}, chunk));
+                }
+                awaitAcked(acked, content.length);
+            } finally {
+                acks.remove(transferId);
+            }
+        }
+
+        private void awaitAcked(long[] acked, long offset) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MS;
+            synchronized (acked) {
+                while (acked[0] < offset) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new IOException("서버 응답 시간 초과");
+                    }
+                    acked.wait(remaining);
+                }
+            }
+        }
+
+        synchronized void send(ChatFrame frame) throws IOException {
+            frame.writeTo(out, negotiated);
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Long parseNanos(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
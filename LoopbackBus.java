@@ -0,0 +1,64 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 프로세스 안 메시지 버스: 같은 JVM의 여러 ChatServer를 한 클러스터처럼 연결 (한 대에서 클러스터 동작 확인용)
+// 노드가 하나뿐이면(기본값) 전달할 곳이 없으므로 publish는 아무 일도 하지 않음
+public class LoopbackBus implements MessageBus {
+    private final List<LoopbackBus> nodes;                                 // 같은 클러스터의 노드 (자신 포함)
+    private final Set<String> localRooms = ConcurrentHashMap.newKeySet(); // 이 노드에 멤버가 있는 방
+    private final ExecutorService inbox;                                   // 받은 메시지를 순서대로 처리하는 스레드
+    private volatile Listener listener;
+
+    public LoopbackBus() {
+        this(new CopyOnWriteArrayList<>());
+    }
+
+    private LoopbackBus(List<LoopbackBus> nodes) {
+        this.nodes = nodes;
+        this.inbox = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "loopback-bus-" + nodes.size());
+            thread.setDaemon(true);
+            return thread;
+        });
+        nodes.add(this);
+    }
+
+    // 같은 클러스터에 노드 추가
+    public LoopbackBus newNode() {
+        return new LoopbackBus(nodes);
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void subscribe(String roomName) {
+        localRooms.add(roomName);
+    }
+
+    @Override
+    public void unsubscribe(String roomName) {
+        localRooms.remove(roomName);
+    }
+
+    @Override
+    public void publish(String roomName, ChatFrame frame) {
+        for (LoopbackBus node : nodes) {
+            if (node != this && node.listener != null && node.localRooms.contains(roomName)) {
+                node.inbox.execute(() -> node.listener.messageReceived(frame));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        nodes.remove(this);
+        inbox.shutdownNow();
+    }
+}
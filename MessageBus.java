@@ -0,0 +1,26 @@
+import java.io.IOException;
+
+// 클러스터 메시지 버스: 여러 서버 노드가 채팅방 트래픽을 나눠 처리
+// 노드는 자기에게 접속한 멤버에게만 직접 보내고(fan-out), 다른 노드에는 그 방에 멤버가 있는 노드마다 한 번만 전달
+// 받은 노드는 다시 전달하지 않고 자기 멤버에게만 보냄
+//   노드 → 노드: MESSAGE|방|보낸사람|메시지, TEXT|방|줄, FILE|방|보낸사람|파일이름 + 데이터, FILE_REF|...
+// 메시지 번호와 읽음 확인은 노드마다 따로 관리 (클라이언트는 한 노드에만 접속하므로 그 노드의 번호만 봄)
+public interface MessageBus {
+    // 다른 노드에서 메시지가 도착할 때마다 호출 (버스 스레드에서, 보낸 노드별로 순서 유지)
+    interface Listener {
+        void messageReceived(ChatFrame frame);
+    }
+
+    void start(Listener listener) throws IOException;
+
+    // 이 노드에 방 멤버가 생김: 이후 다른 노드가 이 방의 메시지를 보내 줌
+    void subscribe(String roomName);
+
+    // 이 노드의 방 멤버가 모두 나감: 다른 노드가 이 방의 메시지를 더 보내지 않음
+    void unsubscribe(String roomName);
+
+    // 방에 멤버가 있는 다른 노드마다 한 번씩 전달 (큐에 넣기만 하고 바로 반환, 같은 방 안에서는 호출 순서대로 전달)
+    void publish(String roomName, ChatFrame frame);
+
+    void close();
+}
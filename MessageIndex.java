@@ -0,0 +1,397 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// 메시지 검색 색인: 방마다 n-gram → 메시지 번호 목록(역색인)을 메모리에 두고 SEARCH에 최근 메시지부터 페이지 단위로 응답
+// 한국어는 조사가 붙은 단어 안에서도 찾아야 하므로 형태소 분석 대신 단어(글자/숫자가 이어진 부분)마다 글자 1-gram과 2-gram을 색인하고,
+// 검색어의 n-gram이 모두 나온 메시지를 후보로 골라 원문에 검색어가 있는지 확인
+//   클라이언트 → 서버: SEARCH|방|검색어|before|개수 (before보다 작은 번호에서 찾음, 0이면 가장 최근부터, 방 멤버만)
+//   서버 → 클라이언트: SEARCH_RESULT|방|검색어|다음before|번호|시각|보낸사람|메시지|... (다음before가 비어 있으면 끝, 바이너리 프로토콜 연결에만)
+// 색인은 처음 검색한 방만 메시지 기록을 읽어서 만들고, 이후 새 메시지는 색인 스레드가 브로드캐스트와 따로 추가
+// 방이 비어서 지워지면 색인도 버림 (다시 검색하면 기록에서 다시 만듦)
+public class MessageIndex {
+    static final int MAX_PAGE_SIZE = 100;         // 한 페이지 최대 결과 수
+    private static final int BLOCK_SIZE = 128;    // 번호 목록 블록 크기 (블록 하나만 풀어서 찾음)
+    private static final int BUILD_BATCH = 10000; // 색인을 만들 때 기록에서 한 번에 읽는 메시지 수
+    private static final int MAX_SCAN = 100000;   // 요청 하나에서 확인하는 최대 후보 수 (넘으면 다음before로 이어서 찾게 함)
+    private static final int MAX_VERIFY = 500;    // 요청 하나에서 원문을 읽어 확인하는 최대 후보 수
+    private static final int SEARCH_THREADS = 2;  // 검색 처리 스레드 수 (디스크를 읽으므로 연결 처리 스레드와 분리)
+
+    private final MessageLog history;
+    private final ServerMetrics metrics;
+    private final Map<String, RoomIndex> indexes = new ConcurrentHashMap<>(); // 검색한 적 있는 방의 색인
+    private final BlockingQueue<Update> updates = new LinkedBlockingQueue<>(); // 색인 스레드가 비우는 추가 대기열
+    private final ExecutorService searchExecutor;
+    private final Thread indexer;
+    private volatile boolean running = true;
+
+    // 색인에 추가할 메시지 하나 (message가 null이면 기록의 마지막 번호까지 한꺼번에 읽어서 색인)
+    private static class Update {
+        final RoomIndex index;
+        final long seq;
+        final String message;
+
+        Update(RoomIndex index, long seq, String message) {
+            this.index = index;
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    public MessageIndex(MessageLog history, ServerMetrics metrics) {
+        this.history = history;
+        this.metrics = metrics;
+        this.searchExecutor = Executors.newFixedThreadPool(SEARCH_THREADS, task -> {
+            Thread thread = new Thread(task, "message-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.indexer = new Thread(this::indexLoop, "message-indexer");
+        this.indexer.setDaemon(true);
+        this.indexer.start();
+    }
+
+    // 새 채팅 메시지 (방 기록 잠금 안에서 번호 순서대로 호출): 색인이 있는 방이면 대기열에 넣기만 함
+    public void add(String roomName, long seq, String message) {
+        RoomIndex index = indexes.get(roomName);
+        if (index != null) {
+            updates.add(new Update(index, seq, message));
+        }
+    }
+
+    // SEARCH 처리: 색인이 없으면 만들기를 요청하고, 다 만들어진 뒤에 검색 스레드에서 응답
+    public void search(ChatSession session, String roomName, String query, long before, int count) {
+        if (!session.binary) {
+            return;
+        }
+        int pageSize = Math.max(1, Math.min(count, MAX_PAGE_SIZE));
+        RoomIndex index = indexes.get(roomName);
+        if (index == null) {
+            RoomIndex created = new RoomIndex(roomName);
+            index = indexes.putIfAbsent(roomName, created);
+            if (index == null) {
+                index = created;
+                updates.add(new Update(created, 0, null)); // 맵에 넣은 뒤에 요청해야 색인 스레드가 지워진 방으로 보지 않음
+            }
+        }
+        RoomIndex found = index;
+        found.ready.thenRunAsync(() -> respond(session, found, query, before, pageSize), searchExecutor);
+    }
+
+    // 방이 비어서 지워짐 (RoomRegistry의 퇴장 처리 안에서 호출)
+    public void evict(String roomName) {
+        indexes.remove(roomName);
+    }
+
+    public void close() {
+        running = false;
+        indexer.interrupt();
+        searchExecutor.shutdownNow();
+    }
+
+    // 색인 스레드: 대기열의 메시지를 번호 순서대로 색인 (빠진 번호가 있으면 기록에서 읽어서 채움)
+    private void indexLoop() {
+        while (running) {
+            Update update;
+            try {
+                update = updates.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            RoomIndex index = update.index;
+            try {
+                if (indexes.get(index.roomName) != index) {
+                    index.ready.complete(null); // 그 사이 방이 지워짐
+                    continue;
+                }
+                catchUp(index, update.message == null ? history.lastSeq(index.roomName) : update.seq - 1);
+                if (update.message != null && update.seq > index.indexedSeq) {
+                    index.add(update.seq, update.message);
+                }
+                index.ready.complete(null);
+            } catch (RuntimeException e) {
+                System.out.println("검색 색인 에러: " + e.getMessage());
+                e.printStackTrace();
+                index.ready.complete(null);
+            }
+        }
+    }
+
+    // 색인 스레드: target 번호까지 기록에서 읽어서 색인 (보존 기간이 지나 없는 번호는 건너뜀)
+    private void catchUp(RoomIndex index, long target) {
+        while (index.indexedSeq < target) {
+            long from = index.indexedSeq + 1;
+            long to = Math.min(target, from + BUILD_BATCH - 1);
+            for (MessageLog.Entry entry : history.read(index.roomName, from, to)) {
+                index.add(entry.seq, entry.message);
+            }
+            index.indexedSeq = to;
+        }
+    }
+
+    // 검색 스레드: 가장 짧은 번호 목록을 최근 번호부터 훑으며 다른 목록에도 있는 번호만 원문을 읽어 확인
+    private void respond(ChatSession session, RoomIndex index, String query, long before, int count) {
+        long start = metrics.start();
+        List<String> terms = tokens(query);
+        List<String> fields = new ArrayList<>();
+        fields.add(index.roomName);
+        fields.add(query);
+        fields.add(""); // 다음before (아래에서 채움)
+
+        List<Postings.View> views = new ArrayList<>();
+        for (int gram : grams(terms)) {
+            Postings postings = index.postings.get(gram);
+            if (postings == null) {
+                views.clear(); // 한 번도 나오지 않은 n-gram: 결과 없음
+                break;
+            }
+            views.add(postings.view());
+        }
+        if (!views.isEmpty()) {
+            views.sort(Comparator.comparingInt(view -> view.count));
+            Cursor[] others = new Cursor[views.size() - 1];
+            for (int i = 1; i < views.size(); i++) {
+                others[i - 1] = new Cursor(views.get(i));
+            }
+            Postings.View driver = views.get(0);
+            long upper = before > 0 ? before - 1 : Long.MAX_VALUE;
+            long[] block = new long[BLOCK_SIZE];
+            int found = 0;
+            int scanned = 0;
+            int verified = 0;
+            scan:
+            for (int b = driver.blockOf(upper); b >= 0; b--) {
+                for (int i = driver.decode(b, block) - 1; i >= 0; i--) {
+                    long seq = block[i];
+                    if (seq > upper) {
+                        continue;
+                    }
+                    if (found == count || scanned == MAX_SCAN || verified == MAX_VERIFY) {
+                        fields.set(2, String.valueOf(seq + 1)); // 여기부터 이어서 찾음
+                        break scan;
+                    }
+                    scanned++;
+                    if (!containsAll(others, seq)) {
+                        continue;
+                    }
+                    verified++;
+                    for (MessageLog.Entry entry : history.read(index.roomName, seq, seq)) {
+                        if (matches(entry.message, terms)) {
+                            Collections.addAll(fields, String.valueOf(entry.seq), String.valueOf(entry.timestamp), entry.sender, entry.message);
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+        session.send(new ChatFrame("SEARCH_RESULT", fields.toArray(new String[0])));
+        metrics.searched(start);
+    }
+
+    private static boolean containsAll(Cursor[] cursors, long seq) {
+        for (Cursor cursor : cursors) {
+            if (!cursor.contains(seq)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 후보 확인: n-gram이 모두 있어도 서로 다른 위치일 수 있으므로 원문에 검색어가 그대로 있는지 봄
+    private static boolean matches(String message, List<String> terms) {
+        String normalized = message.toLowerCase(Locale.ROOT);
+        for (String term : terms) {
+            if (!normalized.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 단어 나누기: 소문자로 바꾸고 글자/숫자가 이어진 부분만
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        String normalized = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean word = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // 단어마다 글자 1-gram과 2-gram (1-gram은 글자 코드, 2-gram은 앞 글자를 위 16비트에 둠)
+    // 검색어는 한 글자면 1-gram, 두 글자 이상이면 2-gram만 찾음
+    private static Set<Integer> grams(List<String> terms) {
+        Set<Integer> grams = new LinkedHashSet<>();
+        for (String term : terms) {
+            if (term.length() == 1) {
+                grams.add((int) term.charAt(0));
+            }
+            for (int i = 0; i + 1 < term.length(); i++) {
+                grams.add(bigram(term.charAt(i), term.charAt(i + 1)));
+            }
+        }
+        return grams;
+    }
+
+    private static int bigram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    // 채팅방 하나의 색인 (추가는 색인 스레드만, 검색 스레드는 번호 목록의 스냅샷을 읽음)
+    private static class RoomIndex {
+        final String roomName;
+        final Map<Integer, Postings> postings = new ConcurrentHashMap<>();
+        final CompletableFuture<Void> ready = new CompletableFuture<>(); // 기록을 읽어서 처음 만들기가 끝남
+        volatile long indexedSeq = 0;                                    // 색인한 마지막 번호
+
+        RoomIndex(String roomName) {
+            this.roomName = roomName;
+        }
+
+        void add(long seq, String message) {
+            for (String token : tokens(message)) {
+                for (int i = 0; i < token.length(); i++) {
+                    posting((int) token.charAt(i)).add(seq);
+                    if (i + 1 < token.length()) {
+                        posting(bigram(token.charAt(i), token.charAt(i + 1))).add(seq);
+                    }
+                }
+            }
+            indexedSeq = seq;
+        }
+
+        private Postings posting(int gram) {
+            return postings.computeIfAbsent(gram, k -> new Postings());
+        }
+    }
+
+    // n-gram 하나가 나온 메시지 번호 목록 (오름차순): BLOCK_SIZE개씩 블록으로 나누고 블록 안에서는 앞 번호와의 차이를 varint로 저장
+    // 블록마다 첫 번호와 시작 위치를 따로 두어 뒤에서부터 읽거나 번호 하나를 찾을 때 블록 하나만 풂
+    // 배열은 늘릴 때 새로 만들고 이미 쓴 부분은 바꾸지 않으므로 view()로 얻은 길이까지는 잠금 없이 읽을 수 있음
+    private static final class Postings {
+        private byte[] bytes = new byte[8];
+        private int length = 0;
+        private long[] blockFirst = new long[1];
+        private int[] blockStart = new int[1];
+        private int blocks = 0;
+        private int count = 0;
+        private long last = 0;
+
+        synchronized void add(long seq) {
+            if (count > 0 && seq <= last) {
+                return; // 한 메시지에 같은 n-gram이 여러 번 나옴
+            }
+            if (count % BLOCK_SIZE == 0) {
+                if (blocks == blockFirst.length) {
+                    blockFirst = Arrays.copyOf(blockFirst, blocks * 2);
+                    blockStart = Arrays.copyOf(blockStart, blocks * 2);
+                }
+                blockFirst[blocks] = seq;
+                blockStart[blocks] = length;
+                blocks++;
+            } else {
+                long delta = seq - last;
+                if (bytes.length - length < 10) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                while ((delta & ~0x7FL) != 0) {
+                    bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                bytes[length++] = (byte) delta;
+            }
+            last = seq;
+            count++;
+        }
+
+        synchronized View view() {
+            return new View(bytes, length, blockFirst, blockStart, blocks, count);
+        }
+
+        // 어느 시점까지의 번호 목록 (읽기 전용)
+        static final class View {
+            final byte[] bytes;
+            final int length;
+            final long[] blockFirst;
+            final int[] blockStart;
+            final int blocks;
+            final int count;
+
+            View(byte[] bytes, int length, long[] blockFirst, int[] blockStart, int blocks, int count) {
+                this.bytes = bytes;
+                this.length = length;
+                this.blockFirst = blockFirst;
+                this.blockStart = blockStart;
+                this.blocks = blocks;
+                this.count = count;
+            }
+
+            // seq가 들어 있을 수 있는 블록 (첫 번호가 seq 이하인 마지막 블록, 없으면 -1)
+            int blockOf(long seq) {
+                int low = 0;
+                int high = blocks - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (blockFirst[mid] <= seq) {
+                        low = mid + 1;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                return high;
+            }
+
+            // 블록 하나를 풀어서 out에 채우고 개수를 반환
+            int decode(int block, long[] out) {
+                int position = blockStart[block];
+                int end = block + 1 < blocks ? blockStart[block + 1] : length;
+                long seq = blockFirst[block];
+                int n = 0;
+                out[n++] = seq;
+                while (position < end) {
+                    long delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[position++];
+                        delta |= (long) (b & 0x7F) << shift;
+                        shift += 7;
+                    } while ((b & 0x80) != 0);
+                    seq += delta;
+                    out[n++] = seq;
+                }
+                return n;
+            }
+        }
+    }
+
+    // 번호 목록에서 번호 찾기 (최근 번호부터 차례로 찾으므로 마지막으로 푼 블록을 다시 씀)
+    private static final class Cursor {
+        private final Postings.View view;
+        private final long[] values = new long[BLOCK_SIZE];
+        private int block = -1;
+        private int size = 0;
+
+        Cursor(Postings.View view) {
+            this.view = view;
+        }
+
+        boolean contains(long seq) {
+            int target = view.blockOf(seq);
+            if (target < 0) {
+                return false;
+            }
+            if (target != block) {
+                size = view.decode(target, values);
+                block = target;
+            }
+            return Arrays.binarySearch(values, 0, size, seq) >= 0;
+        }
+    }
+}
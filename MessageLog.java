@@ -0,0 +1,705 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+// 채팅방별 메시지 기록: 추가만 하는 세그먼트 파일에 저장하고 입장할 때 최근 메시지를 다시 보내 줌
+//   디렉터리/방이름(URL 인코딩)/00000000000000000001.log  세그먼트 (파일 이름은 첫 메시지 번호)
+//   디렉터리/방이름(URL 인코딩)/00000000000000000001.idx  희소 인덱스 (INDEX_INTERVAL 바이트마다 번호 → 위치)
+// 기록 형식: [본문 길이 int][CRC32 int][번호 long][시각 long][보낸사람 길이 int][보낸사람][메시지] (길이 0이면 끝)
+//
+// 브로드캐스트 스레드는 번호를 붙여 메모리(최근 메시지 캐시, 쓰기 대기열)에 넣기만 하고,
+// 전용 writer 스레드가 매핑된 세그먼트에 모아서 쓴 뒤 묶음마다 한 번 fsync (group commit)
+// 디렉터리를 지정하지 않으면 디스크에 쓰지 않고 최근 메시지 캐시만 유지
+public class MessageLog {
+    private static final int INDEX_INTERVAL = 4096;            // 인덱스 항목 사이의 최소 바이트 수
+    private static final int RECORD_HEADER = 8;                // 본문 길이 + CRC
+    private static final int MAX_REPLAY = 1000;                // 입장 시 다시 보내는 최대 메시지 수 (넘는 앞부분은 보내지 않고 수만 안내)
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 60 * 1000;   // 보존 기간 정리/압축 주기
+    private static final long COMPACT_IDLE_MILLIS = 10 * 60 * 1000;      // 이 시간 동안 조용한 방의 세그먼트는 압축
+
+    private final Path dir;              // 저장 디렉터리 (null이면 메모리만)
+    private final int segmentSize;       // 세그먼트 파일 크기
+    private final int tailCapacity;      // 방마다 메모리에 두는 최근 메시지 수
+    private final long retentionMillis;  // 보존 기간 (0이면 무제한)
+    private final Map<String, RoomLog> logs = new ConcurrentHashMap<>();
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>(); // writer 스레드가 비우는 쓰기 대기열
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // 기록된 메시지 하나
+    public static class Entry {
+        final long seq;
+        final long timestamp;
+        final String sender;
+        final String message;
+
+        Entry(long seq, long timestamp, String sender, String message) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.sender = sender;
+            this.message = message;
+        }
+    }
+
+    private static class Write {
+        final RoomLog log;
+        final Entry entry;
+
+        Write(RoomLog log, Entry entry) {
+            this.log = log;
+            this.entry = entry;
+        }
+    }
+
+    public MessageLog(Path dir, int segmentSize, int replayCount, long retentionMillis) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.tailCapacity = Math.max(replayCount, 64);
+        this.retentionMillis = retentionMillis;
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        this.writer = new Thread(this::writeLoop, "message-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // 메시지 기록: 방 안에서 번호를 붙이고 같은 잠금 안에서 deliver로 전달
+    // 번호 순서와 전달 순서가 같으므로 join()의 재생 목록과 겹치거나 빠지는 메시지가 없음
+    public long append(String roomName, String sender, String message, LongConsumer deliver) {
+        return withLog(roomName, log -> {
+            Entry entry = new Entry(++log.lastSeq, System.currentTimeMillis(), sender, message);
+            log.tail.addLast(entry);
+            log.trimTail(tailCapacity);
+            if (dir != null) {
+                writes.add(new Write(log, entry));
+            } else {
+                log.writtenSeq = entry.seq;
+            }
+            deliver.accept(entry.seq);
+            return entry.seq;
+        });
+    }
+
+    // 입장: 같은 잠금 안에서 join을 실행하고 놓친 메시지를 replay로 한 번에 전달 (since 이후 전부, since가 음수면 최근 count개)
+    public void join(String roomName, long since, int count, Runnable join, Consumer<List<Entry>> replay) {
+        withLog(roomName, log -> {
+            join.run();
+            long from = since >= 0 ? since + 1 : log.lastSeq - count + 1;
+            from = Math.max(from, log.lastSeq - MAX_REPLAY + 1);
+            List<Entry> entries = log.read(Math.max(from, 1));
+            if (!entries.isEmpty()) {
+                replay.accept(entries);
+            }
+            return null;
+        });
+    }
+
+    // from~to 번호의 기록 (검색 색인과 검색 결과용): 캐시에 있는 최근 메시지만 잠금 안에서 고르고
+    // 나머지는 잠금 밖에서 디스크에서 읽으므로 오래된 메시지를 많이 읽어도 이 방의 메시지 전달을 막지 않음
+    public List<Entry> read(String roomName, long from, long to) {
+        RoomLog log = log(roomName);
+        List<Entry> cached = new ArrayList<>();
+        long cachedFrom;
+        synchronized (log) {
+            cachedFrom = log.cachedFrom();
+            for (Entry entry : log.tail) {
+                if (entry.seq >= from && entry.seq <= to) {
+                    cached.add(entry);
+                }
+            }
+        }
+        List<Entry> entries = log.readDisk(from, Math.min(to, cachedFrom - 1));
+        entries.addAll(cached);
+        return entries;
+    }
+
+    // 방의 마지막 메시지 번호
+    public long lastSeq(String roomName) {
+        return withLog(roomName, log -> log.lastSeq);
+    }
+
+    // 방의 마지막 메시지 (없으면 null)
+    public Entry last(String roomName) {
+        return withLog(roomName, log -> {
+            if (log.lastSeq == 0) {
+                return null;
+            }
+            if (!log.tail.isEmpty()) {
+                return log.tail.peekLast();
+            }
+            List<Entry> entries = log.read(log.lastSeq);
+            return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        });
+    }
+
+    // 방이 비어서 지워짐: 디스크에 다 쓴 뒤 writer 스레드가 메모리에서 내림 (다시 입장하면 디스크에서 복구)
+    // 디렉터리가 없으면 메모리가 유일한 기록이므로 내리지 않음
+    public void evict(String roomName) {
+        RoomLog log = logs.get(roomName);
+        if (dir != null && log != null) {
+            writes.add(new Write(log, null));
+        }
+    }
+
+    // 남은 기록을 모두 쓰고 종료
+    public void close() {
+        running = false;
+        writes.add(new Write(null, null)); // 대기 중인 writer를 깨움 (파일 채널이 닫히지 않도록 interrupt는 쓰지 않음)
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RoomLog log(String roomName) {
+        return logs.computeIfAbsent(roomName, RoomLog::new);
+    }
+
+    // 방 기록을 잠근 채로 action 실행: 그 사이 메모리에서 내린 기록이면 새로 열어서 다시 시도
+    private <T> T withLog(String roomName, Function<RoomLog, T> action) {
+        while (true) {
+            RoomLog log = log(roomName);
+            synchronized (log) {
+                if (!log.evicted) {
+                    return action.apply(log);
+                }
+            }
+        }
+    }
+
+    // writer 스레드: 대기열에 쌓인 기록을 한꺼번에 쓰고 쓴 방마다 한 번 fsync
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>();
+        Set<RoomLog> dirty = new HashSet<>();
+        List<RoomLog> evictions = new ArrayList<>();
+        long lastMaintenance = System.currentTimeMillis();
+        while (running || !writes.isEmpty()) {
+            try {
+                Write first = writes.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            writes.drainTo(batch);
+            for (Write write : batch) {
+                if (write.log == null) {
+                    continue; // close()의 종료 신호
+                }
+                if (write.entry == null) {
+                    evictions.add(write.log); // 이 묶음을 디스크에 반영한 뒤 내림
+                    continue;
+                }
+                try {
+                    write.log.write(write.entry);
+                    dirty.add(write.log);
+                } catch (IOException e) {
+                    System.out.println("메시지 기록 에러: " + e.getMessage());
+                }
+            }
+            for (RoomLog log : dirty) {
+                log.commit();
+            }
+            for (RoomLog log : evictions) {
+                log.release();
+            }
+            batch.clear();
+            dirty.clear();
+            evictions.clear();
+
+            long now = System.currentTimeMillis();
+            if (now - lastMaintenance >= MAINTENANCE_INTERVAL_MILLIS) {
+                lastMaintenance = now;
+                maintain(now);
+            }
+        }
+        for (RoomLog log : logs.values()) {
+            log.seal(false);
+        }
+    }
+
+    // 모든 방의 보존 기간 정리/압축 (writer 스레드에서 주기적으로 호출, 다른 스레드에서는 close() 뒤에만 호출)
+    // 메모리에 없는 방(시작 후 아무도 입장하지 않았거나 비어서 내린 방)도 디렉터리를 훑어서 지난 세그먼트를 지움
+    void maintain(long now) {
+        for (RoomLog log : logs.values()) {
+            log.maintain(now);
+        }
+        if (dir == null || retentionMillis <= 0) {
+            return;
+        }
+        List<Path> roomDirs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            stream.forEach(roomDirs::add);
+        } catch (IOException e) {
+            System.out.println("메시지 기록 정리 에러: " + e.getMessage());
+            return;
+        }
+        for (Path roomDir : roomDirs) {
+            String roomName = java.net.URLDecoder.decode(roomDir.getFileName().toString(), StandardCharsets.UTF_8);
+            // 맵의 잠금 안에서 정리해서 그동안 이 방의 기록을 새로 열어 복구하지 않도록 함 (열려 있는 방은 위에서 정리됨)
+            logs.compute(roomName, (k, log) -> {
+                if (log == null) {
+                    expireIdle(roomDir, now - retentionMillis);
+                }
+                return log;
+            });
+        }
+    }
+
+    // 메모리에 없는 방의 세그먼트 정리: 열려 있는 방과 같이 가장 최근 세그먼트는 남기고 앞에서부터 지난 것만 지움
+    // 파일 수정 시각이 기간 안이면 마지막 기록도 기간 안일 수 있으므로 열어 보지 않고 멈춤 (조용한 방마다 매번 세그먼트를 읽지 않도록)
+    private static void expireIdle(Path roomDir, long cutoff) {
+        try {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(roomDir, "*.log")) {
+                stream.forEach(files::add);
+            }
+            files.sort(Comparator.naturalOrder());
+            for (int i = 0; i < files.size() - 1; i++) {
+                Path file = files.get(i);
+                if (Files.getLastModifiedTime(file).toMillis() >= cutoff) {
+                    break;
+                }
+                Segment segment = Segment.open(file);
+                if (segment.lastTimestamp >= cutoff) {
+                    break;
+                }
+                segment.delete();
+            }
+        } catch (IOException e) {
+            System.out.println("메시지 기록 정리 에러: " + e.getMessage());
+        }
+    }
+
+    // 채팅방 하나의 기록
+    private class RoomLog {
+        final String roomName;
+        final Path roomDir;
+        final ArrayDeque<Entry> tail = new ArrayDeque<>(); // 최근 메시지 (this로 보호)
+        long lastSeq = 0;                                  // 마지막으로 붙인 번호 (this로 보호)
+        volatile long writtenSeq = 0;                      // 디스크에 쓴 마지막 번호
+        final List<Segment> segments = new CopyOnWriteArrayList<>(); // 번호 순서, 변경은 writer 스레드만
+        Segment active;                                    // 쓰는 중인 세그먼트 (writer 스레드만)
+        volatile long lastWrite = System.currentTimeMillis();
+        boolean evicted = false;                           // 메모리에서 내림 (this로 보호)
+
+        RoomLog(String roomName) {
+            this.roomName = roomName;
+            this.roomDir = dir == null ? null : dir.resolve(java.net.URLEncoder.encode(roomName, StandardCharsets.UTF_8));
+            if (roomDir != null) {
+                recover();
+            }
+        }
+
+        // 기존 세그먼트를 열어 마지막 번호를 찾음 (마지막 세그먼트에 공간이 남아 있으면 이어서 씀)
+        private void recover() {
+            try {
+                Files.createDirectories(roomDir);
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(roomDir, "*.log")) {
+                    stream.forEach(files::add);
+                }
+                files.sort(Comparator.naturalOrder()); // 고정 길이 번호 이름이므로 이름 순서가 번호 순서
+                for (Path file : files) {
+                    Segment segment = Segment.open(file);
+                    if (segment.lastSeq > 0) {
+                        segments.add(segment);
+                        lastSeq = segment.lastSeq;
+                    } else {
+                        segment.delete(); // 기록이 없는 세그먼트
+                    }
+                }
+                writtenSeq = lastSeq;
+                if (!segments.isEmpty()) {
+                    Segment last = segments.get(segments.size() - 1);
+                    if (last.hasRoom()) {
+                        last.map();
+                        active = last;
+                    }
+                }
+                long from = Math.max(1, lastSeq - tailCapacity + 1);
+                for (Segment segment : segments) {
+                    if (segment.lastSeq >= from) {
+                        tail.addAll(segment.readRange(from, Long.MAX_VALUE));
+                    }
+                }
+                trimTail(tailCapacity);
+            } catch (IOException e) {
+                System.out.println("메시지 기록 복구 에러: " + e.getMessage());
+            }
+        }
+
+        // 캐시 크기 제한: 아직 디스크에 쓰지 않은 메시지는 남겨 둠 (모든 메시지는 캐시나 디스크 중 한 곳에 있음)
+        void trimTail(int capacity) {
+            while (tail.size() > capacity && tail.peekFirst().seq <= writtenSeq) {
+                tail.removeFirst();
+            }
+        }
+
+        // from 번호부터 끝까지 읽기: 캐시에 없는 앞부분만 디스크에서 읽음 (this 잠금 안에서 호출)
+        List<Entry> read(long from) {
+            List<Entry> entries = readDisk(from, cachedFrom() - 1);
+            long oldest = oldestTimestamp();
+            for (Entry entry : tail) {
+                if (entry.seq >= from && entry.timestamp >= oldest) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        }
+
+        // 캐시에 있는 첫 번호 (this 잠금 안에서 호출)
+        long cachedFrom() {
+            return tail.isEmpty() ? lastSeq + 1 : tail.peekFirst().seq;
+        }
+
+        // from~to 번호를 디스크에서 읽기 (세그먼트 목록은 복사본이고 파일은 매번 새로 열기 때문에 잠금 없이 호출 가능)
+        List<Entry> readDisk(long from, long to) {
+            List<Entry> entries = new ArrayList<>();
+            if (from > to || roomDir == null) {
+                return entries;
+            }
+            long oldest = oldestTimestamp();
+            for (Segment segment : segments) {
+                if (segment.lastSeq < from || segment.baseSeq > to) {
+                    continue;
+                }
+                try {
+                    for (Entry entry : segment.readRange(from, to)) {
+                        if (entry.timestamp >= oldest) {
+                            entries.add(entry);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("메시지 기록 읽기 에러: " + e.getMessage()); // 보존 기간이 지나 삭제된 경우 등
+                }
+            }
+            return entries;
+        }
+
+        private long oldestTimestamp() {
+            return retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : 0;
+        }
+
+        // writer 스레드: 현재 세그먼트에 기록 추가, 공간이 모자라면 새 세그먼트
+        void write(Entry entry) throws IOException {
+            byte[] record = encode(entry);
+            if (active == null || !active.fits(record.length)) {
+                if (active != null) {
+                    seal(false);
+                }
+                active = Segment.create(roomDir, entry.seq, Math.max(segmentSize, record.length));
+                segments.add(active);
+            }
+            active.append(entry, record);
+            lastWrite = System.currentTimeMillis();
+        }
+
+        // writer 스레드: 쓴 기록을 디스크에 반영하고 캐시 정리 허용
+        void commit() {
+            if (active == null) {
+                return;
+            }
+            try {
+                active.force();
+            } catch (IOException e) {
+                System.out.println("메시지 기록 에러: " + e.getMessage());
+            }
+            synchronized (this) {
+                writtenSeq = active.lastSeq;
+                trimTail(tailCapacity);
+            }
+        }
+
+        // writer 스레드: 보존 기간이 지난 세그먼트 삭제, 오래 조용한 방의 세그먼트는 쓴 만큼만 남기고 잘라냄
+        // 가장 최근 세그먼트는 기간이 지나도 남겨 둠: 복구할 때 마지막 번호를 여기서 읽으므로 지우면 번호가 0부터 다시 시작됨
+        // (남긴 세그먼트의 지난 기록은 읽을 때 시각으로 걸러짐)
+        void maintain(long now) {
+            if (roomDir == null) {
+                return;
+            }
+            if (active != null && now - lastWrite > COMPACT_IDLE_MILLIS) {
+                seal(true);
+            }
+            if (retentionMillis > 0) {
+                while (segments.size() > 1 && segments.get(0).lastTimestamp < now - retentionMillis) {
+                    segments.remove(0).delete(); // 번호 순서이므로 지난 세그먼트는 앞쪽에 모여 있음
+                }
+            }
+        }
+
+        // writer 스레드: 쓰지 않은 기록이 없으면 메모리에서 내림 (그 사이 새 메시지가 왔으면 그대로 둠)
+        // 세그먼트를 닫은 뒤에 맵에서 지워서 새로 여는 기록이 닫는 중인 파일을 복구하지 않도록 함
+        synchronized void release() {
+            if (evicted || writtenSeq != lastSeq) {
+                return;
+            }
+            evicted = true;
+            seal(true);
+            logs.remove(roomName, this);
+        }
+
+        // 현재 세그먼트를 닫음 (trim이면 미리 할당한 빈 공간을 잘라냄)
+        void seal(boolean trim) {
+            if (active == null) {
+                return;
+            }
+            try {
+                active.close(trim);
+            } catch (IOException e) {
+                System.out.println("메시지 기록 에러: " + e.getMessage());
+            }
+            active = null;
+        }
+    }
+
+    private static byte[] encode(Entry entry) {
+        byte[] sender = entry.sender.getBytes(StandardCharsets.UTF_8);
+        byte[] message = entry.message.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 8 + 8 + 4 + sender.length + message.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + bodyLength);
+        record.putInt(bodyLength).putInt(0);
+        record.putLong(entry.seq).putLong(entry.timestamp).putInt(sender.length).put(sender).put(message);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    // 기록 하나 해석: 끝이거나 손상된 기록이면 null
+    private static Entry decode(ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_HEADER) {
+            return null;
+        }
+        int bodyLength = buffer.getInt(buffer.position());
+        if (bodyLength < 20 || bodyLength > buffer.remaining() - RECORD_HEADER) {
+            return null;
+        }
+        int crcValue = buffer.getInt(buffer.position() + 4);
+        byte[] body = new byte[bodyLength];
+        buffer.get(buffer.position() + RECORD_HEADER, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != crcValue) {
+            return null; // 쓰다가 중단된 기록
+        }
+        buffer.position(buffer.position() + RECORD_HEADER + bodyLength);
+        ByteBuffer fields = ByteBuffer.wrap(body);
+        long seq = fields.getLong();
+        long timestamp = fields.getLong();
+        int senderLength = fields.getInt();
+        if (senderLength < 0 || senderLength > fields.remaining()) {
+            return null;
+        }
+        String sender = new String(body, fields.position(), senderLength, StandardCharsets.UTF_8);
+        String message = new String(body, fields.position() + senderLength, fields.remaining() - senderLength, StandardCharsets.UTF_8);
+        return new Entry(seq, timestamp, sender, message);
+    }
+
+    // 세그먼트 파일 하나와 희소 인덱스
+    private static class Segment {
+        final long baseSeq;
+        final Path file;
+        final Path indexFile;
+        long[] indexSeqs = new long[16];   // 인덱스: 번호
+        int[] indexPositions = new int[16]; // 인덱스: 파일 안의 위치
+        volatile int indexCount = 0;
+        volatile int size = 0;             // 기록이 끝나는 위치
+        volatile long lastSeq = 0;
+        volatile long lastTimestamp = 0;
+        long capacity;                     // 파일 크기
+        MappedByteBuffer mapped;           // 쓰는 중일 때만 매핑
+        FileChannel indexChannel;
+
+        private Segment(Path file, long baseSeq) {
+            this.file = file;
+            this.baseSeq = baseSeq;
+            String name = file.getFileName().toString();
+            this.indexFile = file.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+        }
+
+        // 새 세그먼트: 파일을 미리 할당하고 매핑
+        static Segment create(Path roomDir, long baseSeq, int capacity) throws IOException {
+            Segment segment = new Segment(roomDir.resolve(String.format("%020d.log", baseSeq)), baseSeq);
+            try (RandomAccessFile raf = new RandomAccessFile(segment.file.toFile(), "rw")) {
+                raf.setLength(capacity);
+            }
+            Files.deleteIfExists(segment.indexFile);
+            segment.capacity = capacity;
+            segment.map();
+            return segment;
+        }
+
+        // 기존 세그먼트: 인덱스 파일을 읽고 마지막 인덱스 위치부터만 훑어서 끝을 찾음
+        static Segment open(Path file) throws IOException {
+            String name = file.getFileName().toString();
+            Segment segment = new Segment(file, Long.parseLong(name.substring(0, name.length() - 4)));
+            segment.capacity = Files.size(file);
+            if (Files.exists(segment.indexFile)) {
+                ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(segment.indexFile));
+                while (index.remaining() >= 12) {
+                    long seq = index.getLong();
+                    int position = index.getInt();
+                    if (position >= segment.capacity) {
+                        break;
+                    }
+                    segment.addIndex(seq, position);
+                }
+            }
+            int indexed = segment.indexCount;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (true) {
+                    int start = segment.indexCount > 0 ? segment.indexPositions[segment.indexCount - 1] : 0;
+                    ByteBuffer buffer = ByteBuffer.allocate((int) (segment.capacity - start));
+                    channel.read(buffer, start);
+                    buffer.flip();
+                    Entry entry = decode(buffer);
+                    if (entry == null && segment.indexCount > 0) {
+                        segment.indexCount--; // 기록보다 먼저 디스크에 반영된 인덱스 항목은 버림
+                        continue;
+                    }
+                    while (entry != null) {
+                        segment.lastSeq = entry.seq;
+                        segment.lastTimestamp = entry.timestamp;
+                        entry = decode(buffer);
+                    }
+                    segment.size = start + buffer.position();
+                    break;
+                }
+            }
+            if (segment.indexCount < indexed) {
+                segment.rewriteIndex();
+            }
+            return segment;
+        }
+
+        boolean hasRoom() {
+            return capacity - size > RECORD_HEADER;
+        }
+
+        boolean fits(int length) {
+            return mapped != null && capacity - size >= length;
+        }
+
+        void map() throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+            indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        void append(Entry entry, byte[] record) throws IOException {
+            int position = size;
+            mapped.put(position, record);
+            if (indexCount == 0 || position - indexPositions[indexCount - 1] >= INDEX_INTERVAL) {
+                addIndex(entry.seq, position);
+                ByteBuffer item = ByteBuffer.allocate(12).putLong(entry.seq).putInt(position);
+                item.flip();
+                indexChannel.write(item);
+            }
+            size = position + record.length;
+            lastSeq = entry.seq;
+            lastTimestamp = entry.timestamp;
+        }
+
+        private void rewriteIndex() throws IOException {
+            ByteBuffer index = ByteBuffer.allocate(indexCount * 12);
+            for (int i = 0; i < indexCount; i++) {
+                index.putLong(indexSeqs[i]).putInt(indexPositions[i]);
+            }
+            Files.write(indexFile, index.array());
+        }
+
+        private void addIndex(long seq, int position) {
+            if (indexCount == indexSeqs.length) {
+                indexSeqs = Arrays.copyOf(indexSeqs, indexCount * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexCount * 2);
+            }
+            indexSeqs[indexCount] = seq;
+            indexPositions[indexCount] = position;
+            indexCount++;
+        }
+
+        void force() throws IOException {
+            mapped.force();
+            indexChannel.force(false);
+        }
+
+        // from~to 번호의 기록 읽기: 인덱스로 시작 위치와 끝 위치를 찾아 그 사이만 읽음
+        List<Entry> readRange(long from, long to) throws IOException {
+            int start = 0;
+            int end = size;
+            int count = indexCount;
+            for (int i = 0; i < count; i++) {
+                if (indexSeqs[i] <= from) {
+                    start = indexPositions[i];
+                } else if (indexSeqs[i] > to) {
+                    end = Math.min(end, indexPositions[i]); // 이 항목부터는 to보다 큰 번호
+                    break;
+                }
+            }
+            List<Entry> entries = new ArrayList<>();
+            if (end <= start) {
+                return entries;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(end - start);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                    // 끝까지 읽음
+                }
+            }
+            buffer.flip();
+            Entry entry;
+            while ((entry = decode(buffer)) != null && entry.seq <= to) {
+                if (entry.seq >= from) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        }
+
+        // 쓰기 종료: 매핑을 놓고, trim이면 파일을 쓴 크기로 줄임
+        void close(boolean trim) throws IOException {
+            if (mapped != null) {
+                mapped.force();
+                mapped = null;
+            }
+            if (indexChannel != null) {
+                indexChannel.close();
+                indexChannel = null;
+            }
+            if (trim) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(size);
+                }
+                capacity = size;
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(indexFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
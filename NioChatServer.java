@@ -0,0 +1,422 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// NIO 셀렉터 기반 서버 엔진: 연결마다 스레드를 만들지 않고 소수의 이벤트 루프 스레드가 모든 연결을 처리
+// 디스크를 건드리는 프레임(ChatServer.touchesDisk)은 서버의 디스크 스레드에서 처리하고, 그동안 그 연결만 읽기를 멈춰 순서를 지킴
+public class NioChatServer {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int WRITE_BATCH_SIZE = 64; // 한 번의 gathering write에 묶는 최대 버퍼 수
+
+    private final ChatServer server;   // 프로토콜 처리를 담당하는 채팅 서버
+    private final EventLoop[] loops;   // 이벤트 루프 스레드 목록
+    private final int backlog;         // 연결 수락 대기열 최대 길이
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+    private volatile boolean accepting = true; // 드레인 중이면 false (새 연결을 받지 않음)
+
+    public NioChatServer(ChatServer server, int loopCount, int backlog) {
+        this.server = server;
+        this.loops = new EventLoop[loopCount];
+        this.backlog = backlog;
+    }
+
+    public void start(int port) {
+        running = true;
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+                loops[i].start();
+            }
+
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), backlog);
+            System.out.println("채팅 서버(NIO, 이벤트 루프 " + loops.length + "개)가 포트 " + port + "에서 시작되었습니다.");
+
+            // 수락한 연결은 이벤트 루프에 라운드 로빈으로 분배
+            int next = 0;
+            while (running) {
+                SocketChannel channel = serverChannel.accept();
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            }
+        } catch (IOException e) {
+            if (running && accepting) {
+                System.out.println("서버 에러: " + e.getMessage());
+            }
+        }
+    }
+
+    // 서버 종료: 연결 수락을 멈추고 각 이벤트 루프가 자신의 연결을 모두 닫을 때까지 기다림
+    // 새 연결 수락만 멈춤 (드레인): 이미 연결된 클라이언트는 이벤트 루프가 계속 처리
+    public void stopAccepting() {
+        accepting = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close(); // 블로킹 중인 accept()를 깨움
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close(); // 블로킹 중인 accept()를 깨움
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+                try {
+                    loop.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        System.out.println("채팅 서버가 종료되었습니다.");
+    }
+
+    // 이벤트 루프: 하나의 셀렉터로 여러 연결의 읽기/쓰기를 처리
+    private class EventLoop extends Thread {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>(); // 등록 대기 중인 연결
+        private final Queue<NioSession> pendingWrites = new ConcurrentLinkedQueue<>();     // 쓰기 대기 중인 세션
+        private final Queue<NioSession> pendingResumes = new ConcurrentLinkedQueue<>();    // 읽기를 다시 시작할 세션
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();        // 다른 스레드가 루프 스레드에 맡긴 작업
+
+        EventLoop(int index) throws IOException {
+            super("nio-event-loop-" + index);
+            this.selector = Selector.open();
+        }
+
+        // 다른 스레드에서 연결 등록 요청 (실제 등록은 루프 스레드에서 수행)
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        // 다른 스레드에서 쓰기 요청
+        void scheduleWrite(NioSession session) {
+            pendingWrites.add(session);
+            selector.wakeup();
+        }
+
+        // 타이머 스레드에서 읽기 재개 요청
+        void scheduleResume(NioSession session) {
+            pendingResumes.add(session);
+            selector.wakeup();
+        }
+
+        // 다른 스레드에서 루프 스레드 작업 요청 (디스크 프레임 처리 완료, 읽기 멈춤)
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerPendingChannels();
+                    flushPendingWrites();
+                    resumePendingReads();
+                    runPendingTasks();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioSession session = (NioSession) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                session.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.flush();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            // 한 연결의 오류가 루프 전체를 멈추지 않도록 해당 연결만 종료
+                            System.out.println("클라이언트 처리 에러: " + e.getMessage());
+                            session.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("이벤트 루프 에러: " + e.getMessage());
+                }
+            }
+            closeAll();
+        }
+
+        // 루프 종료 시 남은 연결을 모두 닫음
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                ((NioSession) key.attachment()).close();
+            }
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setKeepAlive(true); // PING을 모르는 텍스트 클라이언트는 OS가 끊긴 연결을 확인
+                    NioSession session = new NioSession(channel, this);
+                    session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                    server.handleConnect(session);
+                } catch (IOException e) {
+                    System.out.println("연결 등록 에러: " + e.getMessage());
+                }
+            }
+        }
+
+        private void resumePendingReads() {
+            NioSession session;
+            while ((session = pendingResumes.poll()) != null) {
+                session.resumeReading();
+            }
+        }
+
+        private void runPendingTasks() {
+            Runnable task;
+            while ((task = pendingTasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        private void flushPendingWrites() {
+            NioSession session;
+            while ((session = pendingWrites.poll()) != null) {
+                try {
+                    session.flush();
+                } catch (IOException e) {
+                    System.out.println("클라이언트 처리 에러: " + e.getMessage());
+                    session.close();
+                }
+            }
+        }
+    }
+
+    // NIO 엔진의 세션: 논블로킹 프레임 디코딩, 송신 큐는 이벤트 루프가 비움
+    private class NioSession extends ChatSession {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH_SIZE];          // gathering write 묶음
+        private int batchStart = 0;                                                    // 아직 다 보내지 못한 첫 프레임
+        private int batchEnd = 0;
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private volatile boolean closeRequested = false;
+        private boolean closed = false;
+        private boolean paused = false; // 전송 제한으로 읽기를 멈춤 (루프 스레드만 사용)
+        private boolean diskBusy = false; // 디스크 프레임을 디스크 스레드에서 처리 중 (루프 스레드만 사용)
+        private final Queue<ChatFrame> deferred = new ArrayDeque<>(); // 그동안 이미 읽은 뒤 프레임 (순서대로 이어서 처리, 루프 스레드만 사용)
+
+        NioSession(SocketChannel channel, EventLoop loop) {
+            super(server.newOutboundQueue());
+            this.channel = channel;
+            this.loop = loop;
+            this.decoder = server.newFrameDecoder(this::handleFrame);
+        }
+
+        // 읽기 이벤트마다 한 번만 읽고 완성된 프레임마다 프로토콜 처리 (한 연결이 루프를 독점하지 않도록)
+        void read() throws IOException {
+            int count = channel.read(readBuffer);
+            if (count > 0) {
+                server.bytesReceived(this, count);
+                decoder.feed(readBuffer.array(), 0, readBuffer.position());
+                readBuffer.clear();
+            }
+            if (count < 0) { // 상대방이 연결을 닫음
+                close();
+            }
+        }
+
+        private void handleFrame(ChatFrame frame) {
+            if (closed) {
+                return;
+            }
+            if (diskBusy) {
+                deferred.add(frame);
+            } else if (ChatServer.touchesDisk(frame.type)) {
+                handleDiskFrame(frame);
+            } else {
+                server.handleMessage(this, frame);
+            }
+        }
+
+        // 디스크 프레임은 디스크 스레드에서 처리하고, 끝날 때까지 이 연결만 읽기를 멈춤 (뒤 프레임이 앞지르지 않도록)
+        private void handleDiskFrame(ChatFrame frame) {
+            diskBusy = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            server.executeBlocking(() -> {
+                try {
+                    server.handleMessage(this, frame);
+                } catch (RuntimeException e) {
+                    System.out.println("클라이언트 처리 에러: " + e.getMessage());
+                    close();
+                } finally {
+                    loop.execute(this::diskFrameDone);
+                }
+            });
+        }
+
+        // 루프 스레드에서 호출: 미뤄 둔 프레임을 이어서 처리하고, 다 처리하면 읽기를 다시 켬
+        // 처리 중에 닫힌 연결은 처리가 끝난 지금 정리 (입장 처리 뒤에 퇴장 처리가 오도록)
+        private void diskFrameDone() {
+            diskBusy = false;
+            if (closed) {
+                server.handleDisconnect(this);
+                return;
+            }
+            try {
+                ChatFrame frame;
+                while (!diskBusy && !closed && (frame = deferred.poll()) != null) {
+                    handleFrame(frame);
+                }
+                if (!diskBusy && !closed) {
+                    key.interestOps(key.interestOps() | readOps());
+                }
+            } catch (RuntimeException e) {
+                System.out.println("클라이언트 처리 에러: " + e.getMessage());
+                close();
+            }
+        }
+
+        // 루프를 막지 않도록 읽기 관심만 끄고 타이머로 다시 켬 (이미 멈춰 있으면 그대로)
+        // 이미 읽은 묶음의 나머지 프레임은 처리되고, 그동안 상대는 TCP 수신 버퍼가 차면 보내지 못함
+        // 디스크 스레드에서 처리한 디스크 프레임이 멈추게 하면 루프 스레드에 넘김
+        @Override
+        protected void pauseReading(long nanos) {
+            if (Thread.currentThread() != loop) {
+                loop.execute(() -> pauseReading(nanos));
+                return;
+            }
+            if (closed || paused) {
+                return;
+            }
+            paused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            server.timer.schedule(() -> loop.scheduleResume(this), nanos, TimeUnit.NANOSECONDS);
+        }
+
+        // 루프 스레드에서만 호출
+        void resumeReading() {
+            if (closed || !paused) {
+                return;
+            }
+            paused = false;
+            key.interestOps(key.interestOps() | readOps());
+        }
+
+        private int readOps() {
+            return paused || diskBusy ? 0 : SelectionKey.OP_READ;
+        }
+
+        // 어느 스레드에서든 호출 가능: 루프 스레드에 쓰기를 요청
+        @Override
+        protected void messageQueued() {
+            if (writeScheduled.compareAndSet(false, true)) {
+                loop.scheduleWrite(this);
+            }
+        }
+
+        // 루프 스레드에서만 호출: 큐에 쌓인 프레임을 모아 한 번의 gathering write로 소켓 버퍼가 허용하는 만큼 전송
+        void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (closeRequested) {
+                close();
+                return;
+            }
+            while (true) {
+                while (fillBatch()) {
+                    server.metrics.bytesOut(channel.write(batch, batchStart, batchEnd - batchStart));
+                    while (batchStart < batchEnd && !batch[batchStart].hasRemaining()) {
+                        batch[batchStart++] = null;
+                    }
+                    if (batchStart < batchEnd) {
+                        // 소켓 버퍼가 가득 참: 쓰기 가능 이벤트를 기다림
+                        key.interestOps(readOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(readOps());
+                writeScheduled.set(false);
+                // 플래그를 내리는 사이에 추가된 데이터가 있으면 계속 전송
+                if (outbound.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        // 전송할 프레임 묶음 준비: 일부만 전송된 프레임이 남아 있으면 그대로 사용, 보낼 것이 없으면 false
+        private boolean fillBatch() {
+            if (batchStart < batchEnd) {
+                return true;
+            }
+            batchStart = 0;
+            batchEnd = 0;
+            ByteBuffer notice = skippedNotice();
+            if (notice != null) {
+                batch[batchEnd++] = notice;
+            }
+            ByteBuffer[] parts;
+            while (batchEnd + OutboundQueue.MAX_FRAME_PARTS <= batch.length && (parts = outbound.poll()) != null) {
+                for (ByteBuffer part : parts) {
+                    batch[batchEnd++] = part;
+                }
+            }
+            return batchEnd > 0;
+        }
+
+        // 다른 스레드에서 호출되면 루프 스레드에서 닫도록 요청만 함
+        @Override
+        public void close() {
+            if (Thread.currentThread() != loop) {
+                closeRequested = true;
+                loop.scheduleWrite(this);
+                return;
+            }
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!diskBusy) { // 처리 중이면 diskFrameDone에서 정리
+                server.handleDisconnect(this);
+            }
+        }
+    }
+}
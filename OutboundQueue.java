@@ -0,0 +1,91 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 클라이언트별 송신 큐: 보내는 스레드는 큐에 넣기만 하고 전용 writer(또는 이벤트 루프)가 비움
+// 크기가 제한되어 있어 느린 클라이언트 하나가 방 전체나 서버 메모리를 잡아먹지 못함
+// 큐의 항목 하나는 프레임 하나이고, 프레임은 버퍼 최대 MAX_FRAME_PARTS개로 구성 (헤더 + 매핑된 파일 영역 등)
+public class OutboundQueue {
+    static final int MAX_FRAME_PARTS = 2;
+
+    // 큐가 가득 찼을 때의 처리 방식
+    public enum OverflowPolicy {
+        DROP,        // 새 메시지를 버림
+        DISCONNECT,  // 느린 클라이언트의 연결을 끊음
+        COALESCE     // 가장 오래된 메시지를 버리고, 건너뛴 개수를 한 줄 안내로 합쳐서 전달
+    }
+
+    private final LinkedBlockingQueue<ByteBuffer[]> queue;
+    private final OverflowPolicy policy;
+    private final AtomicInteger highWatermark = new AtomicInteger(); // 최대 큐 깊이
+    private final AtomicLong enqueued = new AtomicLong();            // 큐에 넣은 메시지 수
+    private final AtomicLong dropped = new AtomicLong();             // 버린 메시지 수
+    private final AtomicInteger skipped = new AtomicInteger();       // COALESCE로 버렸지만 아직 안내하지 않은 메시지 수
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.policy = policy;
+    }
+
+    // 메시지 추가: 정책상 연결을 끊어야 하면 false 반환
+    public boolean offer(ByteBuffer[] frame) {
+        while (!queue.offer(frame)) {
+            if (policy == OverflowPolicy.DISCONNECT) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (policy == OverflowPolicy.DROP) {
+                dropped.incrementAndGet();
+                return true;
+            }
+            // COALESCE: 가장 오래된 메시지를 버리고 다시 시도
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+                skipped.incrementAndGet();
+            }
+        }
+        enqueued.incrementAndGet();
+        int depth = queue.size();
+        int max;
+        while (depth > (max = highWatermark.get()) && !highWatermark.compareAndSet(max, depth)) {
+            // 다른 스레드가 먼저 갱신한 경우 다시 비교
+        }
+        return true;
+    }
+
+    // 꺼낼 메시지가 없으면 null
+    public ByteBuffer[] poll() {
+        return queue.poll();
+    }
+
+    // 메시지가 올 때까지 대기
+    public ByteBuffer[] take() throws InterruptedException {
+        return queue.take();
+    }
+
+    // COALESCE로 건너뛴 메시지 수를 가져오고 0으로 초기화
+    public int takeSkipped() {
+        return skipped.getAndSet(0);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public int highWatermark() {
+        return highWatermark.get();
+    }
+
+    public long enqueued() {
+        return enqueued.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+}
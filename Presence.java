@@ -0,0 +1,201 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// 접속 상태: 사용자별 연결과 방별 접속 사용자를 동시성 색인으로 두어 전역 잠금 없이 조회/갱신
+// 입장/퇴장마다 방 전체에 알리지 않고 상태가 바뀐 사용자를 방마다 모아 주기적으로 한 번만 알림
+// 퇴장은 한 주기 더 기다렸다가 알리고, 그 사이에 다시 들어온 사용자(재접속)는 상태가 그대로이므로 알리지 않음 (재접속이 몰려도 알림이 늘지 않음)
+//   서버 → 클라이언트: PRESENCE|방|사용자|상태|사용자|상태|... (상태 1 접속, 0 퇴장; 바이너리 프로토콜 멤버에게만, 입장 직후에는 현재 접속자 전체)
+//   모든 멤버와 다른 노드에는 바뀐 사용자를 묶은 입장/퇴장 안내 (TEXT, 입장과 퇴장 각각 한 줄)
+public class Presence {
+    private static final int NOTICE_NAMES = 5; // 안내 한 줄에 이름을 적는 최대 사용자 수 (나머지는 "외 N명")
+    private static final long RESTORE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(60); // 스냅샷의 접속자가 다시 연결해 오기를 기다리는 시간
+
+    private final ChatServer server;
+    private final RoomRegistry rooms;
+    private final Map<String, Set<ChatSession>> userSessions = new ConcurrentHashMap<>(); // 사용자별 연결 (방에 들어간 적 있는 연결)
+    private final Map<String, RoomPresence> presence = new ConcurrentHashMap<>();         // 채팅방별 접속 상태
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();                 // 아직 알리지 않은 변경이 있는 방
+
+    // 채팅방 하나의 접속 상태 (online은 presence의 원자적 구간 안에서만 바뀌므로 방 단위로 순서가 지켜짐)
+    private static class RoomPresence {
+        final Map<String, Integer> online = new ConcurrentHashMap<>();  // 방에 있는 사용자별 연결 수 (여러 연결로 들어와도 한 명)
+        final Map<String, Boolean> pending = new ConcurrentHashMap<>(); // 마지막 알림 이후 접속 상태가 바뀐 사용자
+        final Set<String> announced = new HashSet<>();                  // 마지막으로 알린 접속자 (이하 flush에서만 사용)
+        final Set<String> leaving = new HashSet<>();                    // 퇴장을 한 주기 미뤄 둔 사용자
+        volatile long graceUntil;                                       // 스냅샷에서 복구한 방: 이 시각(nanoTime)까지 퇴장을 알리지 않음 (0이면 없음)
+    }
+
+    public Presence(ChatServer server, RoomRegistry rooms) {
+        this.server = server;
+        this.rooms = rooms;
+    }
+
+    // 입장: 그 방에 처음 들어온 사용자만 변경으로 기록하고, 바이너리 연결에는 현재 접속자 전체를 보냄
+    public void enter(String roomName, ChatSession session) {
+        String user = session.userName;
+        userSessions.compute(user, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            sessions.add(session);
+            return sessions;
+        });
+        RoomPresence room = presence.compute(roomName, (k, current) -> {
+            RoomPresence updated = current != null ? current : new RoomPresence();
+            if (updated.online.merge(user, 1, Integer::sum) == 1) {
+                updated.pending.put(user, Boolean.TRUE);
+            }
+            return updated;
+        });
+        dirtyRooms.add(roomName);
+        if (session.binary) {
+            session.send(presenceFrame(roomName, room.online.keySet(), Collections.emptyList()));
+        }
+    }
+
+    // 퇴장: 그 사용자의 마지막 연결이 나갔을 때만 변경으로 기록
+    public void leave(String roomName, ChatSession session) {
+        String user = session.userName;
+        presence.computeIfPresent(roomName, (k, room) -> {
+            Integer count = room.online.get(user);
+            if (count == null) {
+                return room;
+            }
+            if (count > 1) {
+                room.online.put(user, count - 1);
+            } else {
+                room.online.remove(user);
+                room.pending.put(user, Boolean.FALSE);
+                dirtyRooms.add(roomName);
+            }
+            return room;
+        });
+    }
+
+    // 연결 종료 (방 퇴장은 leave로 따로 처리)
+    public void disconnect(ChatSession session) {
+        if (session.userName == null) {
+            return;
+        }
+        userSessions.computeIfPresent(session.userName, (k, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    // 서버 재시작 전의 접속자 복구: 이미 알린 것으로 두고 아직 연결이 없으므로 퇴장 대기로 기록
+    // 유예 시간 안에 다시 입장하면 아무것도 알리지 않고, 끝내 돌아오지 않은 사용자만 퇴장으로 묶어 알림
+    public void restore(String roomName, Collection<String> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        presence.compute(roomName, (k, current) -> {
+            RoomPresence room = current != null ? current : new RoomPresence();
+            room.graceUntil = System.nanoTime() + RESTORE_GRACE_NANOS;
+            for (String user : users) {
+                room.announced.add(user);
+                room.pending.putIfAbsent(user, Boolean.FALSE);
+            }
+            return room;
+        });
+        dirtyRooms.add(roomName);
+    }
+
+    // 방별 접속자 (스냅샷용)
+    public Map<String, List<String>> snapshot() {
+        Map<String, List<String>> users = new HashMap<>();
+        presence.forEach((roomName, room) -> users.put(roomName, new ArrayList<>(room.online.keySet())));
+        return users;
+    }
+
+    // 접속 중인 사용자 수 (지표 조회용)
+    public int onlineUsers() {
+        return userSessions.size();
+    }
+
+    // 모아 둔 변경을 방마다 한 번에 알림 (스케줄러에서 주기적으로 호출)
+    // 마지막 멤버가 나간 방도 다른 노드의 멤버에게 퇴장을 알린 뒤 상태를 버림
+    public void flush() {
+        List<String> deferred = new ArrayList<>();
+        long now = System.nanoTime();
+        for (String roomName : dirtyRooms) {
+            dirtyRooms.remove(roomName);
+            RoomPresence room = presence.get(roomName);
+            if (room == null) {
+                continue;
+            }
+            List<String> entered = new ArrayList<>();
+            List<String> left = new ArrayList<>();
+            for (Map.Entry<String, Boolean> entry : room.pending.entrySet()) {
+                String user = entry.getKey();
+                boolean online = entry.getValue();
+                if (!online && room.graceUntil != 0 && now - room.graceUntil < 0) {
+                    deferred.add(roomName); // 재시작 직후: 다시 연결해 올 때까지 기다림
+                    continue;
+                }
+                if (!online && room.announced.contains(user) && room.leaving.add(user)) {
+                    deferred.add(roomName); // 처음 본 퇴장은 다음 flush까지 그대로 둠
+                    continue;
+                }
+                if (!room.pending.remove(user, online)) {
+                    continue; // 그 사이에 다시 바뀜 (다음 flush에서 처리)
+                }
+                room.leaving.remove(user);
+                if (online) {
+                    if (room.announced.add(user)) {
+                        entered.add(user);
+                    }
+                } else if (room.announced.remove(user)) {
+                    left.add(user);
+                }
+            }
+            presence.computeIfPresent(roomName, (k, current) -> current.online.isEmpty() && current.pending.isEmpty() ? null : current);
+            if (entered.isEmpty() && left.isEmpty()) {
+                continue;
+            }
+            List<ChatFrame> notices = new ArrayList<>(2);
+            if (!entered.isEmpty()) {
+                notices.add(ChatFrame.text(roomName, "SERVER: " + names(entered) + "이 입장하셨습니다."));
+            }
+            if (!left.isEmpty()) {
+                notices.add(ChatFrame.text(roomName, "SERVER: " + names(left) + "이 퇴장하셨습니다."));
+            }
+            ChatFrame frame = presenceFrame(roomName, entered, left);
+            for (ChatSession member : rooms.members(roomName)) {
+                for (ChatFrame notice : notices) {
+                    member.send(notice); // 프레임은 한 번만 인코딩되어 공유됨
+                }
+                if (member.binary) {
+                    member.send(frame);
+                }
+            }
+            for (ChatFrame notice : notices) {
+                server.publish(roomName, notice);
+            }
+        }
+        dirtyRooms.addAll(deferred);
+    }
+
+    // 안내에 적을 이름 ("가, 나님" 또는 "가, 나, ... 외 N명"): 많으면 앞의 몇 명만 적고 나머지는 수로 표시
+    private static String names(List<String> users) {
+        if (users.size() <= NOTICE_NAMES) {
+            return String.join(", ", users) + "님";
+        }
+        return String.join(", ", users.subList(0, NOTICE_NAMES)) + " 외 " + (users.size() - NOTICE_NAMES) + "명";
+    }
+
+    private static ChatFrame presenceFrame(String roomName, Collection<String> entered, Collection<String> left) {
+        List<String> fields = new ArrayList<>(1 + (entered.size() + left.size()) * 2);
+        fields.add(roomName);
+        for (String user : entered) {
+            fields.add(user);
+            fields.add("1");
+        }
+        for (String user : left) {
+            fields.add(user);
+            fields.add("0");
+        }
+        return new ChatFrame("PRESENCE", fields.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// 전송 제한: 연결별/방별 메시지 수와 연결별 수신 바이트 수를 토큰 버킷으로 제한
+// 메시지 하나가 방 인원 수만큼의 송신으로 불어나므로 한 클라이언트가 쏟아 내는 메시지가 서버 전체를 막지 않도록 받는 쪽에서 막음
+//   메시지 (MESSAGE, FILE, FILE_BEGIN): reject면 버리고 보낸 사람에게 알림, backpressure면 그 연결의 읽기를 잠시 멈춤
+//   바이트: 항상 읽기를 잠시 멈춤 (청크 전송 중간을 버릴 수 없으므로 TCP 흐름 제어로 상대가 기다리게 함)
+public class RateLimiter {
+    enum Policy { REJECT, BACKPRESSURE }
+
+    private static final long NOTICE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1); // 제한 안내를 다시 보내기까지의 최소 간격
+
+    private final ServerConfig config;
+    private final Map<String, TokenBucket> roomBuckets = new ConcurrentHashMap<>(); // 방별 메시지 버킷 (방이 지워지면 함께 버림)
+
+    public RateLimiter(ServerConfig config) {
+        this.config = config;
+    }
+
+    // 새 연결의 버킷 준비 (제한이 꺼져 있으면 null)
+    void connect(ChatSession session) {
+        if (config.messageRate > 0) {
+            session.messageBucket = new TokenBucket(config.messageRate, config.messageBurst);
+        }
+        if (config.bytesRate > 0) {
+            session.bytesBucket = new TokenBucket(config.bytesRate, config.bytesRate); // 1초 분량까지 몰아서 받을 수 있음
+        }
+    }
+
+    // 메시지 하나 허용 여부: 0이면 처리, 양수면 그 시간(나노초)만큼 읽기를 멈춘 뒤 처리, -1이면 버림
+    // roomName은 현재 있는 방일 때만 (없는 방 이름으로 버킷이 쌓이지 않도록), 아니면 null
+    long message(ChatSession session, String roomName) {
+        TokenBucket connection = session.messageBucket;
+        TokenBucket room = roomName != null && config.roomMessageRate > 0
+                ? roomBuckets.computeIfAbsent(roomName, k -> new TokenBucket(config.roomMessageRate, config.roomMessageRate))
+                : null;
+        if (config.rateLimitPolicy == Policy.BACKPRESSURE) {
+            return Math.max(connection == null ? 0 : connection.acquireDebt(1), room == null ? 0 : room.acquireDebt(1));
+        }
+        if ((connection != null && connection.tryAcquire(1) > 0) || (room != null && room.tryAcquire(1) > 0)) {
+            return -1;
+        }
+        return 0;
+    }
+
+    // 수신 바이트 기록: 읽기를 멈춰야 하는 시간(나노초), 0이면 계속 읽음
+    long bytes(ChatSession session, int count) {
+        TokenBucket bucket = session.bytesBucket;
+        return bucket == null ? 0 : bucket.acquireDebt(count);
+    }
+
+    // 버린 메시지 안내를 보낼 차례인지 (연결마다 NOTICE_INTERVAL에 한 번, 그 연결을 처리하는 스레드에서만 호출)
+    boolean shouldNotify(ChatSession session) {
+        long now = System.nanoTime();
+        if (session.lastLimitNotice != 0 && now - session.lastLimitNotice < NOTICE_INTERVAL_NANOS) {
+            return false;
+        }
+        session.lastLimitNotice = now;
+        return true;
+    }
+
+    // 방이 비어서 지워짐
+    void evict(String roomName) {
+        roomBuckets.remove(roomName);
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 읽음 확인: 방마다 멤버별 "어디까지 읽었는지"를 입장/퇴장/확인 때만 갱신
+// 메시지마다 방 전체를 훑어 읽음 문자열을 만드는 대신, 바뀐 읽음 위치만 모아 주기적으로 한 프레임에 묶어 전송
+//   클라이언트 → 서버: READ|방|번호 (그 번호까지 모두 읽음)
+//   서버 → 클라이언트: RECEIPT|방|사용자|번호|사용자|번호|... (바이너리 프로토콜 멤버에게만, 번호가 -1이면 퇴장)
+public class ReadReceipts {
+    private final RoomRegistry rooms;
+    private final Map<String, RoomReceipts> receipts = new ConcurrentHashMap<>(); // 채팅방별 읽음 상태
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();         // 아직 알리지 않은 변경이 있는 방
+
+    // 채팅방 하나의 읽음 상태
+    private static class RoomReceipts {
+        final Map<String, Long> readUpTo = new ConcurrentHashMap<>();        // 방에 있는 사용자별 읽은 위치
+        final Map<String, Long> pending = new ConcurrentHashMap<>();         // 마지막 전송 이후 바뀐 읽은 위치
+        final Map<String, Set<ChatSession>> sessions = new ConcurrentHashMap<>(); // 사용자별로 이 방에 들어와 있는 연결
+    }
+
+    public ReadReceipts(RoomRegistry rooms) {
+        this.rooms = rooms;
+    }
+
+    private RoomReceipts room(String roomName) {
+        return receipts.computeIfAbsent(roomName, k -> new RoomReceipts());
+    }
+
+    // 입장: 입장한 사용자에게 현재 읽음 상태 전체를 보냄
+    // 같은 사용자가 여러 연결로 들어와 있을 수 있어서 (재접속 직후 이전 연결이 아직 정리되지 않은 경우 등) 연결을 함께 기록
+    public void enter(String roomName, String user, ChatSession session) {
+        RoomReceipts room = room(roomName);
+        room.sessions.compute(user, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            sessions.add(session);
+            room.readUpTo.putIfAbsent(user, 0L);
+            return sessions;
+        });
+        room.pending.merge(user, 0L, Math::max);
+        dirtyRooms.add(roomName);
+        if (session.binary) {
+            ChatFrame snapshot = receiptFrame(roomName, room.readUpTo);
+            if (snapshot != null) {
+                session.send(snapshot);
+            }
+        }
+    }
+
+    // 퇴장: 그 사용자의 마지막 연결이 나갔을 때만 읽음 상태를 지우고 퇴장을 알림
+    public void leave(String roomName, ChatSession session) {
+        RoomReceipts room = receipts.get(roomName);
+        if (room == null) {
+            return;
+        }
+        String user = session.userName;
+        room.sessions.computeIfPresent(user, (k, sessions) -> {
+            sessions.remove(session);
+            if (!sessions.isEmpty()) {
+                return sessions; // 다른 연결이 아직 방에 있음
+            }
+            room.readUpTo.remove(user);
+            room.pending.put(user, -1L);
+            dirtyRooms.add(roomName);
+            return null;
+        });
+    }
+
+    // 방이 비어서 지워짐: 알릴 사람이 없으므로 읽음 상태도 버림
+    public void evict(String roomName) {
+        receipts.remove(roomName);
+        dirtyRooms.remove(roomName);
+    }
+
+    // 읽음 확인: 읽은 위치가 앞으로 움직였을 때만 변경으로 기록
+    public void read(String roomName, String user, long seq) {
+        RoomReceipts room = receipts.get(roomName);
+        if (room == null) {
+            return;
+        }
+        Long previous = room.readUpTo.get(user);
+        if (previous == null || previous >= seq) {
+            return; // 방에 없는 사용자이거나 이미 읽은 위치
+        }
+        Long updated = room.readUpTo.computeIfPresent(user, (k, v) -> Math.max(v, seq));
+        if (updated != null && updated == seq) {
+            room.pending.merge(user, seq, Math::max);
+            dirtyRooms.add(roomName);
+        }
+    }
+
+    // 모아 둔 변경을 방마다 한 프레임으로 전송 (스케줄러에서 주기적으로 호출)
+    public void flush() {
+        for (String roomName : dirtyRooms) {
+            dirtyRooms.remove(roomName);
+            RoomReceipts room = receipts.get(roomName);
+            if (room == null) {
+                continue;
+            }
+            Map<String, Long> changes = new HashMap<>();
+            for (Map.Entry<String, Long> entry : room.pending.entrySet()) {
+                if (room.pending.remove(entry.getKey(), entry.getValue())) {
+                    changes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            ChatFrame frame = receiptFrame(roomName, changes);
+            if (frame == null) {
+                continue;
+            }
+            for (ChatSession member : rooms.members(roomName)) {
+                if (member.binary) {
+                    member.send(frame); // 프레임은 한 번만 인코딩되어 공유됨
+                }
+            }
+        }
+    }
+
+    private static ChatFrame receiptFrame(String roomName, Map<String, Long> positions) {
+        if (positions.isEmpty()) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>(1 + positions.size() * 2);
+        fields.add(roomName);
+        for (Map.Entry<String, Long> entry : positions.entrySet()) {
+            fields.add(entry.getKey());
+            fields.add(String.valueOf(entry.getValue()));
+        }
+        return new ChatFrame("RECEIPT", fields.toArray(new String[0]));
+    }
+}
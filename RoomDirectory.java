@@ -0,0 +1,133 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// 채팅방 목록: 멤버가 있는 방과 새로 만든 방을 이름 순으로 두고, 목록을 보는 연결에 페이지 단위 조회와 변경분만 보냄
+// 방은 마지막 멤버가 나가면 목록에서 빠지고, 만들고 아무도 들어오지 않은 방은 EMPTY_ROOM_TTL이 지나면 빠짐
+//   클라이언트 → 서버: ROOM_LIST|커서|개수[|검색어] (커서 다음 이름부터, 첫 페이지는 빈 커서)
+//                      ROOM_CREATE|방
+//   서버 → 클라이언트: ROOM_PAGE|검색어|다음커서|방|인원|방|인원|... (다음커서가 비어 있으면 마지막 페이지)
+//                      ROOM_DELTA|방|인원|방|인원|... (인원이 -1이면 목록에서 빠짐)
+// 검색어 없이 첫 페이지를 요청한 연결은 이후 변경분을 받음 (변경분은 모아 두었다가 주기적으로 한 프레임에 묶어 모두가 공유)
+// 서버 → 클라이언트 프레임은 바이너리 프로토콜 연결에만 보냄
+public class RoomDirectory {
+    static final int MAX_PAGE_SIZE = 500;                  // 한 페이지 최대 방 수
+    private static final long EMPTY_ROOM_TTL_MILLIS = 60 * 1000; // 만들고 아무도 들어오지 않은 방을 남겨 두는 시간
+
+    private final RoomRegistry rooms;
+    private final ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<>();  // 목록의 방 (이름 순)
+    private final Map<String, Long> emptySince = new ConcurrentHashMap<>();           // 만들었지만 아무도 들어오지 않은 방
+    private final Set<ChatSession> subscribers = ConcurrentHashMap.newKeySet();        // 변경분을 받는 연결
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();                 // 아직 알리지 않은 변경이 있는 방
+
+    public RoomDirectory(RoomRegistry rooms) {
+        this.rooms = rooms;
+    }
+
+    // 방 만들기: 이미 있으면 false
+    public boolean create(String roomName) {
+        if (roomName.isEmpty() || !names.add(roomName)) {
+            return false;
+        }
+        if (!rooms.contains(roomName)) {
+            emptySince.put(roomName, System.currentTimeMillis());
+        }
+        changed.add(roomName);
+        return true;
+    }
+
+    // 입장 또는 퇴장으로 인원이 바뀜
+    public void membersChanged(String roomName) {
+        if (rooms.contains(roomName)) {
+            names.add(roomName);
+            emptySince.remove(roomName);
+        }
+        changed.add(roomName);
+    }
+
+    // 방이 비어서 지워짐 (RoomRegistry의 퇴장 처리 안에서 호출)
+    public void remove(String roomName) {
+        names.remove(roomName);
+        emptySince.remove(roomName);
+        changed.add(roomName);
+    }
+
+    // 만들고 아무도 들어오지 않은 채 오래된 방 정리 (스케줄러에서 주기적으로 호출)
+    public void expire() {
+        long deadline = System.currentTimeMillis() - EMPTY_ROOM_TTL_MILLIS;
+        for (Map.Entry<String, Long> entry : emptySince.entrySet()) {
+            String roomName = entry.getKey();
+            if (entry.getValue() < deadline && emptySince.remove(roomName, entry.getValue()) && !rooms.contains(roomName)) {
+                names.remove(roomName);
+                changed.add(roomName);
+            }
+        }
+    }
+
+    // ROOM_LIST 처리: 커서 다음부터 count개 (검색어가 있으면 이름에 검색어가 들어간 방만)
+    public void list(ChatSession session, String cursor, int count, String query) {
+        if (!session.binary) {
+            return;
+        }
+        if (cursor.isEmpty() && query.isEmpty()) {
+            subscribers.add(session);
+        }
+        count = Math.max(1, Math.min(count, MAX_PAGE_SIZE));
+        List<String> fields = new ArrayList<>(2 + count * 2);
+        fields.add(query);
+        fields.add(""); // 다음커서 (아래에서 채움)
+        int found = 0;
+        String last = null;
+        for (String roomName : cursor.isEmpty() ? names : names.tailSet(cursor, false)) {
+            if (!query.isEmpty() && !roomName.contains(query)) {
+                continue;
+            }
+            if (found == count) {
+                fields.set(1, last); // 더 남아 있음
+                break;
+            }
+            fields.add(roomName);
+            fields.add(String.valueOf(rooms.memberCount(roomName)));
+            last = roomName;
+            found++;
+        }
+        session.send(new ChatFrame("ROOM_PAGE", fields.toArray(new String[0])));
+    }
+
+    // 연결 종료
+    public void unsubscribe(ChatSession session) {
+        subscribers.remove(session);
+    }
+
+    // 모아 둔 변경을 한 프레임으로 전송 (스케줄러에서 주기적으로 호출)
+    public void flush() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<String> fields = new ArrayList<>();
+        for (String roomName : changed) {
+            changed.remove(roomName);
+            fields.add(roomName);
+            fields.add(names.contains(roomName) ? String.valueOf(rooms.memberCount(roomName)) : "-1");
+        }
+        ChatFrame frame = new ChatFrame("ROOM_DELTA", fields.toArray(new String[0]));
+        for (ChatSession subscriber : subscribers) {
+            subscriber.send(frame); // 프레임은 한 번만 인코딩되어 공유됨
+        }
+    }
+
+    // 목록에 있는 방인지
+    public boolean contains(String roomName) {
+        return names.contains(roomName);
+    }
+
+    // 목록의 방 (스냅샷용, 읽기 전용)
+    public Set<String> names() {
+        return Collections.unmodifiableSet(names);
+    }
+
+    // 목록의 방 수 (지표 조회용)
+    public int size() {
+        return names.size();
+    }
+}
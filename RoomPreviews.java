@@ -0,0 +1,121 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 채팅방 목록 미리보기: 방마다 마지막 메시지와 사용자별 읽은 위치를 두고, 목록을 보는 연결에 바뀐 방만 알림
+// 메시지마다 보내지 않고 읽음 확인처럼 바뀐 방을 모아 주기적으로 방마다 한 프레임만 만들어 그 방을 보는 연결이 공유
+//   클라이언트 → 서버: WATCH|사용자|방|방|... (목록 화면에 보이는 방, 보낼 때마다 교체, 서버는 목록에 있는 방만 한 페이지까지 받음)
+//   서버 → 클라이언트: PREVIEW|방|번호|보낸사람|메시지[|읽은번호] (바이너리 프로토콜 연결에만, 읽은번호는 WATCH 직후의 첫 프레임에만)
+public class RoomPreviews {
+    private final MessageLog history;
+    private final Map<String, RoomPreview> previews = new ConcurrentHashMap<>();  // 채팅방별 미리보기
+    private final Map<ChatSession, Set<String>> watching = new ConcurrentHashMap<>(); // 연결별로 보고 있는 방
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();          // 아직 알리지 않은 메시지가 있는 방
+
+    // 채팅방 하나의 미리보기
+    private static class RoomPreview {
+        final Set<ChatSession> watchers = ConcurrentHashMap.newKeySet();
+        final Map<String, Long> readUpTo = new ConcurrentHashMap<>(); // 사용자별 읽은 위치 (퇴장해도 방이 지워질 때까지 유지)
+        volatile ChatFrame latest;                                    // 마지막 메시지 (읽은번호 없이 공유하는 프레임)
+        volatile boolean idle = true;                                 // 메시지가 없거나 방이 지워짐 (보는 연결이 없어지면 버림)
+    }
+
+    public RoomPreviews(MessageLog history) {
+        this.history = history;
+    }
+
+    private RoomPreview preview(String roomName) {
+        return previews.computeIfAbsent(roomName, k -> new RoomPreview());
+    }
+
+    // 목록 보기 시작 (또는 방 목록 교체): 새로 보는 방마다 현재 미리보기와 이 사용자의 읽은 위치를 보냄
+    public void watch(ChatSession session, String user, List<String> roomNames) {
+        Set<String> rooms = new HashSet<>(roomNames);
+        Set<String> previous = watching.put(session, rooms);
+        if (previous != null) {
+            for (String roomName : previous) {
+                if (!rooms.contains(roomName)) {
+                    removeWatcher(roomName, session);
+                }
+            }
+        }
+        for (String roomName : rooms) {
+            RoomPreview room = preview(roomName);
+            if (room.watchers.add(session) && session.binary) {
+                session.send(snapshot(roomName, room, user));
+            }
+        }
+    }
+
+    // 연결 종료
+    public void unwatch(ChatSession session) {
+        Set<String> rooms = watching.remove(session);
+        if (rooms != null) {
+            for (String roomName : rooms) {
+                removeWatcher(roomName, session);
+            }
+        }
+    }
+
+    private void removeWatcher(String roomName, ChatSession session) {
+        previews.computeIfPresent(roomName, (k, room) -> {
+            room.watchers.remove(session);
+            return room.idle && room.watchers.isEmpty() ? null : room;
+        });
+    }
+
+    // 방이 비어서 지워짐: 보는 연결이 없으면 바로 버림 (읽은 위치도 함께 버리므로 메모리가 방 수에 비례)
+    public void evict(String roomName) {
+        previews.computeIfPresent(roomName, (k, room) -> {
+            room.idle = true;
+            return room.watchers.isEmpty() ? null : room;
+        });
+    }
+
+    // 새 채팅 메시지 (방 기록 잠금 안에서 호출되므로 번호 순서대로 들어옴)
+    public void message(String roomName, long seq, String sender, String message) {
+        RoomPreview room = preview(roomName);
+        room.latest = new ChatFrame("PREVIEW", roomName, String.valueOf(seq), sender, message);
+        room.idle = false;
+        if (!room.watchers.isEmpty()) {
+            dirtyRooms.add(roomName);
+        }
+    }
+
+    // 읽음 확인 (방 멤버만): 읽은 위치는 앞으로만 움직임
+    public void read(String roomName, String user, long seq) {
+        preview(roomName).readUpTo.merge(user, seq, Math::max);
+    }
+
+    // 모아 둔 변경을 방마다 한 프레임으로 전송 (스케줄러에서 주기적으로 호출)
+    public void flush() {
+        for (String roomName : dirtyRooms) {
+            dirtyRooms.remove(roomName);
+            RoomPreview room = previews.get(roomName);
+            ChatFrame frame = room == null ? null : room.latest;
+            if (frame == null) {
+                continue;
+            }
+            for (ChatSession watcher : room.watchers) {
+                if (watcher.binary) {
+                    watcher.send(frame); // 프레임은 한 번만 인코딩되어 공유됨
+                }
+            }
+        }
+    }
+
+    // WATCH 직후의 미리보기: 서버를 다시 시작했으면 마지막 메시지를 기록에서 읽음
+    private ChatFrame snapshot(String roomName, RoomPreview room, String user) {
+        ChatFrame latest = room.latest;
+        String[] fields;
+        if (latest != null) {
+            fields = Arrays.copyOf(latest.fields, 5);
+        } else {
+            MessageLog.Entry last = history.last(roomName);
+            fields = last == null
+                    ? new String[]{roomName, "0", "", "", null}
+                    : new String[]{roomName, String.valueOf(last.seq), last.sender, last.message, null};
+        }
+        fields[4] = String.valueOf(room.readUpTo.getOrDefault(user, 0L));
+        return new ChatFrame("PREVIEW", fields);
+    }
+}
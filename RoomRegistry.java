@@ -0,0 +1,56 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// 채팅방 레지스트리: 방마다 독립된 동시성 멤버 집합을 두어 전역 잠금 없이 입장/퇴장/브로드캐스트를 처리
+// 마지막 멤버가 나가면 방을 지움 (입장/퇴장은 방 단위로 원자적이므로 지우는 중에 다른 사람이 들어오지 않음)
+public class RoomRegistry {
+    private final ConcurrentHashMap<String, Set<ChatSession>> rooms = new ConcurrentHashMap<>(); // 채팅방별 사용자 목록
+
+    // 채팅방 입장 (방이 없으면 생성)
+    public void join(String roomName, ChatSession session) {
+        rooms.compute(roomName, (k, members) -> {
+            if (members == null) {
+                members = ConcurrentHashMap.newKeySet();
+            }
+            members.add(session);
+            return members;
+        });
+    }
+
+    // 채팅방 퇴장: 마지막 멤버였으면 방을 지우고 같은 원자적 구간 안에서 evict로 방 이름을 알림
+    // (evict는 다른 방의 입장/퇴장을 막지 않도록 짧게 끝나야 함)
+    public void leave(String roomName, ChatSession session, Consumer<String> evict) {
+        rooms.computeIfPresent(roomName, (k, members) -> {
+            members.remove(session);
+            if (!members.isEmpty()) {
+                return members;
+            }
+            evict.accept(roomName);
+            return null;
+        });
+    }
+
+    // 채팅방 멤버 목록 (방이 없으면 빈 집합)
+    // 약한 일관성 반복자를 사용하므로 다른 스레드의 입장/퇴장과 동시에 순회해도 막히거나 예외가 나지 않음
+    public Set<ChatSession> members(String roomName) {
+        return rooms.getOrDefault(roomName, Collections.emptySet());
+    }
+
+    // 채팅방 존재 여부
+    public boolean contains(String roomName) {
+        return rooms.containsKey(roomName);
+    }
+
+    // 채팅방 멤버 수 (방이 없으면 0)
+    public int memberCount(String roomName) {
+        return members(roomName).size();
+    }
+
+    // 채팅방별 멤버 수 (지표 조회용)
+    public Map<String, Integer> memberCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        rooms.forEach((roomName, members) -> counts.put(roomName, members.size()));
+        return counts;
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// 서버 실행 옵션: "--이름=값" 형식의 명령행 인자로 설정
+public class ServerConfig {
+    int port = 12345;                                             // 서버 포트
+    String engine = "thread";                                     // 서버 엔진 (thread: 연결별 스레드, virtual: 연결별 가상 스레드, nio: 셀렉터 이벤트 루프)
+    int backlog = 128;                                            // 연결 수락 대기열 최대 길이
+    int eventLoops = Runtime.getRuntime().availableProcessors();  // NIO 이벤트 루프 스레드 수 (기본: 코어 수)
+    int diskThreads = 4;                                          // NIO 엔진에서 디스크 프레임(입장 재생, 검색, 첨부 파일)을 처리하는 스레드 수
+    int queueCapacity = 1024;                                     // 클라이언트별 송신 큐 최대 메시지 수
+    OutboundQueue.OverflowPolicy overflowPolicy = OutboundQueue.OverflowPolicy.DISCONNECT; // 송신 큐가 가득 찼을 때의 처리
+    int queueStatsInterval = 0;                                   // 송신 큐 통계 출력 주기(초), 0이면 출력 안 함
+    int receiptFlushInterval = 100;                               // 읽음 확인 변경을 모아서 보내는 주기(밀리초)
+    int presenceInterval = 1000;                                  // 입장/퇴장을 모아서 알리는 주기(밀리초), 그 안에 나갔다 다시 들어오면 알리지 않음
+    String logDir = "messages";                                   // 메시지 기록 디렉터리 (빈 값이면 디스크에 쓰지 않고 메모리에만 유지)
+    int logSegmentSize = 4 * 1024 * 1024;                         // 메시지 기록 세그먼트 파일 크기(바이트)
+    int logRetentionHours = 24 * 7;                               // 메시지 기록 보존 기간(시간), 0이면 무제한
+    int replayCount = 50;                                         // 입장 시 다시 보내는 최근 메시지 수
+    String fileTransfer = "store";                                // 파일 전송 방식 (store: 서버에 저장하고 참조만 알림, relay: 청크를 바로 중계)
+    String attachmentDir = "attachments";                         // 첨부 파일 저장 디렉터리 (store 방식)
+    String cursorDir = "cursors";                                 // 사용자별 전달 위치를 내려 두는 디렉터리 (빈 값이면 메모리에만 유지)
+    int cursorCacheSize = 10000;                                  // 전달 위치를 메모리에 두는 최대 사용자 수 (넘으면 오래 안 쓴 사용자부터 파일로 내림)
+    boolean metrics = true;                                       // 서버 지표 수집 여부 (끄면 기록 비용 없음)
+    int metricsPort = 0;                                          // 서버 지표 HTTP 포트 (127.0.0.1), 0이면 JMX로만 공개
+    int metricsWindow = 60;                                       // 지연 시간 지표의 최근 구간 길이(초), 누적 값과 함께 직전 구간의 값을 공개
+    String nodeId = "";                                           // 클러스터 노드 이름 (기본: 호스트이름:포트)
+    int clusterPort = 0;                                          // 다른 노드의 연결을 받는 포트, 0이면 TCP 클러스터를 사용하지 않음
+    List<String> clusterPeers = new ArrayList<>();                // 메시지를 보낼 다른 노드 ("호스트:클러스터포트" 쉼표 목록)
+    int heartbeatInterval = 30;                                   // 받은 것이 없을 때 PING을 보내는 간격(초), 0이면 보내지 않음
+    int idleTimeout = 90;                                         // 이 시간(초) 동안 아무것도 받지 못하면 연결을 끊음, 0이면 끊지 않음
+    int maxFrameSize = 64 * 1024 * 1024;                          // 받을 수 있는 프레임 최대 크기(바이트, 텍스트는 한 줄), 넘으면 연결을 끊음
+    int messageRate = 20;                                         // 연결별 초당 메시지 수 (MESSAGE, FILE, FILE_BEGIN), 0이면 제한 없음
+    int messageBurst = 40;                                        // 연결별로 쉬지 않고 한 번에 보낼 수 있는 메시지 수
+    int roomMessageRate = 1000;                                   // 방별 초당 메시지 수 (모든 연결 합계), 0이면 제한 없음
+    int bytesRate = 8 * 1024 * 1024;                              // 연결별 초당 수신 바이트 수 (넘으면 읽기를 늦춤), 0이면 제한 없음
+    RateLimiter.Policy rateLimitPolicy = RateLimiter.Policy.REJECT; // 메시지 제한을 넘었을 때의 처리 (reject: 버리고 알림, backpressure: 읽기를 늦춤)
+    boolean compression = true;                                   // 클라이언트가 요청하면 큰 프레임을 압축해서 보냄 (deflate)
+    int compressionThreshold = ChatFrame.COMPRESSION_THRESHOLD;   // 이보다 짧은 프레임은 압축하지 않음(바이트)
+    int drainTimeout = 10;                                        // 드레인할 때 송신 큐가 비기를 기다리는 최대 시간(초)
+    int reconnectSpread = 10;                                     // 드레인할 때 클라이언트가 다시 연결하는 시각을 흩어 놓는 범위(초)
+    String reconnectTarget = "";                                  // 드레인할 때 클라이언트가 다시 연결할 서버 ("호스트:포트"), 빈 값이면 같은 서버
+                                                                  //   메시지 번호는 노드마다 따로이므로 옮겨 간 클라이언트는 받은 위치를 버리고, 새 서버의 전달 위치(없으면 최근 메시지)부터 받음
+    String snapshotFile = "chatserver.snapshot";                  // 드레인할 때 방과 접속자 상태를 남기고 시작할 때 읽는 파일, 빈 값이면 사용 안 함
+    int clusterNodes = 1;                                         // 한 프로세스에서 띄울 노드 수 (2 이상이면 포트를 하나씩 늘려 가며 프로세스 안 버스로 연결)
+
+    // 명령행 인자 파싱
+    public static ServerConfig parse(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("잘못된 인자: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            if (key.equals("port")) {
+                config.port = Integer.parseInt(value);
+            } else if (key.equals("engine")) {
+                if (!value.equals("thread") && !value.equals("virtual") && !value.equals("nio")) {
+                    throw new IllegalArgumentException("알 수 없는 엔진: " + value);
+                }
+                config.engine = value;
+            } else if (key.equals("backlog")) {
+                config.backlog = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("event-loops")) {
+                config.eventLoops = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("disk-threads")) {
+                config.diskThreads = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("queue-capacity")) {
+                config.queueCapacity = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("overflow-policy")) {
+                config.overflowPolicy = OutboundQueue.OverflowPolicy.valueOf(value.toUpperCase());
+            } else if (key.equals("queue-stats-interval")) {
+                config.queueStatsInterval = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("receipt-flush-interval")) {
+                config.receiptFlushInterval = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("presence-interval")) {
+                config.presenceInterval = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("log-dir")) {
+                config.logDir = value;
+            } else if (key.equals("log-segment-size")) {
+                config.logSegmentSize = Math.max(64 * 1024, Integer.parseInt(value));
+            } else if (key.equals("log-retention-hours")) {
+                config.logRetentionHours = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("replay-count")) {
+                config.replayCount = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("file-transfer")) {
+                if (!value.equals("store") && !value.equals("relay")) {
+                    throw new IllegalArgumentException("알 수 없는 파일 전송 방식: " + value);
+                }
+                config.fileTransfer = value;
+            } else if (key.equals("attachment-dir")) {
+                config.attachmentDir = value;
+            } else if (key.equals("cursor-dir")) {
+                config.cursorDir = value;
+            } else if (key.equals("cursor-cache-size")) {
+                config.cursorCacheSize = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("metrics")) {
+                if (!value.equals("on") && !value.equals("off")) {
+                    throw new IllegalArgumentException("알 수 없는 지표 설정: " + value);
+                }
+                config.metrics = value.equals("on");
+            } else if (key.equals("metrics-port")) {
+                config.metricsPort = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("metrics-window")) {
+                config.metricsWindow = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("node-id")) {
+                config.nodeId = value;
+            } else if (key.equals("cluster-port")) {
+                config.clusterPort = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("cluster-peers")) {
+                for (String peer : value.split(",")) {
+                    if (!peer.trim().isEmpty()) {
+                        config.clusterPeers.add(peer.trim());
+                    }
+                }
+            } else if (key.equals("heartbeat-interval")) {
+                config.heartbeatInterval = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("idle-timeout")) {
+                config.idleTimeout = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("max-frame-size")) {
+                config.maxFrameSize = Math.max(64 * 1024, Integer.parseInt(value));
+            } else if (key.equals("message-rate")) {
+                config.messageRate = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("message-burst")) {
+                config.messageBurst = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("room-message-rate")) {
+                config.roomMessageRate = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("bytes-rate")) {
+                config.bytesRate = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("rate-limit-policy")) {
+                config.rateLimitPolicy = RateLimiter.Policy.valueOf(value.toUpperCase());
+            } else if (key.equals("compression")) {
+                if (!value.equals(ChatFrame.COMPRESSION) && !value.equals("off")) {
+                    throw new IllegalArgumentException("알 수 없는 압축 방식: " + value);
+                }
+                config.compression = value.equals(ChatFrame.COMPRESSION);
+            } else if (key.equals("compression-threshold")) {
+                config.compressionThreshold = Math.max(1, Integer.parseInt(value));
+            } else if (key.equals("drain-timeout")) {
+                config.drainTimeout = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("reconnect-spread")) {
+                config.reconnectSpread = Math.max(0, Integer.parseInt(value));
+            } else if (key.equals("reconnect-target")) {
+                int separator = value.lastIndexOf(':');
+                if (!value.isEmpty() && (separator <= 0 || !validPort(value.substring(separator + 1)))) {
+                    throw new IllegalArgumentException("잘못된 다시 연결 주소: " + value);
+                }
+                config.reconnectTarget = value;
+            } else if (key.equals("snapshot-file")) {
+                config.snapshotFile = value;
+            } else if (key.equals("cluster-nodes")) {
+                config.clusterNodes = Math.max(1, Integer.parseInt(value));
+            } else {
+                throw new IllegalArgumentException("알 수 없는 옵션: " + key);
+            }
+        }
+        return config;
+    }
+
+    private static boolean validPort(String value) {
+        try {
+            int port = Integer.parseInt(value);
+            return port > 0 && port <= 65535;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
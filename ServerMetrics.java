@@ -0,0 +1,315 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// 서버 지표: 연결/메시지/바이트 카운터와 처리 지연 히스토그램을 모아 HTTP(텍스트)와 JMX로 공개
+// 카운터는 LongAdder(스레드별로 나뉜 셀에 더함)라서 여러 연결 스레드가 동시에 올려도 경합이 거의 없고,
+// 히스토그램은 고정 크기 배열이라 기록할 때 할당이 없음
+// 끄면(--metrics=off) 기록 메서드는 final 필드 하나만 확인하고 바로 반환 (System.nanoTime()도 호출하지 않음)
+//   GET http://127.0.0.1:<metrics-port>/metrics  →  "이름 값" 한 줄씩
+//   JMX: talkservice:type=ChatServer,port=<서버 포트> (한 프로세스에 노드가 여러 개일 수 있어 포트로 구분)
+// 히스토그램은 시작 후 누적 값과, rotate()가 주기적으로 나눈 직전 구간(이름_window_*)의 값을 함께 공개
+public class ServerMetrics {
+    final boolean enabled;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();          // 송신 큐 초과로 끊은 연결 수
+    private final LongAdder reaped = new LongAdder();             // 응답이 없어서 끊은 연결 수
+    private final LongAdder rateLimited = new LongAdder();        // 전송 제한을 넘어 버린 프레임 수
+    private final LongAdder readPauses = new LongAdder();         // 전송 제한으로 읽기를 늦춘 횟수
+    private final LongAdder framesIn = new LongAdder();           // 받은 프로토콜 프레임 수
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder messages = new LongAdder();           // 채팅 메시지 수
+    private final LongAdder broadcasts = new LongAdder();         // 브로드캐스트 횟수
+    private final LongAdder deliveries = new LongAdder();         // 브로드캐스트로 송신 큐에 넣은 프레임 수 (팬아웃 합계)
+    private final LatencyHistogram handleNanos = new LatencyHistogram();       // 프레임 하나 처리 시간
+    private final LatencyHistogram fanoutNanos = new LatencyHistogram();       // 브로드캐스트 한 번 (모든 멤버의 송신 큐에 넣기까지)
+    private final LatencyHistogram roomLockWaitNanos = new LatencyHistogram(); // 채팅방 기록 잠금을 기다린 시간
+    private final LatencyHistogram searchNanos = new LatencyHistogram();       // 검색 한 페이지 (색인 조회와 원문 확인)
+
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();                        // 조회할 때 계산하는 값
+    private final Map<String, Supplier<Map<String, Integer>>> roomGauges = new LinkedHashMap<>(); // 방별 값
+    private HttpServer httpServer;
+    private ObjectName mbeanName;
+
+    public ServerMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // ---- 기록 (연결 스레드, 이벤트 루프에서 호출) ----
+
+    void connectionOpened() {
+        if (enabled) {
+            connectionsOpened.increment();
+        }
+    }
+
+    void connectionClosed(boolean evicted) {
+        if (enabled) {
+            connectionsClosed.increment();
+            if (evicted) {
+                evictions.increment();
+            }
+        }
+    }
+
+    void connectionReaped() {
+        if (enabled) {
+            reaped.increment();
+        }
+    }
+
+    void rateLimited() {
+        if (enabled) {
+            rateLimited.increment();
+        }
+    }
+
+    void readPaused() {
+        if (enabled) {
+            readPauses.increment();
+        }
+    }
+
+    void bytesIn(long count) {
+        if (enabled) {
+            bytesIn.add(count);
+        }
+    }
+
+    void bytesOut(long count) {
+        if (enabled) {
+            bytesOut.add(count);
+        }
+    }
+
+    void message() {
+        if (enabled) {
+            messages.increment();
+        }
+    }
+
+    // 시간 측정 시작 (꺼져 있으면 0)
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // 프레임 처리 완료
+    void frameHandled(long start) {
+        if (enabled) {
+            framesIn.increment();
+            handleNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    void searched(long start) {
+        if (enabled) {
+            searchNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    // 브로드캐스트 완료: recipients명에게 보냄
+    void broadcast(long start, int recipients) {
+        if (enabled) {
+            fanoutNanos.record(System.nanoTime() - start);
+            broadcasts.increment();
+            deliveries.add(recipients);
+        }
+    }
+
+    // 채팅방 기록 잠금을 얻음
+    void roomLockAcquired(long start) {
+        if (enabled) {
+            roomLockWaitNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    // ---- 조회 ----
+
+    // 조회할 때 계산하는 값 등록 (start() 전에 등록)
+    void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    void roomGauge(String name, Supplier<Map<String, Integer>> values) {
+        roomGauges.put(name, values);
+    }
+
+    // 현재 값 전체 (이름 순서 고정)
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("connections_opened", connectionsOpened.sum());
+        values.put("connections_closed", connectionsClosed.sum());
+        values.put("connections_evicted", evictions.sum());
+        values.put("connections_reaped", reaped.sum());
+        values.put("frames_rate_limited", rateLimited.sum());
+        values.put("read_pauses", readPauses.sum());
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        values.put("frames_in", framesIn.sum());
+        values.put("bytes_in", bytesIn.sum());
+        values.put("bytes_out", bytesOut.sum());
+        values.put("messages", messages.sum());
+        values.put("broadcasts", broadcasts.sum());
+        values.put("broadcast_deliveries", deliveries.sum());
+        putHistogram(values, "frame_handle_ns", handleNanos);
+        putHistogram(values, "broadcast_fanout_ns", fanoutNanos);
+        putHistogram(values, "room_lock_wait_ns", roomLockWaitNanos);
+        putHistogram(values, "search_ns", searchNanos);
+        return values;
+    }
+
+    private static void putHistogram(Map<String, Long> values, String name, LatencyHistogram histogram) {
+        values.put(name + "_count", histogram.count());
+        values.put(name + "_p50", histogram.percentile(50));
+        values.put(name + "_p99", histogram.percentile(99));
+        values.put(name + "_p999", histogram.percentile(99.9));
+        values.put(name + "_max", histogram.max());
+        values.put(name + "_window_count", histogram.windowCount());
+        values.put(name + "_window_p50", histogram.windowPercentile(50));
+        values.put(name + "_window_p99", histogram.windowPercentile(99));
+        values.put(name + "_window_p999", histogram.windowPercentile(99.9));
+        values.put(name + "_window_max", histogram.windowMax());
+    }
+
+    // 히스토그램의 시간 구간을 넘김 (스케줄러에서 --metrics-window 초마다 호출)
+    void rotate() {
+        if (enabled) {
+            handleNanos.rotate();
+            fanoutNanos.rotate();
+            roomLockWaitNanos.rotate();
+            searchNanos.rotate();
+        }
+    }
+
+    // 텍스트 형식: "이름 값" 한 줄씩, 방별 값은 "이름{room="방"} 값"
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> value : snapshot().entrySet()) {
+            text.append(value.getKey()).append(' ').append(value.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Supplier<Map<String, Integer>>> gauge : roomGauges.entrySet()) {
+            for (Map.Entry<String, Integer> room : gauge.getValue().get().entrySet()) {
+                text.append(gauge.getKey()).append("{room=\"")
+                        .append(room.getKey().replace("\\", "\\\\").replace("\"", "\\\""))
+                        .append("\"} ").append(room.getValue()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    // ---- 공개 ----
+
+    // JMX 등록과 HTTP 엔드포인트 시작 (httpPort가 0이면 HTTP는 열지 않음)
+    public void start(int serverPort, int httpPort) {
+        if (!enabled) {
+            return;
+        }
+        registerMBean(serverPort);
+        if (httpPort > 0) {
+            try {
+                httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+                httpServer.createContext("/metrics", exchange -> {
+                    byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                httpServer.start();
+                System.out.println("서버 지표: http://127.0.0.1:" + httpPort + "/metrics");
+            } catch (IOException e) {
+                System.out.println("서버 지표 에러: " + e.getMessage());
+            }
+        }
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // snapshot()의 값마다 읽기 전용 long 속성 하나
+    private void registerMBean(int serverPort) {
+        Set<String> names = snapshot().keySet();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.size()];
+        int i = 0;
+        for (String name : names) {
+            attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+        }
+        MBeanInfo info = new MBeanInfo(ServerMetrics.class.getName(), "채팅 서버 지표", attributes, null, null, null);
+
+        DynamicMBean mbean = new DynamicMBean() {
+            @Override
+            public Object getAttribute(String attribute) throws AttributeNotFoundException {
+                Long value = snapshot().get(attribute);
+                if (value == null) {
+                    throw new AttributeNotFoundException(attribute);
+                }
+                return value;
+            }
+
+            @Override
+            public AttributeList getAttributes(String[] attributes) {
+                Map<String, Long> values = snapshot();
+                AttributeList list = new AttributeList();
+                for (String attribute : attributes) {
+                    if (values.containsKey(attribute)) {
+                        list.add(new Attribute(attribute, values.get(attribute)));
+                    }
+                }
+                return list;
+            }
+
+            @Override
+            public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+                throw new AttributeNotFoundException("읽기 전용: " + attribute.getName());
+            }
+
+            @Override
+            public AttributeList setAttributes(AttributeList attributes) {
+                return new AttributeList();
+            }
+
+            @Override
+            public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+                throw new ReflectionException(new NoSuchMethodException(actionName));
+            }
+
+            @Override
+            public MBeanInfo getMBeanInfo() {
+                return info;
+            }
+        };
+
+        try {
+            ObjectName name = new ObjectName("talkservice:type=ChatServer,port=" + serverPort);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+            mbeanName = name;
+        } catch (JMException e) {
+            System.out.println("서버 지표 JMX 등록 에러: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// 서버 상태 스냅샷: 드레인할 때 채팅방 목록과 방별 접속자를 작은 파일로 남기고, 다음 프로세스가 시작할 때 한 번 읽고 지움
+// 다시 연결해 오는 사용자를 새 입장으로 알리지 않고, 아무도 없는 방도 잠시 목록에 남겨 두기 위한 것 (메시지 기록과 전달 위치는 각자 디스크에 있음)
+//   형식: [MAGIC int][VERSION int][저장 시각 long][방 수 int] 방마다 [방이름 UTF][접속자 수 int][사용자 UTF...]
+public class ServerSnapshot {
+    private static final int MAGIC = 0x54414C4B; // "TALK"
+    private static final int VERSION = 1;
+    private static final long MAX_AGE_MILLIS = 10 * 60 * 1000; // 이보다 오래된 스냅샷은 무시 (그동안 다른 프로세스가 돌았을 수 있음)
+    private static final int MAX_INITIAL_CAPACITY = 1024;      // 파일에 적힌 수만 믿고 큰 컬렉션을 미리 만들지 않음 (깨진 파일 대비)
+
+    final Map<String, List<String>> rooms; // 방별 접속자 (접속자가 없는 방은 빈 목록)
+
+    ServerSnapshot(Map<String, List<String>> rooms) {
+        this.rooms = rooms;
+    }
+
+    // 임시 파일에 쓰고 바꿔치기해서 쓰는 도중에 종료되어도 반쯤 쓴 파일을 읽지 않음
+    void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(rooms.size());
+            for (Map.Entry<String, List<String>> room : rooms.entrySet()) {
+                out.writeUTF(room.getKey());
+                out.writeInt(room.getValue().size());
+                for (String user : room.getValue()) {
+                    out.writeUTF(user);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 스냅샷을 읽고 지움: 없거나, 형식이 다르거나, 오래되었으면 null
+    static ServerSnapshot take(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (System.currentTimeMillis() - in.readLong() > MAX_AGE_MILLIS) {
+                return null;
+            }
+            int roomCount = readCount(in);
+            Map<String, List<String>> rooms = new HashMap<>(Math.min(roomCount, MAX_INITIAL_CAPACITY) * 2);
+            for (int i = 0; i < roomCount; i++) {
+                String roomName = in.readUTF();
+                int userCount = readCount(in);
+                List<String> users = new ArrayList<>(Math.min(userCount, MAX_INITIAL_CAPACITY));
+                for (int j = 0; j < userCount; j++) {
+                    users.add(in.readUTF());
+                }
+                rooms.put(roomName, users);
+            }
+            return new ServerSnapshot(rooms);
+        } finally {
+            Files.delete(file); // 한 번만 사용
+        }
+    }
+
+    // 방 수/접속자 수: 음수면 깨진 파일 (실제 개수가 적으면 읽다가 EOFException)
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("스냅샷 형식이 올바르지 않습니다: " + count);
+        }
+        return count;
+    }
+}
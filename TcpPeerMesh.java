@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// TCP 노드 메시 버스: 모든 노드가 서로 연결 (노드마다 클러스터 포트에서 받고, 설정된 다른 노드마다 보내는 연결 하나)
+//   보내는 쪽 → 받는 쪽: NODE|보내는노드 (응답: NODE|받는노드), 이후 SUB|방, UNSUB|방 과 방 메시지 (바이너리 형식)
+// 보내는 연결은 노드마다 송신 큐와 전용 스레드가 있어서 느린 노드가 다른 노드나 브로드캐스트 스레드를 막지 않음
+// 다른 노드가 SUB로 알린 방의 메시지만 그 노드에 보내고, 연결이 끊기면 다시 연결한 뒤 SUB를 처음부터 다시 보냄
+public class TcpPeerMesh implements MessageBus {
+    private static final int QUEUE_CAPACITY = 64 * 1024;          // 노드별 송신 큐 최대 메시지 수 (넘치면 버림)
+    private static final int WRITE_BATCH_SIZE = 64;               // gathering write 한 번에 보내는 최대 버퍼 수
+    private static final long RECONNECT_DELAY_MILLIS = 1000;      // 연결 실패 후 다시 시도할 때까지의 시간
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+    private final String nodeId;
+    private final int port;
+    private final List<InetSocketAddress> peers;
+    private final Set<String> localRooms = ConcurrentHashMap.newKeySet();       // 이 노드에 멤버가 있는 방
+    private final Map<String, Set<String>> peerRooms = new ConcurrentHashMap<>(); // 다른 노드별로 그 노드에 멤버가 있는 방
+    private final List<PeerLink> links = new CopyOnWriteArrayList<>();
+    private final List<Socket> inbound = new CopyOnWriteArrayList<>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+    private volatile boolean running = false;
+    private Listener listener;
+
+    // peers: "호스트:포트" 목록
+    public TcpPeerMesh(String nodeId, int port, List<String> peers) {
+        this.nodeId = nodeId;
+        this.port = port;
+        this.peers = new ArrayList<>();
+        for (String peer : peers) {
+            int separator = peer.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("잘못된 노드 주소: " + peer);
+            }
+            this.peers.add(new InetSocketAddress(peer.substring(0, separator), Integer.parseInt(peer.substring(separator + 1))));
+        }
+    }
+
+    @Override
+    public void start(Listener listener) throws IOException {
+        this.listener = listener;
+        running = true;
+        serverSocket = new ServerSocket(port);
+        startThread("cluster-accept", this::acceptLoop);
+        for (InetSocketAddress address : peers) {
+            PeerLink link = new PeerLink(address);
+            links.add(link);
+            startThread("cluster-link-" + address.getPort(), link::run);
+        }
+        System.out.println("클러스터 노드 " + nodeId + ": 포트 " + port + ", 다른 노드 " + peers.size() + "개");
+    }
+
+    private void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    @Override
+    public void subscribe(String roomName) {
+        if (localRooms.add(roomName)) {
+            ChatFrame frame = new ChatFrame("SUB", roomName);
+            for (PeerLink link : links) {
+                link.offer(frame);
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribe(String roomName) {
+        if (localRooms.remove(roomName)) {
+            ChatFrame frame = new ChatFrame("UNSUB", roomName);
+            for (PeerLink link : links) {
+                link.offer(frame);
+            }
+        }
+    }
+
+    @Override
+    public void publish(String roomName, ChatFrame frame) {
+        for (PeerLink link : links) {
+            String peerId = link.peerId;
+            if (peerId != null && peerRooms.getOrDefault(peerId, Collections.emptySet()).contains(roomName)) {
+                link.offer(frame);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket socket : inbound) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Thread thread : threads) {
+            thread.interrupt(); // 보내는 연결은 채널이 닫히면서 깨어남
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                inbound.add(socket);
+                startThread("cluster-in-" + socket.getPort(), () -> receive(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("클러스터 연결 수락 에러: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // 다른 노드가 보내는 연결: 첫 프레임으로 노드를 확인하고 응답한 뒤 SUB와 방 메시지를 받음
+    private void receive(Socket socket) {
+        String[] peerId = new String[1];
+        Set<String> rooms = ConcurrentHashMap.newKeySet(); // 이 연결로 받은 SUB (연결이 끊기면 버림)
+        FrameDecoder decoder = new FrameDecoder(frame -> {
+            if (peerId[0] == null) {
+                if (!frame.type.equals("NODE")) {
+                    throw new IllegalArgumentException("노드 확인 없이 받은 프레임: " + frame.type);
+                }
+                peerId[0] = frame.field(0);
+                peerRooms.put(peerId[0], rooms);
+                try {
+                    new ChatFrame("NODE", nodeId).writeTo(socket.getOutputStream(), true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (frame.type.equals("SUB")) {
+                rooms.add(frame.field(0));
+            } else if (frame.type.equals("UNSUB")) {
+                rooms.remove(frame.field(0));
+            } else {
+                listener.messageReceived(frame);
+            }
+        });
+        decoder.switchToBinary();
+        try {
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                decoder.feed(buffer, 0, count);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (running) {
+                System.out.println("클러스터 수신 에러(" + peerId[0] + "): " + e.getMessage());
+            }
+        } finally {
+            if (peerId[0] != null) {
+                peerRooms.remove(peerId[0], rooms);
+            }
+            inbound.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // 다른 노드 하나로 보내는 연결: 끊기면 다시 연결
+    private class PeerLink {
+        final InetSocketAddress address;
+        final OutboundQueue queue = new OutboundQueue(QUEUE_CAPACITY, OutboundQueue.OverflowPolicy.DROP);
+        final ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH_SIZE];
+        volatile String peerId; // 연결되어 노드를 확인한 동안에만 설정
+
+        PeerLink(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        // 프레임은 바이너리 형식으로 한 번만 인코딩되어 이 노드의 바이너리 멤버와 공유됨
+        void offer(ChatFrame frame) {
+            queue.offer(new ByteBuffer[] {frame.encoded(true).duplicate()});
+        }
+
+        void run() {
+            while (running) {
+                try (SocketChannel channel = SocketChannel.open(address)) {
+                    channel.socket().setTcpNoDelay(true);
+                    peerId = handshake(channel);
+                    System.out.println("클러스터 노드 연결: " + peerId + " (" + address + ")");
+                    // 연결되기 전의 SUB는 큐에 있거나 버려졌을 수 있으므로 현재 방 목록을 처음부터 다시 보냄
+                    for (String roomName : localRooms) {
+                        offer(new ChatFrame("SUB", roomName));
+                    }
+                    writeLoop(channel);
+                } catch (IOException e) {
+                    if (running && peerId != null) {
+                        System.out.println("클러스터 노드 연결 끊김: " + peerId + " (" + e.getMessage() + ")");
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    peerId = null;
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private String handshake(SocketChannel channel) throws IOException {
+            write(channel, new ByteBuffer[] {new ChatFrame("NODE", nodeId).encoded(true).duplicate()}, 1);
+            Socket socket = channel.socket();
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            String[] reply = new String[1];
+            FrameDecoder decoder = new FrameDecoder(frame -> reply[0] = frame.type.equals("NODE") ? frame.field(0) : null);
+            decoder.switchToBinary();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[256];
+            while (reply[0] == null) {
+                int count = in.read(buffer);
+                if (count == -1) {
+                    throw new IOException("노드 확인 응답 없음");
+                }
+                decoder.feed(buffer, 0, count);
+            }
+            return reply[0];
+        }
+
+        // 큐에 쌓인 프레임을 모아 한 번의 gathering write로 전송
+        private void writeLoop(SocketChannel channel) throws IOException, InterruptedException {
+            while (running) {
+                ByteBuffer[] parts = queue.take();
+                int count = 0;
+                do {
+                    for (ByteBuffer part : parts) {
+                        batch[count++] = part;
+                    }
+                } while (count + OutboundQueue.MAX_FRAME_PARTS <= batch.length && (parts = queue.poll()) != null);
+                write(channel, batch, count);
+                Arrays.fill(batch, 0, count, null);
+            }
+        }
+
+        private void write(SocketChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+            while (buffers[count - 1].hasRemaining()) {
+                channel.write(buffers, 0, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 토큰 버킷 (GCRA 방식): 토큰 수와 마지막 충전 시각 대신 "버킷이 가득 차는 이론상 시각" 하나만 두어 CAS 한 번으로 갱신
+// 잠금이 없으므로 여러 연결 스레드/이벤트 루프가 같은 방의 버킷을 동시에 사용해도 막히지 않음
+//   rate: 초당 충전되는 토큰 수, burst: 쉬지 않고 한 번에 쓸 수 있는 최대 토큰 수
+public class TokenBucket {
+    private final long nanosPerToken; // 토큰 하나가 충전되는 시간
+    private final long burstNanos;    // 버킷이 빈 상태에서 가득 차기까지의 시간
+    private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE); // 이 시각 이후로는 버킷이 가득 참 (System.nanoTime 기준)
+
+    public TokenBucket(long rate, long burst) {
+        this.nanosPerToken = Math.max(1, TimeUnit.SECONDS.toNanos(1) / rate);
+        this.burstNanos = nanosPerToken * Math.max(1, burst);
+    }
+
+    // 토큰 cost개 사용: 남아 있으면 사용하고 0, 모자라면 사용하지 않고 다시 시도할 수 있을 때까지 남은 시간(나노초)
+    public long tryAcquire(long cost) {
+        return acquire(cost, false);
+    }
+
+    // 토큰 cost개를 빚을 내서라도 사용: 모자란 만큼 쉬어야 하는 시간(나노초)을 반환 (0이면 바로 계속해도 됨)
+    public long acquireDebt(long cost) {
+        return acquire(cost, true);
+    }
+
+    private long acquire(long cost, boolean force) {
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost * nanosPerToken;
+            long wait = next - now - burstNanos;
+            if (wait > 0 && !force) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(wait, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// 프레임 인코딩 → FrameDecoder 디코딩 왕복과, 길이를 속인 프레임 처리
+class FrameDecoderTest {
+    private final List<ChatFrame> decoded = new ArrayList<>();
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        ByteBuffer copy = buffer.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    // 한 바이트씩 나눠서 넣어도 같은 프레임이 나와야 함
+    private void feedInPieces(FrameDecoder decoder, byte[] bytes, int pieceSize) {
+        for (int offset = 0; offset < bytes.length; offset += pieceSize) {
+            decoder.feed(bytes, offset, Math.min(pieceSize, bytes.length - offset));
+        }
+    }
+
+    private static void assertSameFrame(ChatFrame expected, ChatFrame actual) {
+        assertEquals(expected.type, actual.type);
+        assertArrayEquals(expected.fields, actual.fields);
+        assertArrayEquals(expected.data, actual.data);
+    }
+
+    @Test
+    void textRoundTrip() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add);
+        ChatFrame message = new ChatFrame("MESSAGE", "room", "alice", "hello|with pipe");
+        ChatFrame file = new ChatFrame("FILE", new String[]{"room", "bob", "x.bin"}, new byte[]{0, 1, 2, (byte) 0xFF});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(bytes(message.encoded(false)));
+        out.writeBytes(bytes(file.encoded(false)));
+        feedInPieces(decoder, out.toByteArray(), 3);
+
+        assertEquals(2, decoded.size());
+        assertSameFrame(message, decoded.get(0));
+        assertSameFrame(file, decoded.get(1));
+    }
+
+    @Test
+    void binaryRoundTrip() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add);
+        decoder.switchToBinary();
+        ChatFrame chat = ChatFrame.chat("방", 42, "앨리스", "안녕하세요");
+        ChatFrame chunk = new ChatFrame("FILE_CHUNK", new String[]{"t1", "0"}, new byte[70000]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(bytes(chat.encoded(true)));
+        out.writeBytes(bytes(chunk.encoded(true)));
+        feedInPieces(decoder, out.toByteArray(), 1);
+
+        assertEquals(2, decoded.size());
+        assertSameFrame(chat, decoded.get(0));
+        assertSameFrame(chunk, decoded.get(1));
+    }
+
+    @Test
+    void compressedRoundTrip() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add);
+        decoder.switchToBinary();
+        ChatFrame frame = ChatFrame.chat("room", 1, "alice", "감사합니다 ".repeat(20000));
+        byte[] encoded = bytes(frame.encoded(true, ChatFrame.COMPRESSION_THRESHOLD));
+        assertTrue(ChatFrame.isCompressed(encoded[0] & 0xFF));
+        assertTrue(encoded.length < bytes(frame.encoded(true)).length);
+
+        feedInPieces(decoder, encoded, 7);
+
+        assertEquals(1, decoded.size());
+        assertSameFrame(frame, decoded.get(0));
+    }
+
+    @Test
+    void rejectsDeclaredLengthOverLimit() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add, 1024);
+        decoder.switchToBinary();
+        byte[] header = frameHeader(ChatFrame.typeCode("MESSAGE"), 1025);
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.feed(header, 0, header.length));
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    void rejectsNegativeDeclaredLength() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add);
+        decoder.switchToBinary();
+        byte[] header = frameHeader(ChatFrame.typeCode("MESSAGE"), -1); // varint로는 0xFFFFFFFF
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.feed(header, 0, header.length));
+    }
+
+    // 길이만 크게 적고 본문을 보내지 않는 프레임: 예외 없이 기다리고, 뒤에 오는 프레임도 그 본문으로 읽힘
+    @Test
+    void waitsForLargeDeclaredBody() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add);
+        decoder.switchToBinary();
+        byte[] header = frameHeader(ChatFrame.typeCode("MESSAGE"), ChatFrame.MAX_FRAME_LENGTH);
+
+        decoder.feed(header, 0, header.length);
+        byte[] more = bytes(new ChatFrame("MESSAGE", "r", "a", "b").encoded(true));
+        decoder.feed(more, 0, more.length);
+
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    void rejectsFieldLongerThanBody() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ChatFrame.writeVarint(body, 100); // 필드 길이 100, 실제로는 3바이트
+        body.writeBytes(new byte[]{'a', 'b', 'c'});
+        byte[] bytes = body.toByteArray();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ChatFrame.decodeBinary(ChatFrame.typeCode("MESSAGE"), bytes, 0, bytes.length));
+    }
+
+    @Test
+    void rejectsUnknownType() {
+        byte[] frame = frameHeader(0x7F, 0);
+        FrameDecoder decoder = new FrameDecoder(decoded::add);
+        decoder.switchToBinary();
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.feed(frame, 0, frame.length));
+    }
+
+    @Test
+    void rejectsTextLineOverLimit() {
+        FrameDecoder decoder = new FrameDecoder(decoded::add, 16);
+        byte[] line = "MESSAGE|r|a|0123456789abcdef".getBytes(ChatFrame.TEXT_CHARSET); // 줄바꿈 없이 한도를 넘김
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.feed(line, 0, line.length));
+    }
+
+    // 압축 프레임이 선언한 원래 길이와 다르게 풀리면 거부
+    @Test
+    void rejectsCompressedLengthMismatch() {
+        ChatFrame frame = new ChatFrame("MESSAGE", "room", "alice", "좋아요 ".repeat(2000));
+        byte[] encoded = bytes(frame.encoded(true, ChatFrame.COMPRESSION_THRESHOLD));
+        byte[] binary = bytes(frame.encoded(true));
+        int originalLength = (int) (ChatFrame.readVarint(binary, 1, binary.length) >>> 32);
+
+        for (int declared : new int[]{originalLength - 1, originalLength + 1, ChatFrame.MAX_FRAME_LENGTH - 1}) {
+            byte[] forged = withDeclaredOriginalLength(encoded, declared);
+            FrameDecoder decoder = new FrameDecoder(decoded::add);
+            decoder.switchToBinary();
+            assertThrows(IllegalArgumentException.class, () -> decoder.feed(forged, 0, forged.length), "declared " + declared);
+        }
+        assertTrue(decoded.isEmpty());
+    }
+
+    // 압축 본문을 그대로 두고 원래 본문 길이만 바꾼 압축 프레임
+    private static byte[] withDeclaredOriginalLength(byte[] compressed, int declared) {
+        long header = ChatFrame.readVarint(compressed, 1, compressed.length);
+        long inner = ChatFrame.readVarint(compressed, (int) header, compressed.length);
+        int deflatedStart = (int) inner;
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ChatFrame.writeVarint(body, declared);
+        body.write(compressed, deflatedStart, compressed.length - deflatedStart);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(compressed[0]);
+        ChatFrame.writeVarint(out, body.size());
+        out.writeBytes(body.toByteArray());
+        return out.toByteArray();
+    }
+
+    private static byte[] frameHeader(int typeCode, int bodyLength) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(typeCode);
+        ChatFrame.writeVarint(out, bodyLength);
+        return out.toByteArray();
+    }
+}
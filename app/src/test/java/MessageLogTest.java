@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// 세그먼트 파일에서 복구: 다시 열었을 때 번호가 이어지고 최근 메시지를 다시 보내는지
+class MessageLogTest {
+    private static final int SEGMENT_SIZE = 1024; // 메시지 수십 개마다 새 세그먼트
+    private static final long RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path dir;
+
+    private static void appendMessages(MessageLog log, String roomName, int count) {
+        for (int i = 1; i <= count; i++) {
+            log.append(roomName, "alice", "message " + i, seq -> { });
+        }
+    }
+
+    private static List<MessageLog.Entry> replay(MessageLog log, String roomName, long since) {
+        List<MessageLog.Entry> replayed = new ArrayList<>();
+        log.join(roomName, since, 10, () -> { }, replayed::addAll);
+        return replayed;
+    }
+
+    private long segmentCount(String roomName) throws IOException {
+        try (Stream<Path> files = Files.list(dir.resolve(roomName))) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+    @Test
+    void recoversLastSeqAndRecentMessages() throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_SIZE, 10, 0);
+        appendMessages(log, "room", 200);
+        log.close();
+
+        MessageLog reopened = new MessageLog(dir, SEGMENT_SIZE, 10, 0);
+        try {
+            assertEquals(200, reopened.lastSeq("room"));
+            List<MessageLog.Entry> replayed = replay(reopened, "room", 150);
+            assertEquals(50, replayed.size());
+            assertEquals(151, replayed.get(0).seq);
+            assertEquals("message 200", replayed.get(replayed.size() - 1).message);
+            assertEquals(201, reopened.append("room", "bob", "after restart", seq -> { }));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // 보존 기간이 지나 세그먼트를 지운 뒤에도 번호가 처음부터 다시 시작하지 않아야 함 (클라이언트의 마지막 번호와 어긋남)
+    @Test
+    void recoversLastSeqAfterRetention() throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_SIZE, 10, RETENTION_MILLIS);
+        appendMessages(log, "room", 200);
+        log.close();
+        long before = segmentCount("room");
+        assertTrue(before > 1, "segments: " + before);
+
+        log.maintain(System.currentTimeMillis() + 2 * RETENTION_MILLIS); // 모든 기록의 보존 기간이 지난 시점
+        assertEquals(1, segmentCount("room"));
+
+        MessageLog reopened = new MessageLog(dir, SEGMENT_SIZE, 10, RETENTION_MILLIS);
+        try {
+            assertEquals(200, reopened.lastSeq("room"));
+            assertEquals(201, reopened.append("room", "bob", "after retention", seq -> { }));
+            List<MessageLog.Entry> replayed = replay(reopened, "room", 0);
+            assertFalse(replayed.isEmpty());
+            assertTrue(replayed.get(0).seq > 1, "expired segments must not be replayed");
+            assertEquals(201, replayed.get(replayed.size() - 1).seq);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // 재시작 후 아무도 입장하지 않은 방도 보존 기간 정리 대상 (메모리에 기록을 열지 않은 방)
+    @Test
+    void expiresSegmentsOfRoomsNotLoaded() throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_SIZE, 10, RETENTION_MILLIS);
+        appendMessages(log, "idle", 200);
+        log.close();
+        long before = segmentCount("idle");
+        assertTrue(before > 1, "segments: " + before);
+
+        MessageLog reopened = new MessageLog(dir, SEGMENT_SIZE, 10, RETENTION_MILLIS);
+        reopened.close();
+        reopened.maintain(System.currentTimeMillis()); // 기간 안이면 그대로
+        assertEquals(before, segmentCount("idle"));
+        reopened.maintain(System.currentTimeMillis() + 2 * RETENTION_MILLIS);
+        assertEquals(1, segmentCount("idle"));
+
+        MessageLog restarted = new MessageLog(dir, SEGMENT_SIZE, 10, RETENTION_MILLIS);
+        try {
+            assertEquals(200, restarted.lastSeq("idle"));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    // 기간이 지나지 않은 세그먼트는 남김
+    @Test
+    void keepsSegmentsWithinRetention() throws IOException {
+        MessageLog log = new MessageLog(dir, SEGMENT_SIZE, 10, RETENTION_MILLIS);
+        appendMessages(log, "room", 200);
+        log.close();
+        long before = segmentCount("room");
+
+        log.maintain(System.currentTimeMillis());
+
+        assertEquals(before, segmentCount("room"));
+    }
+}
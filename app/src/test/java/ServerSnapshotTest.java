@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// 드레인 스냅샷: 쓰고 한 번 읽으면 지워지고, 깨진 파일은 IOException이나 null로 끝나야 함 (서버 시작을 막지 않도록)
+class ServerSnapshotTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void writeThenTakeOnce() throws IOException {
+        Path file = dir.resolve("chatserver.snapshot");
+        Map<String, List<String>> rooms = new HashMap<>();
+        rooms.put("회의실", List.of("alice", "bob"));
+        rooms.put("empty", List.of());
+        new ServerSnapshot(rooms).write(file);
+
+        ServerSnapshot snapshot = ServerSnapshot.take(file);
+
+        assertNotNull(snapshot);
+        assertEquals(rooms, snapshot.rooms);
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(dir.resolve("chatserver.snapshot.tmp")));
+        assertNull(ServerSnapshot.take(file));
+    }
+
+    @Test
+    void ignoresOtherFormat() throws IOException {
+        Path file = dir.resolve("chatserver.snapshot");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertNull(ServerSnapshot.take(file));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void ignoresStaleSnapshot() throws IOException {
+        Path file = dir.resolve("chatserver.snapshot");
+        writeRaw(file, System.currentTimeMillis() - 60 * 60 * 1000, 0);
+
+        assertNull(ServerSnapshot.take(file));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path file = dir.resolve("chatserver.snapshot");
+        Map<String, List<String>> rooms = new HashMap<>();
+        rooms.put("room", List.of("alice", "bob"));
+        new ServerSnapshot(rooms).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertThrows(IOException.class, () -> ServerSnapshot.take(file));
+        assertFalse(Files.exists(file));
+    }
+
+    // 방 수를 음수나 아주 큰 값으로 적은 파일: 메모리를 미리 잡거나 IOException 외의 예외를 내지 않음
+    @Test
+    void rejectsHostileCounts() throws IOException {
+        Path file = dir.resolve("chatserver.snapshot");
+        for (int count : new int[]{-1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            writeRaw(file, System.currentTimeMillis(), count);
+            assertThrows(IOException.class, () -> ServerSnapshot.take(file), "room count " + count);
+            assertFalse(Files.exists(file));
+        }
+    }
+
+    // 헤더와 방 수만 있는 스냅샷 (형식은 ServerSnapshot 주석 참고)
+    private static void writeRaw(Path file, long savedAt, int roomCount) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x54414C4B);
+            out.writeInt(1);
+            out.writeLong(savedAt);
+            out.writeInt(roomCount);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+
+// 벤치마크 준비 코드: 채팅 서버 클래스는 기본 패키지에 있어서 이름 있는 패키지(JMH 벤치마크)에서 직접 참조할 수 없음
+// 같은 기본 패키지인 이 클래스가 서버 객체를 만들고 java.util.function 객체로 감싸서 돌려주면,
+// 벤치마크는 준비 단계에서 리플렉션으로 한 번만 호출하고 측정 구간에서는 인터페이스 호출만 함
+public class BenchFixtures {
+    private BenchFixtures() {
+    }
+
+    // 소켓 대신 사용하는 메모리 세션: 큐에 들어온 프레임을 바로 꺼내 바이트 수만 셈 (writer가 즉시 비우는 상황)
+    static class MemorySession extends ChatSession {
+        long written = 0;
+
+        MemorySession(String userName, boolean binary) {
+            super(new OutboundQueue(1024, OutboundQueue.OverflowPolicy.DROP));
+            this.userName = userName;
+            this.binary = binary;
+        }
+
+        @Override
+        protected void messageQueued() {
+            ByteBuffer[] parts;
+            while ((parts = outbound.poll()) != null) {
+                for (ByteBuffer part : parts) {
+                    written += part.remaining();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // ---- 파싱 ----
+
+    // 텍스트 한 줄 해석 (ClientHandler가 쓰던 split 대신 ChatFrame.decodeText)
+    public static Function<String, Object> textDecoder() {
+        return ChatFrame::decodeText;
+    }
+
+    // 바이너리 프레임 해석: 바이트 묶음을 디코더에 넣고 완성된 프레임 수 반환
+    public static ToIntFunction<byte[]> binaryDecoder() {
+        int[] count = new int[1];
+        FrameDecoder decoder = new FrameDecoder(frame -> count[0]++);
+        decoder.switchToBinary();
+        return bytes -> {
+            count[0] = 0;
+            decoder.feed(bytes, 0, bytes.length);
+            return count[0];
+        };
+    }
+
+    public static byte[] encode(boolean binary, String type, String... fields) {
+        ByteBuffer encoded = new ChatFrame(type, fields).encoded(binary).duplicate();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    // ---- 브로드캐스트 ----
+
+    // roomSize명이 있는 방에 MESSAGE 하나를 처리하는 작업 (ChatServer.handleMessage부터 모든 세션의 송신 큐까지)
+    // 반환값은 이번 작업에서 세션들이 받은 바이트 수
+    public static IntSupplier broadcast(int roomSize, boolean binary) throws ReflectiveOperationException {
+        ServerConfig config = new ServerConfig();
+        config.logDir = "";              // 메시지 기록은 메모리에만
+        config.fileTransfer = "relay";   // 첨부 파일 디렉터리를 만들지 않음
+        config.cursorDir = "";           // 전달 위치 디렉터리를 만들지 않음
+        config.messageRate = 0;          // 전송 제한 없이 (제한에 걸려 버려지는 경로가 아니라 실제 전달을 측정)
+        config.roomMessageRate = 0;
+        ChatServer server = new ChatServer(config);
+
+        // 입장 처리(입장 알림 브로드캐스트)를 roomSize번 반복하면 준비가 O(N^2)이므로 방 목록에 직접 추가
+        Field roomsField = ChatServer.class.getDeclaredField("rooms");
+        roomsField.setAccessible(true);
+        RoomRegistry rooms = (RoomRegistry) roomsField.get(server);
+        List<MemorySession> sessions = new ArrayList<>();
+        for (int i = 0; i < roomSize; i++) {
+            MemorySession session = new MemorySession("user" + i, binary);
+            session.rooms.add("bench");
+            rooms.join("bench", session);
+            sessions.add(session);
+        }
+
+        MemorySession sender = sessions.get(0);
+        ChatFrame message = new ChatFrame("MESSAGE", "bench", sender.userName, "안녕하세요, 벤치마크 메시지입니다.");
+        return () -> {
+            long before = totalWritten(sessions);
+            server.handleMessage(sender, message);
+            return (int) (totalWritten(sessions) - before);
+        };
+    }
+
+    private static long totalWritten(List<MemorySession> sessions) {
+        long total = 0;
+        for (MemorySession session : sessions) {
+            total += session.written;
+        }
+        return total;
+    }
+
+    // ---- 읽음 확인 ----
+
+    // 이전 방식: 메시지마다 방 전체를 훑어 "(... 읽음)" 문자열 생성
+    public static IntSupplier legacyReadStatus(int roomSize) {
+        Set<ChatSession> clients = ConcurrentHashMap.newKeySet();
+        Map<String, String> userCurrentRoom = new ConcurrentHashMap<>();
+        for (int i = 0; i < roomSize; i++) {
+            clients.add(new MemorySession("user" + i, false));
+            userCurrentRoom.put("user" + i, "bench");
+        }
+        return () -> {
+            StringBuilder readStatus = new StringBuilder();
+            for (ChatSession client : clients) {
+                String user = client.userName;
+                if (!user.equals("user0") && "bench".equals(userCurrentRoom.get(user))) {
+                    readStatus.append(user).append(" ");
+                }
+            }
+            String result = readStatus.length() > 0 ? "(" + readStatus.toString().trim() + "읽음)" : "";
+            return result.length();
+        };
+    }
+
+    // 현재 방식: 메시지 하나를 모든 멤버가 읽었다고 확인(READ)하고 한 번의 flush로 묶어서 전송하는 작업
+    // (모든 확인이 한 flush 주기 안에 도착하는 가장 무거운 경우)
+    public static IntSupplier incrementalReceipts(int roomSize) {
+        RoomRegistry rooms = new RoomRegistry();
+        ReadReceipts receipts = new ReadReceipts(rooms);
+        List<MemorySession> sessions = new ArrayList<>();
+        for (int i = 0; i < roomSize; i++) {
+            MemorySession session = new MemorySession("user" + i, true);
+            rooms.join("bench", session);
+            receipts.enter("bench", session.userName, session);
+            sessions.add(session);
+        }
+        receipts.flush();
+        long[] seq = new long[1];
+        return () -> {
+            seq[0]++;
+            for (MemorySession session : sessions) {
+                receipts.read("bench", session.userName, seq[0]);
+            }
+            long before = totalWritten(sessions);
+            receipts.flush();
+            return (int) (totalWritten(sessions) - before);
+        };
+    }
+
+    // ---- 파일 인코딩 ----
+
+    // FILE 프레임 인코딩 (텍스트 형식이면 Base64, 바이너리 형식이면 원본 바이트)
+    public static Function<byte[], ByteBuffer> fileEncoder(boolean binary) {
+        return data -> new ChatFrame("FILE", new String[]{"bench", "user0", "file.bin"}, data).encoded(binary);
+    }
+
+    // 텍스트 형식 FILE 줄 해석 (Base64 디코딩)
+    public static Function<String, byte[]> textFileDecoder() {
+        return line -> ChatFrame.decodeText(line).data;
+    }
+
+    // 인코딩된 FILE 프레임 (텍스트 형식이면 줄바꿈을 뺀 한 줄)
+    public static byte[] encodedFile(byte[] data, boolean binary) {
+        ByteBuffer encoded = fileEncoder(binary).apply(data).duplicate();
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return binary ? bytes : Arrays.copyOf(bytes, bytes.length - 1);
+    }
+}
@@ -0,0 +1,19 @@
+package talkservice.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// 벤치마크 실행: 처리량과 함께 할당률(gc.alloc.rate, gc.alloc.rate.norm)을 보고하도록 GC 프로파일러를 기본으로 추가
+//   java -jar benchmarks/target/benchmarks.jar [JMH 옵션, 예: BroadcastBenchmark -p roomSize=1000]
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
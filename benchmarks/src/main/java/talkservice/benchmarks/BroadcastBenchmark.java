@@ -0,0 +1,33 @@
+package talkservice.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.*;
+
+// 브로드캐스트 팬아웃: MESSAGE 하나를 처리해서 방 멤버 전원의 송신 큐에 넣고 메모리 세션이 비우기까지
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"2", "10", "100", "1000", "10000"})
+    public int roomSize;
+
+    @Param({"binary", "text"})
+    public String protocol;
+
+    private IntSupplier broadcast;
+
+    @Setup
+    public void setUp() {
+        broadcast = Fixtures.call("broadcast", roomSize, protocol.equals("binary"));
+    }
+
+    @Benchmark
+    public int broadcastMessage() {
+        return broadcast.getAsInt();
+    }
+}
@@ -0,0 +1,62 @@
+package talkservice.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+// 파일 프레임 인코딩/디코딩: 텍스트 형식(Base64, 예전 sendFile/handleIncomingFile 방식)과 바이너리 형식
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileEncodingBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    public int fileSize;
+
+    private byte[] content;
+    private Function<byte[], ByteBuffer> textEncoder;
+    private Function<byte[], ByteBuffer> binaryEncoder;
+    private Function<String, byte[]> textDecoder;
+    private ToIntFunction<byte[]> binaryDecoder;
+    private String textLine;
+    private byte[] binaryFrame;
+
+    @Setup
+    public void setUp() {
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        textEncoder = Fixtures.call("fileEncoder", false);
+        binaryEncoder = Fixtures.call("fileEncoder", true);
+        textDecoder = Fixtures.call("textFileDecoder");
+        binaryDecoder = Fixtures.call("binaryDecoder");
+        textLine = new String((byte[]) Fixtures.call("encodedFile", content, false), Charset.defaultCharset());
+        binaryFrame = Fixtures.call("encodedFile", content, true);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBase64Text() {
+        return textEncoder.apply(content);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinary() {
+        return binaryEncoder.apply(content);
+    }
+
+    @Benchmark
+    public byte[] decodeBase64Text() {
+        return textDecoder.apply(textLine);
+    }
+
+    @Benchmark
+    public int decodeBinary() {
+        return binaryDecoder.applyAsInt(binaryFrame);
+    }
+}
@@ -0,0 +1,28 @@
+package talkservice.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// 기본 패키지의 BenchFixtures 호출 (이름 있는 패키지에서는 기본 패키지 클래스를 import할 수 없으므로 리플렉션 사용)
+// 준비(@Setup) 단계에서만 사용하고 측정 구간에서는 돌려받은 객체를 직접 호출
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T call(String name, Object... args) {
+        try {
+            Class<?> fixtures = Class.forName("BenchFixtures");
+            for (Method method : fixtures.getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                    return (T) method.invoke(null, args);
+                }
+            }
+            throw new IllegalArgumentException("알 수 없는 준비 메서드: " + name);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package talkservice.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+// 수신 메시지 해석: 예전 ClientHandler의 split("\\|"), 현재 텍스트 형식(ChatFrame.decodeText), 바이너리 형식(FrameDecoder)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+    private static final String LINE = "MESSAGE|채팅방1|홍길동|오늘 저녁에 회의 자료 공유드릴게요. 확인 부탁드립니다!";
+
+    private Function<String, Object> textDecoder;
+    private ToIntFunction<byte[]> binaryDecoder;
+    private byte[] binaryFrame;
+
+    @Setup
+    public void setUp() {
+        textDecoder = Fixtures.call("textDecoder");
+        binaryDecoder = Fixtures.call("binaryDecoder");
+        binaryFrame = Fixtures.call("encode", true, "MESSAGE", new String[]{"채팅방1", "홍길동", "오늘 저녁에 회의 자료 공유드릴게요. 확인 부탁드립니다!"});
+    }
+
+    @Benchmark
+    public String[] legacySplit() {
+        return LINE.split("\\|");
+    }
+
+    @Benchmark
+    public Object decodeText() {
+        return textDecoder.apply(LINE);
+    }
+
+    @Benchmark
+    public int decodeBinary() {
+        return binaryDecoder.applyAsInt(binaryFrame);
+    }
+}
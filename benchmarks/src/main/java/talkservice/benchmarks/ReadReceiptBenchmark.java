@@ -0,0 +1,37 @@
+package talkservice.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.*;
+
+// 읽음 표시: 메시지마다 "(... 읽음)" 문자열을 만드는 이전 방식과, 확인을 모아 RECEIPT 한 프레임으로 보내는 현재 방식
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadReceiptBenchmark {
+    @Param({"2", "10", "100", "1000", "10000"})
+    public int roomSize;
+
+    private IntSupplier legacy;
+    private IntSupplier incremental;
+
+    @Setup
+    public void setUp() {
+        legacy = Fixtures.call("legacyReadStatus", roomSize);
+        incremental = Fixtures.call("incrementalReceipts", roomSize);
+    }
+
+    @Benchmark
+    public int legacyReadStatus() {
+        return legacy.getAsInt();
+    }
+
+    @Benchmark
+    public int incrementalReceipts() {
+        return incremental.getAsInt();
+    }
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+# 채팅 서버 실행 (app 모듈의 jar, 옵션은 ChatServer와 같음): 클래스 데이터 공유(AppCDS) 아카이브로 JVM 시작 시간을 줄임
+#   처음 실행한 프로세스가 종료(드레인)할 때 그동안 읽은 클래스를 아카이브로 남기고, 다음 실행부터 아카이브를 매핑해서 클래스 로딩을 건너뜀
+#   JDK 19 이상은 -XX:+AutoCreateSharedArchive로 jar나 JDK가 바뀌면 아카이브를 다시 만듦 (그 이전 JDK는 아카이브 파일을 지우면 다시 만듦)
+# 사용: ./chatserver.sh --port=12345 --engine=nio
+#   kill -TERM으로 종료하면 드레인 후 종료 (exec로 실행하므로 신호가 JVM에 바로 전달됨)
+JAVA=${JAVA:-java}
+JAR=${JAR:-app/target/talkservice-1.0-SNAPSHOT.jar}
+ARCHIVE=${CDS_ARCHIVE:-chatserver.jsa}
+
+version=$("$JAVA" -version 2>&1 | sed -n 's/.*version "\([0-9][0-9]*\).*/\1/p' | head -n 1)
+if [ "${version:-0}" -ge 19 ]; then
+    CDS="-XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=$ARCHIVE"
+elif [ -f "$ARCHIVE" ]; then
+    CDS="-XX:SharedArchiveFile=$ARCHIVE"
+else
+    CDS="-XX:ArchiveClassesAtExit=$ARCHIVE"
+fi
+
+exec "$JAVA" $CDS -Dfile.encoding=UTF-8 -jar "$JAR" "$@"